@@ -0,0 +1,165 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+/**
+* Offline job that precomputes the potential matches of every user in one pass.
+*
+* <p>The friend graph is loaded once, {@link PotentialMatchAlgorithm#findAllPotentialMatches}
+* is run over it, and the results are written back to match-info in batches, so established
+* users never pay for computing their matches on a feed request. Decision lists are preserved
+* and decided users are filtered out (see {@link MatchInfoRefresher}).
+*
+* <p>Only existing match-info entities are refreshed. They are found with an eventually
+* consistent query, so creating the missing ones here could race with the feed creating them
+* and leave a user with two; users without match information get it on their first feed
+* request instead.
+*
+* <p>Users are processed in user ID order, and the ID of the last written user is saved in a
+* checkpoint entity with every batch. A run that hits its time budget stops there, and the next
+* run resumes after the checkpoint instead of starting over.
+*/
+public class BulkMatchPrecomputeJob {
+  static final String CHECKPOINT_ENTITY = "precompute-checkpoint";
+  static final String CHECKPOINT_NAME = "potential-matches";
+  static final String LAST_USER_ID_PROPERTY = "last-user-id";
+  static final String STARTED_AT_PROPERTY = "started-at";
+  static final String COMPLETED_AT_PROPERTY = "completed-at";
+
+  private static final Logger logger = Logger.getLogger(BulkMatchPrecomputeJob.class.getName());
+
+  private static final int DEFAULT_BATCH_SIZE = 200;
+  // Cron requests are cut off after 10 minutes, so leave time to write the last checkpoint
+  private static final long DEFAULT_TIME_BUDGET_MILLIS = TimeUnit.MINUTES.toMillis(9);
+  // A completed run is not repeated until the next night
+  private static final long MIN_MILLIS_BETWEEN_RUNS = TimeUnit.HOURS.toMillis(20);
+
+  private final DatastoreService datastore;
+  private final int batchSize;
+  private final long timeBudgetMillis;
+
+  public BulkMatchPrecomputeJob(DatastoreService datastore) {
+    this(datastore, DEFAULT_BATCH_SIZE, DEFAULT_TIME_BUDGET_MILLIS);
+  }
+
+  BulkMatchPrecomputeJob(DatastoreService datastore, int batchSize, long timeBudgetMillis) {
+    this.datastore = datastore;
+    this.batchSize = batchSize;
+    this.timeBudgetMillis = timeBudgetMillis;
+  }
+
+  /**
+  * Runs the job until every user is processed or the time budget runs out.
+  *
+  * @return The throughput and progress of this run
+  */
+  public PrecomputeReport run() {
+    long startMillis = System.currentTimeMillis();
+    Entity checkpoint = loadCheckpoint();
+
+    String resumeAfterUserID = null;
+    if (checkpoint != null && checkpoint.getProperty(COMPLETED_AT_PROPERTY) == null) {
+      resumeAfterUserID = (String) checkpoint.getProperty(LAST_USER_ID_PROPERTY);
+    } else if (checkpoint != null
+        && startMillis - (Long) checkpoint.getProperty(COMPLETED_AT_PROPERTY) < MIN_MILLIS_BETWEEN_RUNS) {
+      return new PrecomputeReport(0, 0, 0, /* completed= */ true);
+    } else {
+      checkpoint = new Entity(getCheckpointKey());
+      checkpoint.setProperty(STARTED_AT_PROPERTY, startMillis);
+      checkpoint.setProperty(COMPLETED_AT_PROPERTY, null);
+      checkpoint.setProperty(LAST_USER_ID_PROPERTY, null);
+    }
+
+    UserFriendsMap friendsMap = UserFriendsMapLoader.loadFromDatastore(datastore);
+    ImmutableMap<String, ImmutableSet<String>> allPotentialMatches =
+      PotentialMatchAlgorithm.findAllPotentialMatches(friendsMap);
+
+    List<String> remainingUserIDs = new ArrayList<>();
+    for (String userID : Ordering.natural().sortedCopy(allPotentialMatches.keySet())) {
+      if (resumeAfterUserID == null || userID.compareTo(resumeAfterUserID) > 0) {
+        remainingUserIDs.add(userID);
+      }
+    }
+
+    int usersProcessed = 0;
+    int entitiesWritten = 0;
+    for (List<String> userBatch : Iterables.partition(remainingUserIDs, batchSize)) {
+      if (System.currentTimeMillis() - startMillis > timeBudgetMillis) {
+        return report(startMillis, usersProcessed, entitiesWritten, /* completed= */ false);
+      }
+      Map<String, Entity> existingMatchInfo = MatchInfoRefresher.loadMatchInfo(datastore, userBatch);
+
+      List<Entity> writes = new ArrayList<>();
+      for (String userID : userBatch) {
+        Entity matchInfo = existingMatchInfo.get(userID);
+        if (matchInfo == null) {
+          continue;
+        }
+        // New candidates are appended most mutual friends first
+        ImmutableSet<String> potentialMatches =
+          PotentialMatchAlgorithm.rankByMutualFriends(userID, allPotentialMatches.get(userID), friendsMap);
+        if (MatchInfoRefresher.refreshPotentialMatches(matchInfo, potentialMatches)) {
+          writes.add(matchInfo);
+        }
+      }
+      entitiesWritten += writes.size();
+      usersProcessed += userBatch.size();
+
+      // The checkpoint is written in the same batch as the results it covers
+      checkpoint.setProperty(LAST_USER_ID_PROPERTY, Iterables.getLast(userBatch));
+      writes.add(checkpoint);
+      datastore.put(writes);
+    }
+
+    checkpoint.setProperty(COMPLETED_AT_PROPERTY, System.currentTimeMillis());
+    datastore.put(checkpoint);
+    return report(startMillis, usersProcessed, entitiesWritten, /* completed= */ true);
+  }
+
+  private PrecomputeReport report(long startMillis, int usersProcessed, int entitiesWritten, boolean completed) {
+    PrecomputeReport report = new PrecomputeReport(usersProcessed, entitiesWritten,
+      System.currentTimeMillis() - startMillis, completed);
+    logger.info("Bulk potential match precompute " + report);
+    return report;
+  }
+
+  private Entity loadCheckpoint() {
+    try {
+      return datastore.get(getCheckpointKey());
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+
+  private static Key getCheckpointKey() {
+    return KeyFactory.createKey(CHECKPOINT_ENTITY, CHECKPOINT_NAME);
+  }
+}
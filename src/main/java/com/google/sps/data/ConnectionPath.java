@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.collect.ImmutableList;
+
+/** A shortest chain of friendships between two users, as found by {@link ConnectionPathFinder}. */
+public class ConnectionPath {
+  private static final int NOT_CONNECTED = -1;
+
+  private final ImmutableList<String> path;
+  private final int degreesOfSeparation;
+  private final boolean budgetExhausted;
+  private final int nodesVisited;
+
+  public ConnectionPath(ImmutableList<String> path, boolean budgetExhausted, int nodesVisited) {
+    this.path = path;
+    this.degreesOfSeparation = path.isEmpty() ? NOT_CONNECTED : path.size() - 1;
+    this.budgetExhausted = budgetExhausted;
+    this.nodesVisited = nodesVisited;
+  }
+
+  static ConnectionPath notFound(boolean budgetExhausted, int nodesVisited) {
+    return new ConnectionPath(ImmutableList.of(), budgetExhausted, nodesVisited);
+  }
+
+  /** Returns the user IDs along the path, from the first user to the second, or an empty list. */
+  public ImmutableList<String> getPath() {
+    return path;
+  }
+
+  /** Returns the number of friendships on the path, or -1 if no path was found. */
+  public int getDegreesOfSeparation() {
+    return degreesOfSeparation;
+  }
+
+  /** Returns whether the node budget stopped the search before a path was found. */
+  public boolean isBudgetExhausted() {
+    return budgetExhausted;
+  }
+
+  public int getNodesVisited() {
+    return nodesVisited;
+  }
+}
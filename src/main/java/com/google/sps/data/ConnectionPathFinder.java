@@ -0,0 +1,181 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import com.google.common.collect.ImmutableList;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+/**
+* Finds the shortest chain of friendships between two users.
+*
+* <p>Runs a breadth first search from both users at once, always expanding whichever side has
+* the smaller frontier, and stops when the two searches meet. Each side only has to reach about
+* half the path length, so far fewer users are visited than by a search from one side. Like
+* {@link FriendsOfFriendsKernel}, the visited marks live in per-thread arrays that are stamped
+* with a new epoch on every call instead of being cleared.
+*/
+public class ConnectionPathFinder {
+  private static final int NO_PARENT = -1;
+
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  /**
+  * Finds a shortest friendship path between two users.
+  *
+  * @param userID1 The user ID the path starts at
+  * @param userID2 The user ID the path ends at
+  * @param friendsMap The map of the direct friendships between all users
+  * @param maxDepth The longest path, in friendships, that is searched for
+  * @param maxNodesVisited How many users both searches may visit in total
+  * @return The path, which is empty if none was found within the limits
+  */
+  public static ConnectionPath findShortestPath(String userID1, String userID2, UserFriendsMap friendsMap,
+      int maxDepth, int maxNodesVisited) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int source = interner.getInternedID(userID1);
+    int target = interner.getInternedID(userID2);
+    if (source == UserIDInterner.NOT_INTERNED || target == UserIDInterner.NOT_INTERNED) {
+      return ConnectionPath.notFound(/* budgetExhausted= */ false, 0);
+    }
+    if (source == target) {
+      return new ConnectionPath(ImmutableList.of(userID1), /* budgetExhausted= */ false, 0);
+    }
+
+    Scratch scratch = SCRATCH.get();
+    int forwardMark = scratch.begin(graph.getUserCount());
+    int backwardMark = forwardMark + 1;
+    int[] marks = scratch.marks;
+    int[] parents = scratch.parents;
+    int[] depths = scratch.depths;
+
+    marks[source] = forwardMark;
+    parents[source] = NO_PARENT;
+    depths[source] = 0;
+    marks[target] = backwardMark;
+    parents[target] = NO_PARENT;
+    depths[target] = 0;
+
+    int[] forwardFrontier = {source};
+    int[] backwardFrontier = {target};
+    int forwardDepth = 0;
+    int backwardDepth = 0;
+    int nodesVisited = 2;
+
+    while (forwardFrontier.length > 0 && backwardFrontier.length > 0
+        && forwardDepth + backwardDepth < maxDepth) {
+      boolean expandForward = forwardFrontier.length <= backwardFrontier.length;
+      int[] frontier = expandForward ? forwardFrontier : backwardFrontier;
+      int ownMark = expandForward ? forwardMark : backwardMark;
+      int otherMark = expandForward ? backwardMark : forwardMark;
+      int nextDepth = (expandForward ? forwardDepth : backwardDepth) + 1;
+
+      int[] nextFrontier = new int[Math.max(16, frontier.length)];
+      int nextFrontierSize = 0;
+      // The meeting edge with the fewest remaining hops on the other side gives the shortest path
+      int bestNode = NO_PARENT;
+      int bestNeighbor = NO_PARENT;
+      for (int node : frontier) {
+        int friendsEnd = graph.getFriendsEnd(node);
+        for (int position = graph.getFriendsStart(node); position < friendsEnd; position++) {
+          int neighbor = graph.getFriendAt(position);
+          if (marks[neighbor] == otherMark) {
+            if (bestNode == NO_PARENT || depths[neighbor] < depths[bestNeighbor]) {
+              bestNode = node;
+              bestNeighbor = neighbor;
+            }
+            continue;
+          }
+          if (marks[neighbor] == ownMark || bestNode != NO_PARENT) {
+            continue;
+          }
+          if (nodesVisited >= maxNodesVisited) {
+            return ConnectionPath.notFound(/* budgetExhausted= */ true, nodesVisited);
+          }
+          marks[neighbor] = ownMark;
+          parents[neighbor] = node;
+          depths[neighbor] = nextDepth;
+          nodesVisited++;
+          if (nextFrontierSize == nextFrontier.length) {
+            nextFrontier = Arrays.copyOf(nextFrontier, nextFrontierSize * 2);
+          }
+          nextFrontier[nextFrontierSize++] = neighbor;
+        }
+      }
+
+      if (bestNode != NO_PARENT) {
+        int forwardEnd = expandForward ? bestNode : bestNeighbor;
+        int backwardStart = expandForward ? bestNeighbor : bestNode;
+        return new ConnectionPath(buildPath(interner, parents, forwardEnd, backwardStart),
+          /* budgetExhausted= */ false, nodesVisited);
+      }
+      if (expandForward) {
+        forwardFrontier = Arrays.copyOf(nextFrontier, nextFrontierSize);
+        forwardDepth = nextDepth;
+      } else {
+        backwardFrontier = Arrays.copyOf(nextFrontier, nextFrontierSize);
+        backwardDepth = nextDepth;
+      }
+    }
+    return ConnectionPath.notFound(/* budgetExhausted= */ false, nodesVisited);
+  }
+
+  /** Joins the forward search's chain back to the start with the backward search's chain to the end. */
+  private static ImmutableList<String> buildPath(UserIDInterner interner, int[] parents,
+      int forwardEnd, int backwardStart) {
+    ImmutableList.Builder<String> forwardPart = ImmutableList.builder();
+    for (int node = forwardEnd; node != NO_PARENT; node = parents[node]) {
+      forwardPart.add(interner.getUserID(node));
+    }
+
+    ImmutableList.Builder<String> path = ImmutableList.builder();
+    path.addAll(forwardPart.build().reverse());
+    for (int node = backwardStart; node != NO_PARENT; node = parents[node]) {
+      path.add(interner.getUserID(node));
+    }
+    return path.build();
+  }
+
+  /** Per-thread visited marks, parents and depths that are reused across calls. */
+  private static class Scratch {
+    private int[] marks = new int[0];
+    private int[] parents = new int[0];
+    private int[] depths = new int[0];
+    private int epoch = 0;
+
+    /**
+    * Starts a search over a graph with the given number of users, growing the arrays if needed.
+    *
+    * @return The forward mark of this search; the backward mark is one higher
+    */
+    private int begin(int userCount) {
+      if (marks.length < userCount) {
+        marks = new int[userCount];
+        parents = new int[userCount];
+        depths = new int[userCount];
+        epoch = 0;
+      }
+      if (epoch >= Integer.MAX_VALUE - 2) {
+        Arrays.fill(marks, 0);
+        epoch = 0;
+      }
+      epoch += 2;
+      return epoch;
+    }
+  }
+}
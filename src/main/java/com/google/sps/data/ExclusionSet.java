@@ -0,0 +1,79 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.BitSet;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+/**
+* The set of users that must never be returned as someone's potential match, stored as a
+* bitmap over the interned IDs of one friend map snapshot.
+*
+* <p>Checking a candidate is a single bit test, so the cost of excluding decided users during
+* expansion does not depend on how long a user's decision history is. Users that are not in
+* the snapshot can never be candidates, so they are simply left out of the bitmap.
+*/
+public class ExclusionSet {
+  private static final ExclusionSet NONE = new ExclusionSet(null, new BitSet());
+
+  private final UserIDInterner interner;
+  private final BitSet excludedIDs;
+
+  private ExclusionSet(UserIDInterner interner, BitSet excludedIDs) {
+    this.interner = interner;
+    this.excludedIDs = excludedIDs;
+  }
+
+  /** An exclusion set that does not exclude anyone, and works with any snapshot. */
+  public static ExclusionSet none() {
+    return NONE;
+  }
+
+  /**
+  * Builds the exclusion bitmap for a set of user IDs.
+  *
+  * @param interner The interned IDs of the snapshot the exclusions will be checked against
+  * @param excludedUserIDs The IDs of the users to exclude, such as the friended, passed and
+  *     matched users on a user's match information
+  * @return The exclusion set
+  */
+  public static ExclusionSet of(UserIDInterner interner, Iterable<String> excludedUserIDs) {
+    BitSet excludedIDs = new BitSet(interner.size());
+    for (String userID : excludedUserIDs) {
+      int internedID = interner.getInternedID(userID);
+      if (internedID != UserIDInterner.NOT_INTERNED) {
+        excludedIDs.set(internedID);
+      }
+    }
+    return new ExclusionSet(interner, excludedIDs);
+  }
+
+  public boolean isExcluded(int internedID) {
+    return excludedIDs.get(internedID);
+  }
+
+  public boolean isExcluded(String userID) {
+    if (excludedIDs.isEmpty()) {
+      return false;
+    }
+    int internedID = interner.getInternedID(userID);
+    return internedID != UserIDInterner.NOT_INTERNED && excludedIDs.get(internedID);
+  }
+
+  /** Returns the number of excluded users that are in the snapshot. */
+  public int size() {
+    return excludedIDs.cardinality();
+  }
+}
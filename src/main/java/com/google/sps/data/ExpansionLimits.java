@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.base.Preconditions;
+
+/**
+* Limits on how much of the friend graph a single two-hop expansion may touch.
+*
+* <p>A friend with more friends than the fan-out cap (a "hub") only contributes a
+* deterministic sample of their friend list, and the whole expansion stops once the total
+* number of two-hop edges examined reaches the work budget. Either limit kicking in makes the
+* result approximate.
+*/
+public class ExpansionLimits {
+  private static final ExpansionLimits UNLIMITED =
+    new ExpansionLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, 0L);
+
+  private final int maxFanOutPerFriend;
+  private final int maxEdgesTraversed;
+  private final long samplingSeed;
+
+  private ExpansionLimits(int maxFanOutPerFriend, int maxEdgesTraversed, long samplingSeed) {
+    this.maxFanOutPerFriend = maxFanOutPerFriend;
+    this.maxEdgesTraversed = maxEdgesTraversed;
+    this.samplingSeed = samplingSeed;
+  }
+
+  /** Limits that never cap anything, so the expansion is always exact. */
+  public static ExpansionLimits unlimited() {
+    return UNLIMITED;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  public int getMaxFanOutPerFriend() {
+    return maxFanOutPerFriend;
+  }
+
+  public int getMaxEdgesTraversed() {
+    return maxEdgesTraversed;
+  }
+
+  public long getSamplingSeed() {
+    return samplingSeed;
+  }
+
+  /** Builder for {@link ExpansionLimits}; every limit defaults to unlimited. */
+  public static class Builder {
+    private int maxFanOutPerFriend = Integer.MAX_VALUE;
+    private int maxEdgesTraversed = Integer.MAX_VALUE;
+    private long samplingSeed = 0L;
+
+    private Builder() {}
+
+    /** Sets how many of a single friend's friends may be examined. */
+    public Builder setMaxFanOutPerFriend(int maxFanOutPerFriend) {
+      Preconditions.checkArgument(maxFanOutPerFriend > 0, "fan-out cap must be positive");
+      this.maxFanOutPerFriend = maxFanOutPerFriend;
+      return this;
+    }
+
+    /** Sets how many two-hop edges may be examined in total. */
+    public Builder setMaxEdgesTraversed(int maxEdgesTraversed) {
+      Preconditions.checkArgument(maxEdgesTraversed >= 0, "work budget must not be negative");
+      this.maxEdgesTraversed = maxEdgesTraversed;
+      return this;
+    }
+
+    /** Sets the seed that picks which part of a hub's friend list is sampled. */
+    public Builder setSamplingSeed(long samplingSeed) {
+      this.samplingSeed = samplingSeed;
+      return this;
+    }
+
+    public ExpansionLimits build() {
+      return new ExpansionLimits(maxFanOutPerFriend, maxEdgesTraversed, samplingSeed);
+    }
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.collect.ImmutableMap;
+
+/** The potential matches found by an {@link ExtendedMatchSearch}, tagged with their hop distance. */
+public class ExtendedMatchResult {
+  private final ImmutableMap<String, Integer> hopDistances;
+  private final boolean budgetExhausted;
+  private final int nodesVisited;
+  private final int edgesExamined;
+
+  public ExtendedMatchResult(ImmutableMap<String, Integer> hopDistances, boolean budgetExhausted, int nodesVisited,
+      int edgesExamined) {
+    this.hopDistances = hopDistances;
+    this.budgetExhausted = budgetExhausted;
+    this.nodesVisited = nodesVisited;
+    this.edgesExamined = edgesExamined;
+  }
+
+  /** Returns the user IDs of the candidates mapped to their hop distance, closest first. */
+  public ImmutableMap<String, Integer> getHopDistances() {
+    return hopDistances;
+  }
+
+  /** Returns whether the node, edge or time budget stopped the search before it was finished. */
+  public boolean isBudgetExhausted() {
+    return budgetExhausted;
+  }
+
+  public int getNodesVisited() {
+    return nodesVisited;
+  }
+
+  public int getEdgesExamined() {
+    return edgesExamined;
+  }
+}
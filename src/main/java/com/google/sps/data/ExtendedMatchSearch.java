@@ -0,0 +1,205 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+/**
+* Fallback search for users who have run out of friends of friends, which also looks at the
+* friends of friends of friends.
+*
+* <p>The search expands one hop at a time, and every user is only expanded once no matter how
+* many paths reach them. It stops as soon as enough candidates are found, or when the node
+* budget, the edge budget or the time budget runs out, so it is safe to run on the request path.
+* Every edge examined counts towards the edge budget and the clock, including edges leading back
+* to users that were already reached.
+*
+* <p>Like {@link FriendsOfFriendsKernel}, each thread keeps scratch arrays sized to the graph
+* and stamps the users it reaches with a new epoch number per call, so no per-call set is built.
+*/
+public class ExtendedMatchSearch {
+  private static final int MAX_HOPS = 3;
+  // The clock is only read every this many edges
+  private static final int TIME_CHECK_INTERVAL = 256;
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  private final int maxNodesVisited;
+  private final int maxEdgesExamined;
+  private final long timeBudgetNanos;
+  private final int targetCandidates;
+  private final Ticker ticker;
+
+  private ExtendedMatchSearch(Builder builder) {
+    this.maxNodesVisited = builder.maxNodesVisited;
+    this.maxEdgesExamined = builder.maxEdgesExamined;
+    this.timeBudgetNanos = builder.timeBudgetNanos;
+    this.targetCandidates = builder.targetCandidates;
+    this.ticker = builder.ticker;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+  * Finds potential matches up to three hops away from a user, closest first.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @param friendsMap The map of the direct friendships between all users
+  * @param exclusions The users that must not be returned, built over {@code friendsMap}'s interner
+  * @return The candidates found and their hop distances
+  */
+  public ExtendedMatchResult findPotentialMatches(String userID, UserFriendsMap friendsMap,
+      ExclusionSet exclusions) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int user = interner.getInternedID(userID);
+    if (user == UserIDInterner.NOT_INTERNED) {
+      return new ExtendedMatchResult(ImmutableMap.of(), /* budgetExhausted= */ false, 0, 0);
+    }
+
+    long deadline = ticker.read() + timeBudgetNanos;
+    ImmutableMap.Builder<String, Integer> hopDistances = ImmutableMap.builder();
+    int candidatesFound = 0;
+    int nodesVisited = 0;
+    int edgesExamined = 0;
+
+    // Users are stamped when first reached and appended to the queue, so the queue holds the
+    // frontiers of successive hops back to back and each user is in at most one of them
+    Scratch scratch = SCRATCH.get();
+    int seenMark = scratch.begin(graph.getUserCount());
+    int[] marks = scratch.marks;
+    int[] queue = scratch.queue;
+    marks[user] = seenMark;
+    queue[0] = user;
+    int frontierStart = 0;
+    int frontierEnd = 1;
+    for (int hop = 1; hop <= MAX_HOPS; hop++) {
+      int queueEnd = frontierEnd;
+      for (int index = frontierStart; index < frontierEnd; index++) {
+        int node = queue[index];
+        int friendsEnd = graph.getFriendsEnd(node);
+        for (int position = graph.getFriendsStart(node); position < friendsEnd; position++) {
+          edgesExamined++;
+          int reached = graph.getFriendAt(position);
+          if (marks[reached] != seenMark) {
+            marks[reached] = seenMark;
+            nodesVisited++;
+            queue[queueEnd++] = reached;
+
+            // Direct friends are expanded but never returned
+            if (hop > 1 && !exclusions.isExcluded(reached)) {
+              hopDistances.put(interner.getUserID(reached), hop);
+              candidatesFound++;
+              if (candidatesFound >= targetCandidates) {
+                return new ExtendedMatchResult(hopDistances.build(), /* budgetExhausted= */ false, nodesVisited,
+                  edgesExamined);
+              }
+            }
+          }
+          if (nodesVisited >= maxNodesVisited || edgesExamined >= maxEdgesExamined
+              || (edgesExamined % TIME_CHECK_INTERVAL == 0 && ticker.read() >= deadline)) {
+            return new ExtendedMatchResult(hopDistances.build(), /* budgetExhausted= */ true, nodesVisited,
+              edgesExamined);
+          }
+        }
+      }
+      frontierStart = frontierEnd;
+      frontierEnd = queueEnd;
+    }
+    return new ExtendedMatchResult(hopDistances.build(), /* budgetExhausted= */ false, nodesVisited, edgesExamined);
+  }
+
+  /** Per-thread working memory that is reused across searches. */
+  private static class Scratch {
+    private int[] marks = new int[0];
+    private int[] queue = new int[0];
+    private int epoch = 0;
+
+    /**
+    * Starts a search over a graph with the given number of users, growing the arrays if needed.
+    *
+    * @return The mark of the users reached by this search
+    */
+    private int begin(int userCount) {
+      if (marks.length < userCount) {
+        marks = new int[userCount];
+        queue = new int[userCount];
+        epoch = 0;
+      }
+      if (epoch == Integer.MAX_VALUE) {
+        Arrays.fill(marks, 0);
+        epoch = 0;
+      }
+      epoch++;
+      return epoch;
+    }
+  }
+
+  /** Builder for {@link ExtendedMatchSearch}. */
+  public static class Builder {
+    private int maxNodesVisited = 20_000;
+    private int maxEdgesExamined = 200_000;
+    private long timeBudgetNanos = TimeUnit.MILLISECONDS.toNanos(200);
+    private int targetCandidates = 50;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder() {}
+
+    /** Sets how many distinct users may be reached before the search gives up. */
+    public Builder setMaxNodesVisited(int maxNodesVisited) {
+      Preconditions.checkArgument(maxNodesVisited > 0, "node budget must be positive");
+      this.maxNodesVisited = maxNodesVisited;
+      return this;
+    }
+
+    /** Sets how many edges may be examined, counting edges back to users already reached. */
+    public Builder setMaxEdgesExamined(int maxEdgesExamined) {
+      Preconditions.checkArgument(maxEdgesExamined > 0, "edge budget must be positive");
+      this.maxEdgesExamined = maxEdgesExamined;
+      return this;
+    }
+
+    /** Sets how long the search may run before it gives up. */
+    public Builder setTimeBudget(long duration, TimeUnit unit) {
+      Preconditions.checkArgument(duration > 0, "time budget must be positive");
+      this.timeBudgetNanos = unit.toNanos(duration);
+      return this;
+    }
+
+    /** Sets how many candidates are enough to stop searching. */
+    public Builder setTargetCandidates(int targetCandidates) {
+      Preconditions.checkArgument(targetCandidates > 0, "target candidate count must be positive");
+      this.targetCandidates = targetCandidates;
+      return this;
+    }
+
+    Builder setTicker(Ticker ticker) {
+      this.ticker = ticker;
+      return this;
+    }
+
+    public ExtendedMatchSearch build() {
+      return new ExtendedMatchSearch(this);
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.data;
+
+import java.util.concurrent.TimeUnit;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+/**
+* The friend graph snapshot shared by the requests of this instance that can tolerate a
+* slightly stale graph, such as connection paths and the extended match search.
+*
+* <p>A snapshot is reused for up to {@link #MAX_AGE_NANOS}, and dropped early when this
+* instance saves a changed friend list. Only one request reloads an expired snapshot; the
+* others wait for it rather than each scanning every User entity. Requests that must see a
+* friend list saved moments ago, like a new user's first feed request, should keep loading
+* the graph with {@link UserFriendsMapLoader} instead.
+*/
+public class FriendGraphSnapshot {
+  static final long MAX_AGE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private static final Object LOAD_LOCK = new Object();
+  private static volatile LoadedSnapshot current = null;
+
+  private FriendGraphSnapshot() {}
+
+  /**
+  * Returns the shared snapshot, loading it first if there is none or it has expired.
+  *
+  * @param datastore The datastore to read the User entities from when loading
+  * @return The map of the direct friendships between all users
+  */
+  public static UserFriendsMap get(DatastoreService datastore) {
+    LoadedSnapshot snapshot = current;
+    if (snapshot != null && !snapshot.isExpired()) {
+      return snapshot.friendsMap;
+    }
+    synchronized (LOAD_LOCK) {
+      // Another request may have reloaded it while this one waited
+      snapshot = current;
+      if (snapshot == null || snapshot.isExpired()) {
+        snapshot = new LoadedSnapshot(UserFriendsMapLoader.loadFromDatastore(datastore), System.nanoTime());
+        current = snapshot;
+      }
+      return snapshot.friendsMap;
+    }
+  }
+
+  /** Drops the shared snapshot, so the next request loads a fresh one. */
+  public static void invalidate() {
+    current = null;
+  }
+
+  private static class LoadedSnapshot {
+    private final UserFriendsMap friendsMap;
+    private final long loadedAtNanos;
+
+    private LoadedSnapshot(UserFriendsMap friendsMap, long loadedAtNanos) {
+      this.friendsMap = friendsMap;
+      this.loadedAtNanos = loadedAtNanos;
+    }
+
+    private boolean isExpired() {
+      return System.nanoTime() - loadedAtNanos > MAX_AGE_NANOS;
+    }
+  }
+}
@@ -0,0 +1,274 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Arrays;
+import com.google.common.hash.Hashing;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+
+/**
+* Allocation-free version of the friends of friends search over interned IDs.
+*
+* <p>Each thread keeps one pair of scratch arrays sized to the graph. Instead of clearing them
+* between calls, every call stamps the entries it touches with a new epoch number, so an entry
+* holding an older stamp is treated as untouched. Together with the caller supplying the output
+* buffers, this means a call allocates nothing once the scratch arrays have grown to the graph
+* size.
+*/
+public class FriendsOfFriendsKernel {
+  private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+  /**
+  * Finds the potential matches of a user, and optionally how many mutual friends each has.
+  *
+  * <p>Matches are written in the order they are first reached. If more matches are found than
+  * {@code matchesOut} can hold, the extra ones are counted but not written, so a buffer of
+  * {@link InternedFriendGraph#getUserCount()} entries is always enough.
+  *
+  * @param graph The interned friend lists of the snapshot
+  * @param user The interned ID of the user who's potential matches are being found
+  * @param exclusions The users that must not be returned, built over the graph's interner
+  * @param matchesOut Receives the interned IDs of the potential matches
+  * @param mutualCountsOut Receives the number of mutual friends of each written match at the
+  *     same index, or {@code null} if the counts are not needed
+  * @return The number of potential matches found
+  */
+  public static int findPotentialMatches(InternedFriendGraph graph, int user, ExclusionSet exclusions,
+      int[] matchesOut, int[] mutualCountsOut) {
+    Scratch scratch = SCRATCH.get();
+    int friendMark = scratch.begin(graph.getUserCount());
+    int candidateMark = friendMark + 1;
+    int[] marks = scratch.marks;
+    int[] mutualCounts = scratch.mutualCounts;
+
+    int friendsStart = graph.getFriendsStart(user);
+    int friendsEnd = graph.getFriendsEnd(user);
+    marks[user] = friendMark;
+    for (int position = friendsStart; position < friendsEnd; position++) {
+      marks[graph.getFriendAt(position)] = friendMark;
+    }
+
+    int found = 0;
+    for (int position = friendsStart; position < friendsEnd; position++) {
+      int friend = graph.getFriendAt(position);
+      int friendOfFriendEnd = graph.getFriendsEnd(friend);
+      for (int edge = graph.getFriendsStart(friend); edge < friendOfFriendEnd; edge++) {
+        int candidate = graph.getFriendAt(edge);
+        int mark = marks[candidate];
+        if (mark == candidateMark) {
+          mutualCounts[candidate]++;
+        } else if (mark != friendMark) {
+          if (exclusions.isExcluded(candidate)) {
+            // Marked like a friend so the exclusion is only checked once
+            marks[candidate] = friendMark;
+            continue;
+          }
+          marks[candidate] = candidateMark;
+          mutualCounts[candidate] = 1;
+          if (found < matchesOut.length) {
+            matchesOut[found] = candidate;
+          }
+          found++;
+        }
+      }
+    }
+
+    if (mutualCountsOut != null) {
+      int written = Math.min(found, Math.min(matchesOut.length, mutualCountsOut.length));
+      for (int i = 0; i < written; i++) {
+        mutualCountsOut[i] = mutualCounts[matchesOut[i]];
+      }
+    }
+    return found;
+  }
+
+  /**
+  * Finds the potential matches of a user within expansion limits, recording how much work the
+  * search did.
+  *
+  * <p>Friends are expanded from lowest to highest degree, ties broken by interned ID. A friend
+  * whose friend list is longer than the fan-out cap only contributes an evenly spaced sample of
+  * it, starting at an offset derived from the sampling seed and the friend's ID, so the same
+  * snapshot and seed always give the same result. Once the work budget is used up the remaining
+  * friends are skipped. Matches are written like in
+  * {@link #findPotentialMatches(InternedFriendGraph, int, ExclusionSet, int[], int[])}.
+  *
+  * @param graph The interned friend lists of the snapshot
+  * @param user The interned ID of the user who's potential matches are being found
+  * @param exclusions The users that must not be returned, built over the graph's interner
+  * @param limits The fan-out cap, work budget and sampling seed
+  * @param matchesOut Receives the interned IDs of the potential matches
+  * @param countersOut Reset and then filled with the work counters of this call
+  * @return The number of potential matches found
+  */
+  public static int findPotentialMatches(InternedFriendGraph graph, int user, ExclusionSet exclusions,
+      ExpansionLimits limits, int[] matchesOut, ExpansionCounters countersOut) {
+    Scratch scratch = SCRATCH.get();
+    int friendMark = scratch.begin(graph.getUserCount());
+    int candidateMark = friendMark + 1;
+    int excludedMark = friendMark + 2;
+    int[] marks = scratch.marks;
+    countersOut.reset();
+
+    int friendsStart = graph.getFriendsStart(user);
+    int friendsEnd = graph.getFriendsEnd(user);
+    long[] friendsByDegree = scratch.friendOrder(friendsEnd - friendsStart);
+    int friendCount = 0;
+    marks[user] = friendMark;
+    for (int position = friendsStart; position < friendsEnd; position++) {
+      int friend = graph.getFriendAt(position);
+      marks[friend] = friendMark;
+      // Degree in the high bits, so sorting the packed values orders friends by degree
+      friendsByDegree[friendCount++] = ((long) graph.getDegree(friend) << 32) | friend;
+    }
+    Arrays.sort(friendsByDegree, 0, friendCount);
+
+    int found = 0;
+    for (int i = 0; i < friendCount; i++) {
+      int friend = (int) friendsByDegree[i];
+      int degree = (int) (friendsByDegree[i] >>> 32);
+      int fanOut = Math.min(degree,
+        Math.min(limits.getMaxFanOutPerFriend(), limits.getMaxEdgesTraversed() - countersOut.edgesTraversed));
+      if (fanOut < degree) {
+        countersOut.approximate = true;
+      }
+
+      int offset = fanOut < degree
+        ? getSamplingOffset(limits.getSamplingSeed(), graph.getInterner().getUserID(friend), degree)
+        : 0;
+      int friendOfFriendStart = graph.getFriendsStart(friend);
+      for (int j = 0; j < fanOut; j++) {
+        // Positions are evenly spaced over the whole list, so they never repeat
+        int position = (int) ((offset + (long) j * degree / fanOut) % degree);
+        int candidate = graph.getFriendAt(friendOfFriendStart + position);
+        int mark = marks[candidate];
+        if (mark == candidateMark) {
+          countersOut.duplicatesDiscarded++;
+        } else if (mark == excludedMark) {
+          countersOut.exclusionsApplied++;
+        } else if (mark != friendMark) {
+          if (exclusions.isExcluded(candidate)) {
+            // Marked separately from friends so later hits still count as exclusions
+            marks[candidate] = excludedMark;
+            countersOut.exclusionsApplied++;
+            continue;
+          }
+          marks[candidate] = candidateMark;
+          if (found < matchesOut.length) {
+            matchesOut[found] = candidate;
+          }
+          found++;
+        }
+      }
+      countersOut.edgesTraversed += fanOut;
+      if (fanOut > 0) {
+        countersOut.friendsScanned++;
+      }
+    }
+    return found;
+  }
+
+  private static int getSamplingOffset(long samplingSeed, String friendID, int degree) {
+    int hash = Hashing.murmur3_32().newHasher()
+      .putLong(samplingSeed)
+      .putUnencodedChars(friendID)
+      .hash()
+      .asInt();
+    return Math.floorMod(hash, degree);
+  }
+
+  /**
+  * How much work a limited search did. Callers are expected to keep one instance per thread
+  * and pass it to every call, which resets it.
+  */
+  static final class ExpansionCounters {
+    private int friendsScanned;
+    private int edgesTraversed;
+    private int duplicatesDiscarded;
+    private int exclusionsApplied;
+    private boolean approximate;
+
+    /** Returns the number of the user's friends whose friend lists were expanded. */
+    int getFriendsScanned() {
+      return friendsScanned;
+    }
+
+    /** Returns the number of friend of friend entries examined. */
+    int getEdgesTraversed() {
+      return edgesTraversed;
+    }
+
+    /** Returns the number of entries dropped because another friend already reached them. */
+    int getDuplicatesDiscarded() {
+      return duplicatesDiscarded;
+    }
+
+    /**
+    * Returns the number of entries dropped by the exclusion set. Entries for the user and their
+    * friends are not counted.
+    */
+    int getExclusionsApplied() {
+      return exclusionsApplied;
+    }
+
+    /** Returns whether the fan-out cap or work budget skipped any entries. */
+    boolean isApproximate() {
+      return approximate;
+    }
+
+    private void reset() {
+      friendsScanned = 0;
+      edgesTraversed = 0;
+      duplicatesDiscarded = 0;
+      exclusionsApplied = 0;
+      approximate = false;
+    }
+  }
+
+  /** Per-thread working memory that is reused across calls. */
+  private static class Scratch {
+    private int[] marks = new int[0];
+    private int[] mutualCounts = new int[0];
+    private long[] friendOrder = new long[0];
+    private int epoch = 0;
+
+    /**
+    * Starts a call over a graph with the given number of users, growing the arrays if needed.
+    *
+    * @return The friend mark of this call; the candidate and excluded marks are one and two higher
+    */
+    private int begin(int userCount) {
+      if (marks.length < userCount) {
+        marks = new int[userCount];
+        mutualCounts = new int[userCount];
+        epoch = 0;
+      }
+      if (epoch >= Integer.MAX_VALUE - 3) {
+        Arrays.fill(marks, 0);
+        epoch = 0;
+      }
+      epoch += 3;
+      return epoch;
+    }
+
+    /** Returns a buffer for ordering a friend list of the given length, growing it if needed. */
+    private long[] friendOrder(int friendCount) {
+      if (friendOrder.length < friendCount) {
+        friendOrder = new long[friendCount];
+      }
+      return friendOrder;
+    }
+  }
+}
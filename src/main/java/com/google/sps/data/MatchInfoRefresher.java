@@ -0,0 +1,150 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+
+/**
+* Helper methods for rewriting the potential matches stored on a user's match-info entity
+* after the friend graph has changed.
+*
+* <p>The friended, passed and matches lists are never modified here, and anyone in them is
+* kept out of the refreshed potential matches so users are not shown people they already
+* made a decision on.
+*/
+public class MatchInfoRefresher {
+  static final String MATCH_INFO_ENTITY = "match-info";
+  static final String USER_ID_PROPERTY = "id";
+  static final String POTENTIAL_MATCHES_PROPERTY = "potential-matches";
+  static final String FRIENDED_IDS_PROPERTY = "friended-ids";
+  static final String PASSED_IDS_PROPERTY = "passed-ids";
+  static final String MATCHES_LIST_PROPERTY = "matches-list";
+
+  // Datastore only allows a limited number of values in a single IN filter
+  private static final int MAX_IN_FILTER_VALUES = 30;
+
+  /**
+  * Loads the match information of several users with as few queries as possible.
+  *
+  * @param datastore The datastore to read the match-info entities from
+  * @param userIDs The IDs of the users whose match information is being loaded
+  * @return The map of user ID to match-info entity, without entries for users that have none
+  */
+  public static Map<String, Entity> loadMatchInfo(DatastoreService datastore, Collection<String> userIDs) {
+    Map<String, Entity> matchInfoByUser = new HashMap<>();
+    for (List<String> idBatch : Iterables.partition(userIDs, MAX_IN_FILTER_VALUES)) {
+      List<Entity> results = datastore
+        .prepare(new Query(MATCH_INFO_ENTITY).setFilter(
+          new FilterPredicate(USER_ID_PROPERTY, FilterOperator.IN, idBatch)))
+        .asList(FetchOptions.Builder.withDefaults());
+      for (Entity matchInfo : results) {
+        matchInfoByUser.put((String) matchInfo.getProperty(USER_ID_PROPERTY), matchInfo);
+      }
+    }
+    return matchInfoByUser;
+  }
+
+  /**
+  * Gets the IDs of every user that the owner of the match information already decided on.
+  *
+  * @param matchInfo The entity of the user's match information from datastore
+  * @return The set of friended, passed and matched user IDs
+  */
+  public static ImmutableSet<String> getDecidedIDs(Entity matchInfo) {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    addAllIfPresent(builder, matchInfo, FRIENDED_IDS_PROPERTY);
+    addAllIfPresent(builder, matchInfo, PASSED_IDS_PROPERTY);
+    addAllIfPresent(builder, matchInfo, MATCHES_LIST_PROPERTY);
+    return builder.build();
+  }
+
+  /**
+  * Replaces the potential matches on a match-info entity with a freshly computed set.
+  *
+  * <p>Candidates that are still valid keep their current position so the user's next card
+  * does not change under them, new candidates are appended, and decided users are dropped.
+  * Three-hop candidates left by the extended search are never part of the fresh set, so
+  * they are kept until decided on, and the three-hop IDs are rewritten to match: anyone
+  * who is now a two-hop candidate or was dropped is removed from them. The entity is only
+  * modified in memory; the caller is responsible for writing it.
+  *
+  * @param matchInfo The entity of the user's match information from datastore
+  * @param freshMatches The newly computed potential matches for the user
+  * @return Whether the stored potential matches or three-hop IDs changed
+  */
+  public static boolean refreshPotentialMatches(Entity matchInfo, Collection<String> freshMatches) {
+    ImmutableSet<String> decidedIDs = getDecidedIDs(matchInfo);
+    List<String> currentMatches = (List<String>) matchInfo.getProperty(POTENTIAL_MATCHES_PROPERTY);
+    List<String> currentThreeHopIDs =
+      (List<String>) matchInfo.getProperty(PotentialMatchFeed.THREE_HOP_IDS_PROPERTY);
+    Set<String> threeHopIDs =
+      currentThreeHopIDs == null ? ImmutableSet.of() : ImmutableSet.copyOf(currentThreeHopIDs);
+
+    Set<String> refreshedMatches = new LinkedHashSet<>();
+    ImmutableList.Builder<String> refreshedThreeHopIDs = ImmutableList.builder();
+    if (currentMatches != null) {
+      for (String matchID : currentMatches) {
+        if (decidedIDs.contains(matchID)) {
+          continue;
+        }
+        if (freshMatches.contains(matchID)) {
+          refreshedMatches.add(matchID);
+        } else if (threeHopIDs.contains(matchID)) {
+          refreshedMatches.add(matchID);
+          refreshedThreeHopIDs.add(matchID);
+        }
+      }
+    }
+    for (String matchID : freshMatches) {
+      if (!decidedIDs.contains(matchID)) {
+        refreshedMatches.add(matchID);
+      }
+    }
+
+    ImmutableList<String> refreshedList = ImmutableList.copyOf(refreshedMatches);
+    ImmutableList<String> currentList =
+      currentMatches == null ? ImmutableList.of() : ImmutableList.copyOf(currentMatches);
+    ImmutableList<String> refreshedThreeHopList = refreshedThreeHopIDs.build();
+    ImmutableList<String> currentThreeHopList =
+      currentThreeHopIDs == null ? ImmutableList.of() : ImmutableList.copyOf(currentThreeHopIDs);
+    if (refreshedList.equals(currentList) && refreshedThreeHopList.equals(currentThreeHopList)) {
+      return false;
+    }
+    matchInfo.setProperty(POTENTIAL_MATCHES_PROPERTY, refreshedList);
+    matchInfo.setProperty(PotentialMatchFeed.THREE_HOP_IDS_PROPERTY, refreshedThreeHopList);
+    return true;
+  }
+
+  private static void addAllIfPresent(ImmutableSet.Builder<String> builder, Entity entity, String property) {
+    List<String> values = (List<String>) entity.getProperty(property);
+    if (values != null) {
+      builder.addAll(values);
+    }
+  }
+}
@@ -15,14 +15,28 @@
 package com.google.sps.data;
 
 public class MatchInformation{
+  // Potential matches are friends of friends unless the extended search found them
+  private static final int DEFAULT_HOP_DISTANCE = 2;
+
   private String nextPotentialMatchID;
+  private int hopDistance;
 
   public MatchInformation(String nextPotentialMatchID) {
+    this(nextPotentialMatchID, DEFAULT_HOP_DISTANCE);
+  }
+
+  public MatchInformation(String nextPotentialMatchID, int hopDistance) {
     this.nextPotentialMatchID = nextPotentialMatchID;
+    this.hopDistance = hopDistance;
   }
 
   public String getNextPotentialMatchID() {
     return nextPotentialMatchID;
   }
+
+  /** Returns how many friendships away the potential match is from the user. */
+  public int getHopDistance() {
+    return hopDistance;
+  }
 }
 
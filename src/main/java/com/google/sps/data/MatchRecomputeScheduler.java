@@ -0,0 +1,237 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+/**
+* Schedules background recomputation of potential matches for users whose two-hop
+* neighborhood changed.
+*
+* <p>When a user's friend list changes, the user, everyone on their old or new friend list,
+* and the friends of anyone who was added or removed can gain or lose potential matches.
+* Pending work is stored as one {@code recompute-task} entity per user, keyed by the user ID,
+* so enqueuing the same user twice only keeps a single task. Tasks are drained in batches
+* (see {@link #runPendingBatch()}), most recently active users first, against a single graph
+* snapshot, and match-info writes are rate limited so a burst of graph changes cannot
+* saturate datastore.
+*/
+public class MatchRecomputeScheduler {
+  static final String RECOMPUTE_TASK_ENTITY = "recompute-task";
+  static final String PRIORITY_PROPERTY = "priority";
+  static final String ENQUEUED_AT_PROPERTY = "enqueued-at";
+  static final String EXPAND_FRIENDS_PROPERTY = "expand-friends";
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final int WRITE_BATCH_SIZE = 25;
+  private static final double DEFAULT_WRITES_PER_SECOND = 50.0;
+  private static final int MAX_TRACKED_ACTIVE_USERS = 10_000;
+
+  // Shared by every scheduler on this instance so the write limit applies instance-wide
+  private static final RateLimiter SHARED_WRITE_LIMITER = RateLimiter.create(DEFAULT_WRITES_PER_SECOND);
+  private static final Cache<String, Long> LAST_ACTIVE_MILLIS = CacheBuilder.newBuilder()
+    .maximumSize(MAX_TRACKED_ACTIVE_USERS)
+    .expireAfterWrite(1, TimeUnit.DAYS)
+    .build();
+
+  private final DatastoreService datastore;
+  private final int batchSize;
+  private final RateLimiter writeLimiter;
+
+  public MatchRecomputeScheduler(DatastoreService datastore) {
+    this(datastore, DEFAULT_BATCH_SIZE, SHARED_WRITE_LIMITER);
+  }
+
+  MatchRecomputeScheduler(DatastoreService datastore, int batchSize, RateLimiter writeLimiter) {
+    this.datastore = datastore;
+    this.batchSize = batchSize;
+    this.writeLimiter = writeLimiter;
+  }
+
+  /**
+  * Records that a user was just active, so pending recomputes for them are run first.
+  *
+  * @param userID The ID of the user who made a request
+  */
+  public static void recordActivity(String userID) {
+    if (userID != null) {
+      LAST_ACTIVE_MILLIS.put(userID, System.currentTimeMillis());
+    }
+  }
+
+  /**
+  * Enqueues recomputation for every user whose potential matches may change because a
+  * user's friend list changed.
+  *
+  * <p>Users who were added or removed from the friend list are marked so that their own
+  * friends are enqueued as well once the batch is run against a graph snapshot.
+  *
+  * @param userID The user whose friend list changed
+  * @param oldFriendIDs The friend list before the change
+  * @param newFriendIDs The friend list after the change
+  */
+  public void enqueueFriendListChange(String userID, Collection<String> oldFriendIDs,
+      Collection<String> newFriendIDs) {
+    ImmutableSet<String> oldFriends = ImmutableSet.copyOf(oldFriendIDs);
+    ImmutableSet<String> newFriends = ImmutableSet.copyOf(newFriendIDs);
+    if (oldFriends.equals(newFriends)) {
+      return;
+    }
+    Set<String> changedFriends = Sets.symmetricDifference(oldFriends, newFriends);
+
+    Map<String, Boolean> expandByUser = new LinkedHashMap<>();
+    expandByUser.put(userID, false);
+    for (String friendID : Sets.union(oldFriends, newFriends)) {
+      expandByUser.put(friendID, changedFriends.contains(friendID));
+    }
+    // The user who changed their friend list is clearly active right now
+    recordActivity(userID);
+    enqueue(expandByUser);
+  }
+
+  /**
+  * Recomputes the potential matches of the highest priority pending users.
+  *
+  * <p>The friend graph is loaded once for the whole batch, and every match-info entity that
+  * changed is written back in rate limited batches.
+  *
+  * @return The number of users whose potential matches were recomputed
+  */
+  public int runPendingBatch() {
+    List<Entity> tasks = datastore
+      .prepare(new Query(RECOMPUTE_TASK_ENTITY).addSort(PRIORITY_PROPERTY, SortDirection.DESCENDING))
+      .asList(FetchOptions.Builder.withLimit(batchSize));
+    if (tasks.isEmpty()) {
+      return 0;
+    }
+
+    UserFriendsMap friendsMap = UserFriendsMapLoader.loadFromDatastore(datastore);
+
+    Set<String> affectedUserIDs = new LinkedHashSet<>();
+    for (Entity task : tasks) {
+      String userID = task.getKey().getName();
+      affectedUserIDs.add(userID);
+      if (Boolean.TRUE.equals(task.getProperty(EXPAND_FRIENDS_PROPERTY))) {
+        affectedUserIDs.addAll(friendsMap.getUserFriendIDs(userID));
+      }
+    }
+
+    // Users without match information have never opened their feed, and get their potential
+    // matches computed when they first do
+    Collection<Entity> affectedMatchInfo =
+      MatchInfoRefresher.loadMatchInfo(datastore, affectedUserIDs).values();
+    List<Entity> changedMatchInfo = new ArrayList<>();
+    for (Entity matchInfo : affectedMatchInfo) {
+      String userID = (String) matchInfo.getProperty(MatchInfoRefresher.USER_ID_PROPERTY);
+      ExclusionSet decidedUsers =
+        ExclusionSet.of(friendsMap.getInterner(), MatchInfoRefresher.getDecidedIDs(matchInfo));
+      // New candidates are appended most mutual friends first
+      ImmutableSet<String> potentialMatches = PotentialMatchAlgorithm.rankByMutualFriends(userID,
+        PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap, decidedUsers), friendsMap);
+      if (MatchInfoRefresher.refreshPotentialMatches(matchInfo, potentialMatches)) {
+        changedMatchInfo.add(matchInfo);
+      }
+    }
+
+    for (List<Entity> writeBatch : Iterables.partition(changedMatchInfo, WRITE_BATCH_SIZE)) {
+      writeLimiter.acquire(writeBatch.size());
+      datastore.put(writeBatch);
+    }
+
+    removeCompletedTasks(tasks);
+    return affectedMatchInfo.size();
+  }
+
+  /**
+  * Writes a task for each user, merging with any task that is already pending so each user
+  * has at most one.
+  */
+  private void enqueue(Map<String, Boolean> expandByUser) {
+    List<Key> taskKeys = new ArrayList<>();
+    for (String userID : expandByUser.keySet()) {
+      taskKeys.add(KeyFactory.createKey(RECOMPUTE_TASK_ENTITY, userID));
+    }
+    Map<Key, Entity> pendingTasks = datastore.get(taskKeys);
+
+    long now = System.currentTimeMillis();
+    List<Entity> tasks = new ArrayList<>();
+    for (Key taskKey : taskKeys) {
+      String userID = taskKey.getName();
+      Entity pendingTask = pendingTasks.get(taskKey);
+
+      long priority = getLastActiveMillis(userID);
+      boolean expandFriends = expandByUser.get(userID);
+      if (pendingTask != null) {
+        priority = Math.max(priority, (Long) pendingTask.getProperty(PRIORITY_PROPERTY));
+        expandFriends |= Boolean.TRUE.equals(pendingTask.getProperty(EXPAND_FRIENDS_PROPERTY));
+      }
+
+      Entity task = new Entity(taskKey);
+      task.setProperty(PRIORITY_PROPERTY, priority);
+      task.setProperty(ENQUEUED_AT_PROPERTY, now);
+      task.setProperty(EXPAND_FRIENDS_PROPERTY, expandFriends);
+      tasks.add(task);
+    }
+    datastore.put(tasks);
+  }
+
+  /**
+  * Deletes the tasks that were processed, unless they were enqueued again while the batch
+  * was running.
+  */
+  private void removeCompletedTasks(List<Entity> processedTasks) {
+    List<Key> taskKeys = new ArrayList<>();
+    for (Entity task : processedTasks) {
+      taskKeys.add(task.getKey());
+    }
+    Map<Key, Entity> currentTasks = datastore.get(taskKeys);
+
+    List<Key> completedKeys = new ArrayList<>();
+    for (Entity task : processedTasks) {
+      Entity currentTask = currentTasks.get(task.getKey());
+      if (currentTask != null && currentTask.getProperty(ENQUEUED_AT_PROPERTY)
+          .equals(task.getProperty(ENQUEUED_AT_PROPERTY))) {
+        completedKeys.add(task.getKey());
+      }
+    }
+    datastore.delete(completedKeys);
+  }
+
+  private static long getLastActiveMillis(String userID) {
+    Long lastActive = LAST_ACTIVE_MILLIS.getIfPresent(userID);
+    return lastActive == null ? 0L : lastActive;
+  }
+}
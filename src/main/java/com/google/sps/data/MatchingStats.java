@@ -0,0 +1,65 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.data;
+
+/** How much work a single potential match search did, for relating graph shape to latency. */
+public class MatchingStats {
+  private final int friendsScanned;
+  private final int edgesTraversed;
+  private final int duplicatesDiscarded;
+  private final int exclusionsApplied;
+  private final int resultSize;
+  private final long elapsedNanos;
+
+  public MatchingStats(int friendsScanned, int edgesTraversed, int duplicatesDiscarded, int exclusionsApplied,
+      int resultSize, long elapsedNanos) {
+    this.friendsScanned = friendsScanned;
+    this.edgesTraversed = edgesTraversed;
+    this.duplicatesDiscarded = duplicatesDiscarded;
+    this.exclusionsApplied = exclusionsApplied;
+    this.resultSize = resultSize;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /** Returns the number of the user's friends whose friend lists were expanded. */
+  public int getFriendsScanned() {
+    return friendsScanned;
+  }
+
+  /** Returns the number of friend of friend entries examined. */
+  public int getEdgesTraversed() {
+    return edgesTraversed;
+  }
+
+  /** Returns the number of candidates dropped because another friend already reached them. */
+  public int getDuplicatesDiscarded() {
+    return duplicatesDiscarded;
+  }
+
+  /**
+  * Returns the number of friend of friend entries dropped because the user already made a
+  * decision on them. Entries for the user and their friends are not counted.
+  */
+  public int getExclusionsApplied() {
+    return exclusionsApplied;
+  }
+
+  public int getResultSize() {
+    return resultSize;
+  }
+
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+}
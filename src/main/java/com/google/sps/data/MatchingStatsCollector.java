@@ -0,0 +1,45 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.data;
+
+/**
+* Receives the {@link MatchingStats} of every potential match search.
+*
+* <p>Searches only tally plain local counters and hand them over once at the end, and skip
+* even that and the clock reads when the collector is disabled, so a disabled collector costs
+* nothing measurable.
+*/
+public interface MatchingStatsCollector {
+  MatchingStatsCollector DISABLED = new MatchingStatsCollector() {
+    @Override
+    public boolean isEnabled() {
+      return false;
+    }
+
+    @Override
+    public void record(MatchingStats stats) {}
+  };
+
+  /** A collector that discards everything, which searches detect to skip collecting at all. */
+  static MatchingStatsCollector disabled() {
+    return DISABLED;
+  }
+
+  default boolean isEnabled() {
+    return true;
+  }
+
+  /** Called once per finished search; may be called from several threads at once. */
+  void record(MatchingStats stats);
+}
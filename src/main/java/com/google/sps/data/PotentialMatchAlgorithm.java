@@ -14,11 +14,17 @@
 
 package com.google.sps.data;
 
-import java.util.function.Function;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableMap;
+import com.google.sps.data.friend_map.FriendListSketch;
+import com.google.sps.data.friend_map.InternedFriendGraph;
 import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
 import com.google.sps.data.friend_map.UserNode;
 
 /**
@@ -27,21 +33,43 @@ import com.google.sps.data.friend_map.UserNode;
 * <p>Potential matches are users with who a particular user shares at least one friend with.
 */
 public class PotentialMatchAlgorithm {
+  // Above this many friends on both sides, ranking estimates mutual friends from the sketches
+  // instead of intersecting the friend lists
+  private static final int EXACT_RANKING_MAX_FRIENDS = 4 * FriendListSketch.SKETCH_SIZE;
+
+  // Reused by the per-user searches, which run on request threads
+  private static final ThreadLocal<int[]> POTENTIAL_MATCHES_BUFFER = ThreadLocal.withInitial(() -> new int[0]);
+  private static final ThreadLocal<FriendsOfFriendsKernel.ExpansionCounters> EXPANSION_COUNTERS =
+    ThreadLocal.withInitial(FriendsOfFriendsKernel.ExpansionCounters::new);
 
   /**
   * Finds all of the potential matches for each user
   *
+  * <p>Runs {@link FriendsOfFriendsKernel} for every user with a single shared buffer, so the
+  * only allocations are the result sets themselves.
+  *
   * @param friendsMap object that contains the map of all direct friendships between all users
   * @return The map of each user ID to a set of the user IDs of all their potential matches
   */
   public static ImmutableMap<String, ImmutableSet<String>> findAllPotentialMatches(UserFriendsMap friendsMap) {
     Set<String> allUserIDs = friendsMap.getUserIDs();
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int[] potentialMatchesBuffer = new int[graph.getUserCount()];
 
-    ImmutableMap<String, ImmutableSet<String>> allPotentialMatches = allUserIDs
-      .stream()
-      .collect(ImmutableMap.toImmutableMap(Function.identity(), id -> findPotentialMatchesForUser(id, friendsMap)));
+    ImmutableMap.Builder<String, ImmutableSet<String>> allPotentialMatches = ImmutableMap.builder();
+    for (String userID : allUserIDs) {
+      int matchCount = FriendsOfFriendsKernel.findPotentialMatches(
+        graph, interner.getInternedID(userID), ExclusionSet.none(), potentialMatchesBuffer, null);
+
+      ImmutableSet.Builder<String> potentialMatchesIDs = ImmutableSet.builderWithExpectedSize(matchCount);
+      for (int i = 0; i < matchCount; i++) {
+        potentialMatchesIDs.add(interner.getUserID(potentialMatchesBuffer[i]));
+      }
+      allPotentialMatches.put(userID, potentialMatchesIDs.build());
+    }
 
-    return allPotentialMatches;
+    return allPotentialMatches.build();
   }
 
   /**
@@ -52,16 +80,189 @@ public class PotentialMatchAlgorithm {
   * @return The set of user IDs of the potential matches that are found
   */
   public static ImmutableSet<String> findPotentialMatchesForUser(String userID, UserFriendsMap friendsMap) {
-    ImmutableSet<String> userFriendIDs = friendsMap.getUserFriendIDs(userID);
+    return findPotentialMatchesForUser(userID, friendsMap, ExclusionSet.none());
+  }
+
+  /**
+  * Finds the set of potential matches for a single user, skipping users they already made a
+  * decision on.
+  *
+  * <p>Excluded users are dropped while the friends of friends are being expanded, so callers
+  * do not have to filter the result against the user's decision lists afterwards. The search
+  * runs in {@link FriendsOfFriendsKernel} with a per-thread buffer, and only the final matches
+  * are converted back to user IDs.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @param friendsMap The map of the direct friendships between all users
+  * @param exclusions The users that must not be returned, built over {@code friendsMap}'s interner
+  * @return The set of user IDs of the potential matches that are found
+  */
+  public static ImmutableSet<String> findPotentialMatchesForUser(String userID, UserFriendsMap friendsMap,
+      ExclusionSet exclusions) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int user = interner.getInternedID(userID);
+    if (user == UserIDInterner.NOT_INTERNED) {
+      return ImmutableSet.of();
+    }
+
+    int[] potentialMatchesBuffer = getPotentialMatchesBuffer(graph.getUserCount());
+    int matchCount =
+      FriendsOfFriendsKernel.findPotentialMatches(graph, user, exclusions, potentialMatchesBuffer, null);
+    return toUserIDs(interner, potentialMatchesBuffer, matchCount);
+  }
+
+  /**
+  * Finds the potential matches for a single user while bounding how much work a single
+  * well-connected friend can cause.
+  *
+  * <p>Friends are expanded from lowest to highest degree. A friend whose friend list is longer
+  * than the fan-out cap only contributes an evenly spaced sample of it, starting at an offset
+  * derived from the sampling seed and the friend's ID, so the same graph and seed always give
+  * the same result. Once the work budget is used up the remaining friends are skipped. Like the
+  * unlimited search, this runs in {@link FriendsOfFriendsKernel} over interned IDs.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @param friendsMap The map of the direct friendships between all users
+  * @param exclusions The users that must not be returned, built over {@code friendsMap}'s interner
+  * @param limits The fan-out cap, work budget and sampling seed
+  * @return The potential matches found, and whether any limit made them approximate
+  */
+  public static PotentialMatchResult findPotentialMatchesForUser(String userID, UserFriendsMap friendsMap,
+      ExclusionSet exclusions, ExpansionLimits limits) {
+    return findPotentialMatchesForUser(userID, friendsMap, exclusions, limits, MatchingStatsCollector.disabled());
+  }
+
+  /**
+  * Finds the potential matches for a single user within the given limits, reporting how much
+  * work the search did to a stats collector.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @param friendsMap The map of the direct friendships between all users
+  * @param exclusions The users that must not be returned, built over {@code friendsMap}'s interner
+  * @param limits The fan-out cap, work budget and sampling seed
+  * @param statsCollector Receives the stats of the search once it finishes, unless disabled
+  * @return The potential matches found, and whether any limit made them approximate
+  */
+  public static PotentialMatchResult findPotentialMatchesForUser(String userID, UserFriendsMap friendsMap,
+      ExclusionSet exclusions, ExpansionLimits limits, MatchingStatsCollector statsCollector) {
+    boolean collectStats = statsCollector.isEnabled();
+    long start = collectStats ? System.nanoTime() : 0;
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int user = interner.getInternedID(userID);
 
-    ImmutableSet<String> potentialMatchesIDs = userFriendIDs
+    if (user == UserIDInterner.NOT_INTERNED) {
+      if (collectStats) {
+        statsCollector.record(new MatchingStats(0, 0, 0, 0, 0, System.nanoTime() - start));
+      }
+      return new PotentialMatchResult(ImmutableSet.of(), /* approximate= */ false, /* edgesTraversed= */ 0);
+    }
+
+    FriendsOfFriendsKernel.ExpansionCounters counters = EXPANSION_COUNTERS.get();
+    int[] potentialMatchesBuffer = getPotentialMatchesBuffer(graph.getUserCount());
+    int matchCount = FriendsOfFriendsKernel.findPotentialMatches(
+      graph, user, exclusions, limits, potentialMatchesBuffer, counters);
+    ImmutableSet<String> result = toUserIDs(interner, potentialMatchesBuffer, matchCount);
+
+    if (collectStats) {
+      statsCollector.record(new MatchingStats(counters.getFriendsScanned(), counters.getEdgesTraversed(),
+        counters.getDuplicatesDiscarded(), counters.getExclusionsApplied(), result.size(),
+        System.nanoTime() - start));
+    }
+    return new PotentialMatchResult(result, counters.isApproximate(), counters.getEdgesTraversed());
+  }
+
+  /**
+  * Orders potential matches so the ones sharing the most friends with the user come first.
+  *
+  * <p>Candidates with the same number of mutual friends keep their order from
+  * {@code candidateIDs}, so ranking an already ranked list does not reshuffle it. When both the
+  * user and a candidate have more than {@code 4 * FriendListSketch.SKETCH_SIZE} friends, their
+  * count is estimated with {@link #estimateMutualFriends} rather than counted exactly, so
+  * ranking a well-connected user stays cheap at the cost of the sketch's error bounds.
+  *
+  * @param userID The user ID of the user whose potential matches are being ranked
+  * @param candidateIDs The user IDs of the potential matches
+  * @param friendsMap The map of the direct friendships between all users
+  * @return The potential matches, most mutual friends first
+  */
+  public static ImmutableSet<String> rankByMutualFriends(String userID, Collection<String> candidateIDs,
+      UserFriendsMap friendsMap) {
+    Map<String, Integer> mutualFriendCounts = new HashMap<>();
+    for (String candidateID : candidateIDs) {
+      mutualFriendCounts.put(candidateID, countMutualFriendsForRanking(userID, candidateID, friendsMap));
+    }
+    return candidateIDs
       .stream()
-      .flatMap(friendID -> friendsMap.getUserFriendIDs(friendID).stream())
-      .filter(potentialMatchID -> !potentialMatchID.equals(userID))
-      .filter(potentialMatchID -> !userFriendIDs.contains(potentialMatchID))
+      .sorted(Comparator.comparingInt((String candidateID) -> mutualFriendCounts.get(candidateID)).reversed())
       .collect(ImmutableSet.toImmutableSet());
+  }
+
+  /**
+  * Counts the friends two users have in common.
+  *
+  * <p>Intersects the users' sorted interned friend lists in place, so no sets are built. Used
+  * by {@link #rankByMutualFriends} for candidates with short friend lists.
+  *
+  * @param userID1 The user ID of the first user
+  * @param userID2 The user ID of the second user
+  * @param friendsMap The map of the direct friendships between all users
+  * @return The number of mutual friends, or 0 if either user is not in the map
+  */
+  public static int countMutualFriends(String userID1, String userID2, UserFriendsMap friendsMap) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int user1 = interner.getInternedID(userID1);
+    int user2 = interner.getInternedID(userID2);
+    if (user1 == UserIDInterner.NOT_INTERNED || user2 == UserIDInterner.NOT_INTERNED) {
+      return 0;
+    }
+    return graph.countMutualFriends(user1, user2);
+  }
 
-    return potentialMatchesIDs;
+  /**
+  * Estimates the number of friends two users have in common from their friend list sketches.
+  *
+  * <p>Much cheaper than {@link #countMutualFriends} for users with large friend lists, at the
+  * cost of the error bounds described on {@link FriendListSketch}. Exact when both users have
+  * at most {@link FriendListSketch#SKETCH_SIZE} friends. Used by {@link #rankByMutualFriends}
+  * when both users have long friend lists.
+  *
+  * @param userID1 The user ID of the first user
+  * @param userID2 The user ID of the second user
+  * @param friendsMap The map of the direct friendships between all users
+  * @return The estimated number of mutual friends
+  */
+  public static int estimateMutualFriends(String userID1, String userID2, UserFriendsMap friendsMap) {
+    return friendsMap.getFriendListSketch(userID1)
+      .estimateIntersectionSize(friendsMap.getFriendListSketch(userID2));
   }
-}
 
+  private static int countMutualFriendsForRanking(String userID1, String userID2, UserFriendsMap friendsMap) {
+    int fewestFriends =
+      Math.min(friendsMap.getUserFriendIDs(userID1).size(), friendsMap.getUserFriendIDs(userID2).size());
+    if (fewestFriends > EXACT_RANKING_MAX_FRIENDS) {
+      return estimateMutualFriends(userID1, userID2, friendsMap);
+    }
+    return countMutualFriends(userID1, userID2, friendsMap);
+  }
+
+  /** Returns this thread's buffer for interned potential matches, grown to the given size if needed. */
+  private static int[] getPotentialMatchesBuffer(int userCount) {
+    int[] buffer = POTENTIAL_MATCHES_BUFFER.get();
+    if (buffer.length < userCount) {
+      buffer = new int[userCount];
+      POTENTIAL_MATCHES_BUFFER.set(buffer);
+    }
+    return buffer;
+  }
+
+  private static ImmutableSet<String> toUserIDs(UserIDInterner interner, int[] internedIDs, int count) {
+    ImmutableSet.Builder<String> userIDs = ImmutableSet.builderWithExpectedSize(count);
+    for (int i = 0; i < count; i++) {
+      userIDs.add(interner.getUserID(internedIDs[i]));
+    }
+    return userIDs.build();
+  }
+}
@@ -0,0 +1,189 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.metrics.MetricsRegistry;
+
+/**
+* Picks the next potential match shown on a user's feed, creating their match information
+* the first time they open it.
+*
+* <p>Shared by {@code /potential-matches} and {@code /feed-card}, each of which passes in
+* the datastore it reads from.
+*/
+public class PotentialMatchFeed {
+  public static final String NO_POTENTIAL_MATCH_RESULT = "NO_POTENTIAL_MATCHES";
+  static final String THREE_HOP_IDS_PROPERTY = "three-hop-ids";
+
+  private static final String MATCHING_STATS_ENABLED_SYSTEM_PROPERTY = "sps.matching-stats.enabled";
+
+  private static final Logger logger = Logger.getLogger(PotentialMatchFeed.class.getName());
+
+  // Keeps feed requests for users with very popular friends fast; the nightly precompute
+  // replaces any approximate result with the exact one
+  private static final ExpansionLimits REQUEST_EXPANSION_LIMITS = ExpansionLimits.builder()
+    .setMaxFanOutPerFriend(1_000)
+    .setMaxEdgesTraversed(50_000)
+    .build();
+
+  // Bounds the fallback search that runs on the request path once a user's list runs out
+  private static final ExtendedMatchSearch EXTENDED_MATCH_SEARCH = ExtendedMatchSearch.builder()
+    .setMaxNodesVisited(20_000)
+    .setTimeBudget(200, TimeUnit.MILLISECONDS)
+    .setTargetCandidates(50)
+    .build();
+
+  // Set in appengine-web.xml; exported on /metrics when enabled
+  private static final MatchingStatsCollector MATCHING_STATS =
+    Boolean.getBoolean(MATCHING_STATS_ENABLED_SYSTEM_PROPERTY)
+      ? MetricsRegistry.getInstance().getMatchingStats()
+      : MatchingStatsCollector.disabled();
+
+  private final DatastoreService datastore;
+
+  public PotentialMatchFeed(DatastoreService datastore) {
+    this.datastore = datastore;
+  }
+
+  /**
+  * Given a specific user, retrieve their next potential match for their feed page.
+  *
+  * <p>If the user has run out of potential matches and asked for an extended search, their
+  * list is refilled with users up to three hops away.
+  *
+  * @param userID The user whose potential match is being retrieved
+  * @param extendedSearch Whether to fall back to the extended search when no matches are left
+  * @return The next potential match and its hop distance, or {@link #NO_POTENTIAL_MATCH_RESULT}
+  */
+  public MatchInformation advanceToNextPotentialMatch(String userID, boolean extendedSearch) {
+    Entity matchInfoEntity = loadUserMatchInformation(userID);
+
+    List<String> potentialMatches =
+      (List<String>) matchInfoEntity.getProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY);
+
+    if ((potentialMatches == null || potentialMatches.isEmpty()) && extendedSearch) {
+      potentialMatches = addExtendedMatchesToDatastore(userID, matchInfoEntity);
+    }
+
+    if (potentialMatches == null || potentialMatches.isEmpty()) {
+      return new MatchInformation(NO_POTENTIAL_MATCH_RESULT, /* hopDistance= */ 0);
+    }
+
+    String nextPotentialMatchID = potentialMatches.get(0);
+    List<String> threeHopIDs = (List<String>) matchInfoEntity.getProperty(THREE_HOP_IDS_PROPERTY);
+    boolean isThreeHops = threeHopIDs != null && threeHopIDs.contains(nextPotentialMatchID);
+    return isThreeHops
+        ? new MatchInformation(nextPotentialMatchID, /* hopDistance= */ 3)
+        : new MatchInformation(nextPotentialMatchID);
+  }
+
+  /**
+  * Loads the match information for a specified user if match information is not
+  * already in datastore.
+  *
+  * <p>Creates new match information entity for user if it had not already been stored.
+  *
+  * @param userID The ID of the user who's match information is being checked/loaded into datastore
+  * @return The datastore entity of the user's match information
+  */
+  private Entity loadUserMatchInformation(String userID) {
+    Entity matchInfoEntity = datastore.prepare(new Query(MatchInfoRefresher.MATCH_INFO_ENTITY).setFilter(
+      new FilterPredicate(MatchInfoRefresher.USER_ID_PROPERTY, FilterOperator.EQUAL, userID))).asSingleEntity();
+
+    if (matchInfoEntity != null) {
+      return matchInfoEntity;
+    }
+    return addMatchInfoToDatastore(userID);
+  }
+
+  /**
+  * Refills a user's empty potential matches with the results of the extended search.
+  *
+  * @param userID The user ID of the user whose potential matches ran out
+  * @param matchInfoEntity The entity of the user's match information from datastore
+  * @return The new potential matches, closest first
+  */
+  private List<String> addExtendedMatchesToDatastore(String userID, Entity matchInfoEntity) {
+    UserFriendsMap friendsMap = FriendGraphSnapshot.get(datastore);
+    ExclusionSet exclusions =
+      ExclusionSet.of(friendsMap.getInterner(), MatchInfoRefresher.getDecidedIDs(matchInfoEntity));
+
+    ExtendedMatchResult result = EXTENDED_MATCH_SEARCH.findPotentialMatches(userID, friendsMap, exclusions);
+    if (result.isBudgetExhausted()) {
+      logger.info("Extended search for user " + userID + " ran out of budget after visiting "
+        + result.getNodesVisited() + " users and " + result.getEdgesExamined() + " edges");
+    }
+    if (result.getHopDistances().isEmpty()) {
+      return ImmutableList.of();
+    }
+
+    ImmutableList<String> extendedMatches = result.getHopDistances().keySet().asList();
+    ImmutableList<String> threeHopIDs = result.getHopDistances().entrySet()
+      .stream()
+      .filter(entry -> entry.getValue() == 3)
+      .map(Map.Entry::getKey)
+      .collect(ImmutableList.toImmutableList());
+    matchInfoEntity.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, extendedMatches);
+    matchInfoEntity.setProperty(THREE_HOP_IDS_PROPERTY, threeHopIDs);
+    datastore.put(matchInfoEntity);
+
+    return extendedMatches;
+  }
+
+  /**
+  * Creates a new match-info entity and adds it to the datastore
+  *
+  * @param userID the user ID of the user whose match information is being stored
+  * @return The newly created user match information entity
+  */
+  private Entity addMatchInfoToDatastore(String userID) {
+    //Initialize the friend map
+    UserFriendsMap friendsMap = UserFriendsMapLoader.loadFromDatastore(datastore);
+
+    //Run the potential matching algorithm to find all potential matches
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap,
+      ExclusionSet.none(), REQUEST_EXPANSION_LIMITS, MATCHING_STATS);
+    if (result.isApproximate()) {
+      logger.info("Potential matches for user " + userID + " were sampled after traversing "
+        + result.getEdgesTraversed() + " edges");
+    }
+    ImmutableSet<String> potentialMatches = result.getPotentialMatchIDs();
+
+    //Add new Match Info entity to datastore
+    Entity newMatchInfo = new Entity(MatchInfoRefresher.MATCH_INFO_ENTITY);
+    newMatchInfo.setProperty(MatchInfoRefresher.USER_ID_PROPERTY, userID);
+    newMatchInfo.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, ImmutableList.copyOf(potentialMatches));
+    newMatchInfo.setProperty(MatchInfoRefresher.FRIENDED_IDS_PROPERTY, ImmutableList.of());
+    newMatchInfo.setProperty(MatchInfoRefresher.PASSED_IDS_PROPERTY, ImmutableList.of());
+    newMatchInfo.setProperty(MatchInfoRefresher.MATCHES_LIST_PROPERTY, ImmutableList.of());
+
+    datastore.put(newMatchInfo);
+
+    return newMatchInfo;
+  }
+}
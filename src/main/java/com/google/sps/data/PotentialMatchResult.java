@@ -0,0 +1,46 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+* The potential matches found for a user by a bounded expansion, and whether the bounds
+* caused any candidates to be skipped.
+*/
+public class PotentialMatchResult {
+  private final ImmutableSet<String> potentialMatchIDs;
+  private final boolean approximate;
+  private final int edgesTraversed;
+
+  public PotentialMatchResult(ImmutableSet<String> potentialMatchIDs, boolean approximate, int edgesTraversed) {
+    this.potentialMatchIDs = potentialMatchIDs;
+    this.approximate = approximate;
+    this.edgesTraversed = edgesTraversed;
+  }
+
+  public ImmutableSet<String> getPotentialMatchIDs() {
+    return potentialMatchIDs;
+  }
+
+  /** Returns whether a fan-out cap or the work budget stopped part of the expansion. */
+  public boolean isApproximate() {
+    return approximate;
+  }
+
+  public int getEdgesTraversed() {
+    return edgesTraversed;
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+* Summary of a single run of the bulk potential match precompute job.
+*/
+public class PrecomputeReport {
+  private final int usersProcessed;
+  private final int entitiesWritten;
+  private final long elapsedMillis;
+  private final boolean completed;
+  private final double usersPerSecond;
+  private final double entitiesPerSecond;
+
+  /**
+  * @param usersProcessed The number of users whose potential matches were computed in this run
+  * @param entitiesWritten The number of match-info entities written in this run
+  * @param elapsedMillis The wall time of this run
+  * @param completed Whether every user was processed, or the run stopped at a checkpoint
+  */
+  public PrecomputeReport(int usersProcessed, int entitiesWritten, long elapsedMillis, boolean completed) {
+    this.usersProcessed = usersProcessed;
+    this.entitiesWritten = entitiesWritten;
+    this.elapsedMillis = elapsedMillis;
+    this.completed = completed;
+    double elapsedSeconds = Math.max(elapsedMillis, 1) / 1000.0;
+    this.usersPerSecond = usersProcessed / elapsedSeconds;
+    this.entitiesPerSecond = entitiesWritten / elapsedSeconds;
+  }
+
+  public int getUsersProcessed() {
+    return usersProcessed;
+  }
+
+  public int getEntitiesWritten() {
+    return entitiesWritten;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public boolean isCompleted() {
+    return completed;
+  }
+
+  public double getUsersPerSecond() {
+    return usersPerSecond;
+  }
+
+  public double getEntitiesPerSecond() {
+    return entitiesPerSecond;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      "processed %d users and wrote %d entities in %d ms (%.1f users/sec, %.1f entities/sec)%s",
+      usersProcessed, entitiesWritten, elapsedMillis, usersPerSecond, entitiesPerSecond,
+      completed ? "" : ", stopped at checkpoint");
+  }
+}
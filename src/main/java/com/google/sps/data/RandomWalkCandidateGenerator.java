@@ -0,0 +1,211 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+/**
+* Finds potential matches by running short random walks from a user instead of expanding every
+* friend of every friend.
+*
+* <p>Each walk starts at the user, repeatedly steps to a random friend of the current user, and
+* ends (restarting from the user with the next walk) with the restart probability after every
+* step or once it reaches the maximum length. Users that are reached often are well connected
+* to the user, so candidates are ranked by how many times they were visited. Every few walks
+* the top of the ranking is compared with the previous check, and the walks stop early once it
+* has not changed for several checks in a row.
+*
+* <p>The work done is bounded by the number of walks times their maximum length, no matter how
+* large the user's neighborhood is, so the result is always approximate. Walks are seeded from
+* the configured seed and the user ID, so the same snapshot always gives the same candidates.
+*/
+public class RandomWalkCandidateGenerator {
+  private final int maxWalks;
+  private final int maxWalkLength;
+  private final double restartProbability;
+  private final int topK;
+  private final int stabilityCheckInterval;
+  private final int requiredStableChecks;
+  private final long seed;
+
+  private RandomWalkCandidateGenerator(Builder builder) {
+    this.maxWalks = builder.maxWalks;
+    this.maxWalkLength = builder.maxWalkLength;
+    this.restartProbability = builder.restartProbability;
+    this.topK = builder.topK;
+    this.stabilityCheckInterval = builder.stabilityCheckInterval;
+    this.requiredStableChecks = builder.requiredStableChecks;
+    this.seed = builder.seed;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+  * Finds the highest ranked potential matches of a user.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @param friendsMap The map of the direct friendships between all users
+  * @param exclusions The users that must not be returned, built over {@code friendsMap}'s interner
+  * @return Up to the configured top K potential matches, most visited first, with the number of
+  *     steps walked as the edges traversed
+  */
+  public PotentialMatchResult findPotentialMatches(String userID, UserFriendsMap friendsMap,
+      ExclusionSet exclusions) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    UserIDInterner interner = graph.getInterner();
+    int user = interner.getInternedID(userID);
+    if (user == UserIDInterner.NOT_INTERNED || graph.getDegree(user) == 0) {
+      return new PotentialMatchResult(ImmutableSet.of(), /* approximate= */ false, 0);
+    }
+
+    Random random = new Random(Hashing.murmur3_128().newHasher()
+      .putLong(seed)
+      .putUnencodedChars(userID)
+      .hash()
+      .asLong());
+    // Sized by what the walks touch rather than by the graph
+    Map<Integer, Integer> visitCounts = new HashMap<>();
+    List<Integer> previousTopK = ImmutableList.of();
+    int stableChecks = 0;
+    int steps = 0;
+
+    for (int walk = 1; walk <= maxWalks; walk++) {
+      int current = user;
+      for (int length = 0; length < maxWalkLength; length++) {
+        int degree = graph.getDegree(current);
+        if (degree == 0) {
+          break;
+        }
+        current = graph.getFriendAt(graph.getFriendsStart(current) + random.nextInt(degree));
+        steps++;
+        if (isCandidate(graph, user, current, exclusions)) {
+          visitCounts.merge(current, 1, Integer::sum);
+        }
+        if (random.nextDouble() < restartProbability) {
+          break;
+        }
+      }
+
+      if (walk % stabilityCheckInterval == 0) {
+        List<Integer> currentTopK = getTopK(visitCounts);
+        stableChecks = currentTopK.equals(previousTopK) ? stableChecks + 1 : 0;
+        previousTopK = currentTopK;
+        if (stableChecks >= requiredStableChecks) {
+          break;
+        }
+      }
+    }
+
+    ImmutableSet<String> potentialMatchIDs = getTopK(visitCounts)
+      .stream()
+      .map(interner::getUserID)
+      .collect(ImmutableSet.toImmutableSet());
+    return new PotentialMatchResult(potentialMatchIDs, /* approximate= */ true, steps);
+  }
+
+  private static boolean isCandidate(InternedFriendGraph graph, int user, int visited,
+      ExclusionSet exclusions) {
+    return visited != user && !exclusions.isExcluded(visited) && !graph.areFriends(user, visited);
+  }
+
+  /** Returns the most visited users, breaking ties by interned ID so the order is stable. */
+  private List<Integer> getTopK(Map<Integer, Integer> visitCounts) {
+    return visitCounts.entrySet()
+      .stream()
+      .sorted(Comparator.<Map.Entry<Integer, Integer>>comparingInt(Map.Entry::getValue)
+        .reversed()
+        .thenComparingInt(Map.Entry::getKey))
+      .limit(topK)
+      .map(Map.Entry::getKey)
+      .collect(Collectors.toList());
+  }
+
+  /** Builder for {@link RandomWalkCandidateGenerator}. */
+  public static class Builder {
+    private int maxWalks = 2_000;
+    private int maxWalkLength = 4;
+    private double restartProbability = 0.3;
+    private int topK = 50;
+    private int stabilityCheckInterval = 100;
+    private int requiredStableChecks = 3;
+    private long seed = 0L;
+
+    private Builder() {}
+
+    /** Sets the number of walks run if the ranking never stabilizes. */
+    public Builder setMaxWalks(int maxWalks) {
+      Preconditions.checkArgument(maxWalks > 0, "walk count must be positive");
+      this.maxWalks = maxWalks;
+      return this;
+    }
+
+    /** Sets the number of steps after which a walk always restarts. */
+    public Builder setMaxWalkLength(int maxWalkLength) {
+      Preconditions.checkArgument(maxWalkLength > 0, "walk length must be positive");
+      this.maxWalkLength = maxWalkLength;
+      return this;
+    }
+
+    /** Sets the probability of restarting from the user after each step. */
+    public Builder setRestartProbability(double restartProbability) {
+      Preconditions.checkArgument(restartProbability >= 0 && restartProbability <= 1,
+        "restart probability must be between 0 and 1");
+      this.restartProbability = restartProbability;
+      return this;
+    }
+
+    /** Sets how many of the most visited candidates are returned and checked for stability. */
+    public Builder setTopK(int topK) {
+      Preconditions.checkArgument(topK > 0, "top K must be positive");
+      this.topK = topK;
+      return this;
+    }
+
+    /**
+    * Sets how often the ranking is checked, and how many checks in a row must find the same top
+    * K before the walks stop early.
+    */
+    public Builder setEarlyStopping(int stabilityCheckInterval, int requiredStableChecks) {
+      Preconditions.checkArgument(stabilityCheckInterval > 0, "check interval must be positive");
+      Preconditions.checkArgument(requiredStableChecks > 0, "stable check count must be positive");
+      this.stabilityCheckInterval = stabilityCheckInterval;
+      this.requiredStableChecks = requiredStableChecks;
+      return this;
+    }
+
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public RandomWalkCandidateGenerator build() {
+      return new RandomWalkCandidateGenerator(this);
+    }
+  }
+}
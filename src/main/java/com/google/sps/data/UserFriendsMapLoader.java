@@ -0,0 +1,102 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.sps.data.friend_map.AsymmetricEdgePolicy;
+import com.google.sps.data.friend_map.CompressedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserNode;
+
+/**
+* Loads a snapshot of the friend graph of all current app users from datastore.
+*
+* <p>A snapshot is a single scan over every User entity, so callers that need the graph
+* for several users should load it once and share it.
+*/
+public class UserFriendsMapLoader {
+  private static final String USER_ENTITY = "User";
+  private static final String USER_ID_PROPERTY = "id";
+  private static final String USER_FRIENDS_LIST_PROPERTY = "friends-list";
+  private static final int FETCH_CHUNK_SIZE = 500;
+  // Friend lists are saved whenever a user logs in, so the other side may just be out of date
+  private static final AsymmetricEdgePolicy EDGE_POLICY = AsymmetricEdgePolicy.UNION;
+
+  /**
+  * Builds the friend map from every User entity currently in datastore.
+  *
+  * <p>Entities are streamed straight into a {@link UserFriendsMap.Builder}, so no list of
+  * entities or set of {@link UserNode}s is held while the map is built. Friendships are
+  * normalized so that one listed by only one of the two users is seen by both.
+  *
+  * @param datastore The datastore to read the User entities from
+  * @return The map of the direct friendships between all users
+  */
+  public static UserFriendsMap loadFromDatastore(DatastoreService datastore) {
+    PreparedQuery results = datastore.prepare(new Query(USER_ENTITY));
+
+    UserFriendsMap.Builder builder = UserFriendsMap.builder().normalizeEdges(EDGE_POLICY);
+    for (Entity userEntity : results.asIterable(FetchOptions.Builder.withChunkSize(FETCH_CHUNK_SIZE))) {
+      builder.addUser(
+        (String) userEntity.getProperty(USER_ID_PROPERTY),
+        (List<String>) userEntity.getProperty(USER_FRIENDS_LIST_PROPERTY));
+    }
+    return builder.build();
+  }
+
+  /**
+  * Builds a compressed friend graph from every User entity currently in datastore.
+  *
+  * <p>Reads the users twice in user ID order: once projected to their IDs to build the
+  * dictionary, then in full to stream each friend list into a
+  * {@link CompressedFriendGraph.Builder}, so only the IDs and the encoded graph are ever held.
+  * Unlike {@link #loadFromDatastore}, friend lists are taken as stored, so a friendship listed
+  * by only one of the two users is only seen from that side.
+  *
+  * @param datastore The datastore to read the User entities from
+  * @return The compressed graph of the direct friendships between all users
+  */
+  public static CompressedFriendGraph loadCompressedFromDatastore(DatastoreService datastore) {
+    Query idQuery = new Query(USER_ENTITY)
+      .addProjection(new PropertyProjection(USER_ID_PROPERTY, String.class))
+      .addSort(USER_ID_PROPERTY)
+      .setDistinct(true);
+    PreparedQuery idResults = datastore.prepare(idQuery);
+    List<String> sortedIDs = new ArrayList<>();
+    for (Entity idEntity : idResults.asIterable(FetchOptions.Builder.withChunkSize(FETCH_CHUNK_SIZE))) {
+      sortedIDs.add((String) idEntity.getProperty(USER_ID_PROPERTY));
+    }
+
+    CompressedFriendGraph.Builder builder = CompressedFriendGraph.builder(sortedIDs);
+    String previousID = null;
+    PreparedQuery results = datastore.prepare(new Query(USER_ENTITY).addSort(USER_ID_PROPERTY));
+    for (Entity userEntity : results.asIterable(FetchOptions.Builder.withChunkSize(FETCH_CHUNK_SIZE))) {
+      String userID = (String) userEntity.getProperty(USER_ID_PROPERTY);
+      // A user saved twice keeps the first friend list read
+      if (!userID.equals(previousID)) {
+        builder.addFriendList(userID, (List<String>) userEntity.getProperty(USER_FRIENDS_LIST_PROPERTY));
+        previousID = userID;
+      }
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,387 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* A read-only friend graph compressed to a few bytes per friendship, for instances whose heap
+* cannot hold a {@link UserFriendsMap}.
+*
+* <p>User IDs are kept in a {@link FrontCodedDictionary} and users are numbered by their
+* position in it. Each user's sorted friend list is encoded as:
+* <ul>
+*   <li>the number of friends, as a varint
+*   <li>how many users back the reference list is, or 0 for none; a user's list may reference
+*       one of the {@link #REFERENCE_WINDOW} lists before it, which is worth it when the two
+*       lists share many friends
+*   <li>with a reference, a bitmask over the reference list marking the friends copied from it
+*   <li>the remaining friends as gaps: the first relative to the user's own number, each later
+*       one relative to the one before it, all as varints
+* </ul>
+*
+* <p>References can chain, but never more than {@link #MAX_REFERENCE_CHAIN} lists deep, which
+* bounds the cost of decoding a single list with {@link #getUserFriendIDs}. Iterating over the
+* whole graph with {@link #forEachFriendList} keeps the last few decoded lists, so references
+* cost nothing extra there.
+*
+* <p>A graph can be built from a map of friend lists, or streamed in with a {@link Builder}
+* that only keeps the last few friend lists while encoding.
+*/
+public class CompressedFriendGraph {
+  static final int REFERENCE_WINDOW = 7;
+  static final int MAX_REFERENCE_CHAIN = 3;
+
+  private static final int[] NO_FRIENDS = new int[0];
+
+  private final FrontCodedDictionary dictionary;
+  private final byte[] adjacency;
+  private final int[] offsets;
+  private final long friendshipCount;
+  private final int maxDegree;
+
+  private CompressedFriendGraph(FrontCodedDictionary dictionary, byte[] adjacency, int[] offsets,
+      long friendshipCount, int maxDegree) {
+    this.dictionary = dictionary;
+    this.adjacency = adjacency;
+    this.offsets = offsets;
+    this.friendshipCount = friendshipCount;
+    this.maxDegree = maxDegree;
+  }
+
+  /**
+  * Compresses a map of friend lists. Friends that are not keys of the map are dropped.
+  *
+  * @param friendMap The map of user IDs to the IDs of their friends
+  * @return The compressed graph
+  */
+  public static CompressedFriendGraph of(Map<String, ? extends Collection<String>> friendMap) {
+    List<String> sortedIDs = new ArrayList<>(friendMap.keySet());
+    sortedIDs.sort(null);
+    Builder builder = builder(sortedIDs);
+    for (String userID : sortedIDs) {
+      builder.addFriendList(userID, friendMap.get(userID));
+    }
+    return builder.build();
+  }
+
+  /** Compresses the friend lists of a friend map snapshot. */
+  public static CompressedFriendGraph of(UserFriendsMap friendsMap) {
+    return of(friendsMap.getFriendMap());
+  }
+
+  /**
+  * Starts a graph whose friend lists are added one user at a time, so they never all have to be
+  * in memory at once.
+  *
+  * @param sortedUserIDs The IDs of every user in the graph, sorted in natural string order
+  *     without duplicates
+  * @return The builder, which expects the friend lists in the same order
+  */
+  public static Builder builder(List<String> sortedUserIDs) {
+    return new Builder(FrontCodedDictionary.of(sortedUserIDs));
+  }
+
+  public int getUserCount() {
+    return dictionary.size();
+  }
+
+  /** Returns the number of friend list entries, which counts each friendship from both sides. */
+  public long getFriendshipCount() {
+    return friendshipCount;
+  }
+
+  /** Returns the ID of the user with a given number. */
+  public String getUserID(int user) {
+    return dictionary.get(user);
+  }
+
+  /** Returns the number of a user, or {@link UserIDInterner#NOT_INTERNED} if they are not in the graph. */
+  public int getUserNumber(String userID) {
+    return dictionary.indexOf(userID);
+  }
+
+  /** Decodes a user's friend list, like {@link UserFriendsMap#getUserFriendIDs}. */
+  public ImmutableSet<String> getUserFriendIDs(String userID) {
+    int user = getUserNumber(userID);
+    if (user == UserIDInterner.NOT_INTERNED) {
+      return ImmutableSet.of();
+    }
+    int[] friends = getFriends(user);
+    ImmutableSet.Builder<String> friendIDs = ImmutableSet.builderWithExpectedSize(friends.length);
+    for (int friend : friends) {
+      friendIDs.add(dictionary.get(friend));
+    }
+    return friendIDs.build();
+  }
+
+  /** Decodes a user's sorted friend list as user numbers. */
+  public int[] getFriends(int user) {
+    int[] friends = new int[readDegree(user)];
+    decode(user, friends, null);
+    return friends;
+  }
+
+  /**
+  * Decodes every friend list in user number order.
+  *
+  * <p>The array passed to the consumer is reused for the next user, so it must not be kept.
+  */
+  public void forEachFriendList(FriendListConsumer consumer) {
+    int[][] recentLists = new int[REFERENCE_WINDOW + 1][maxDegree];
+    int[] recentDegrees = new int[REFERENCE_WINDOW + 1];
+    RecentLists recent = new RecentLists(recentLists, recentDegrees);
+    for (int user = 0; user < getUserCount(); user++) {
+      int[] friends = recentLists[user % recentLists.length];
+      int degree = decode(user, friends, recent);
+      recentDegrees[user % recentLists.length] = degree;
+      consumer.accept(user, friends, degree);
+    }
+  }
+
+  /** Returns the approximate number of bytes the graph occupies, including the dictionary. */
+  public long getSizeInBytes() {
+    return adjacency.length + 4L * offsets.length + dictionary.getSizeInBytes();
+  }
+
+  /** Receives one decoded friend list at a time from {@link #forEachFriendList}. */
+  @FunctionalInterface
+  public interface FriendListConsumer {
+    /**
+    * @param user The number of the user
+    * @param friends Holds the user's sorted friend numbers in its first {@code degree} entries
+    * @param degree The number of friends
+    */
+    void accept(int user, int[] friends, int degree);
+  }
+
+  /**
+  * Decodes a friend list into {@code out}.
+  *
+  * @param recent The lists decoded just before this one, or {@code null} to decode references
+  *     from scratch
+  * @return The number of friends
+  */
+  private int decode(int user, int[] out, RecentLists recent) {
+    VarInts.Reader reader = new VarInts.Reader(adjacency, offsets[user]);
+    int degree = reader.readVarInt();
+    if (degree == 0) {
+      return 0;
+    }
+
+    int referenceDistance = reader.readVarInt();
+    int[] copied = NO_FRIENDS;
+    int copiedCount = 0;
+    if (referenceDistance > 0) {
+      int reference = user - referenceDistance;
+      int[] referenceList;
+      int referenceDegree;
+      if (recent != null) {
+        referenceList = recent.lists[reference % recent.lists.length];
+        referenceDegree = recent.degrees[reference % recent.lists.length];
+      } else {
+        referenceList = new int[readDegree(reference)];
+        referenceDegree = decode(reference, referenceList, null);
+      }
+      copied = new int[referenceDegree];
+      for (int maskByte = 0; maskByte * 8 < referenceDegree; maskByte++) {
+        int mask = reader.readByte();
+        for (int bit = 0; bit < 8 && maskByte * 8 + bit < referenceDegree; bit++) {
+          if ((mask & (1 << bit)) != 0) {
+            copied[copiedCount++] = referenceList[maskByte * 8 + bit];
+          }
+        }
+      }
+    }
+
+    int extraCount = degree - copiedCount;
+    int[] extras = new int[extraCount];
+    int previous = user;
+    for (int i = 0; i < extraCount; i++) {
+      extras[i] = i == 0
+          ? user + VarInts.unZigZag(reader.readVarInt())
+          : previous + 1 + reader.readVarInt();
+      previous = extras[i];
+    }
+
+    // Both parts are sorted, so merging them gives the sorted friend list
+    int i = 0;
+    int j = 0;
+    for (int position = 0; position < degree; position++) {
+      out[position] = j == extraCount || (i < copiedCount && copied[i] < extras[j]) ? copied[i++] : extras[j++];
+    }
+    return degree;
+  }
+
+  private int readDegree(int user) {
+    return new VarInts.Reader(adjacency, offsets[user]).readVarInt();
+  }
+
+  /**
+  * Encodes one friend list.
+  *
+  * @param referenceDistance How many users back the reference list is, or 0 for none
+  * @param referenceList The sorted reference list, or {@code null} for none
+  */
+  private static byte[] encodeList(int user, int[] friends, int referenceDistance, int[] referenceList) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    VarInts.write(out, friends.length);
+    if (friends.length == 0) {
+      return out.toByteArray();
+    }
+    VarInts.write(out, referenceDistance);
+
+    int[] extras = friends;
+    int extraCount = friends.length;
+    if (referenceList != null) {
+      extras = new int[friends.length];
+      extraCount = 0;
+      byte[] mask = new byte[(referenceList.length + 7) / 8];
+      int r = 0;
+      for (int friend : friends) {
+        while (r < referenceList.length && referenceList[r] < friend) {
+          r++;
+        }
+        if (r < referenceList.length && referenceList[r] == friend) {
+          mask[r / 8] |= 1 << (r % 8);
+        } else {
+          extras[extraCount++] = friend;
+        }
+      }
+      out.write(mask, 0, mask.length);
+    }
+
+    int previous = user;
+    for (int i = 0; i < extraCount; i++) {
+      VarInts.write(out, i == 0 ? VarInts.zigZag(extras[i] - user) : extras[i] - previous - 1);
+      previous = extras[i];
+    }
+    return out.toByteArray();
+  }
+
+  /**
+  * Encodes friend lists as they are added, in user ID order.
+  *
+  * <p>Only the lists of the last {@link #REFERENCE_WINDOW} users are kept to pick references
+  * from, so building never holds more than that many friend lists besides the encoded bytes.
+  */
+  public static class Builder {
+    private final FrontCodedDictionary dictionary;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final int[] offsets;
+    // The friend lists and reference chain lengths of the last few users, indexed by user
+    // number modulo their count
+    private final int[][] recentLists = new int[REFERENCE_WINDOW + 1][];
+    private final int[] recentChainLengths = new int[REFERENCE_WINDOW + 1];
+    private int nextUser = 0;
+    private long friendshipCount = 0;
+    private int maxDegree = 0;
+
+    private Builder(FrontCodedDictionary dictionary) {
+      this.dictionary = dictionary;
+      this.offsets = new int[dictionary.size()];
+    }
+
+    /**
+    * Adds a user's friend list. Users that are skipped have no friends, and friends that are
+    * not in the graph's users are dropped.
+    *
+    * @param userID The ID of the user, which must come after every user added so far
+    * @param friendIDs The IDs of the user's friends, or {@code null} for none
+    */
+    public Builder addFriendList(String userID, Collection<String> friendIDs) {
+      int user = dictionary.indexOf(userID);
+      Preconditions.checkArgument(user != UserIDInterner.NOT_INTERNED, "%s is not one of the graph's users", userID);
+      Preconditions.checkArgument(user >= nextUser, "friend lists must be added once each, in user ID order");
+      while (nextUser < user) {
+        encodeNext(NO_FRIENDS);
+      }
+      encodeNext(toSortedFriends(friendIDs));
+      return this;
+    }
+
+    public CompressedFriendGraph build() {
+      while (nextUser < offsets.length) {
+        encodeNext(NO_FRIENDS);
+      }
+      return new CompressedFriendGraph(dictionary, out.toByteArray(), offsets, friendshipCount, maxDegree);
+    }
+
+    private int[] toSortedFriends(Collection<String> friendIDs) {
+      if (friendIDs == null || friendIDs.isEmpty()) {
+        return NO_FRIENDS;
+      }
+      int[] friends = new int[friendIDs.size()];
+      int count = 0;
+      for (String friendID : friendIDs) {
+        int friend = dictionary.indexOf(friendID);
+        if (friend != UserIDInterner.NOT_INTERNED) {
+          friends[count++] = friend;
+        }
+      }
+      Arrays.sort(friends, 0, count);
+      int distinct = 0;
+      for (int i = 0; i < count; i++) {
+        if (distinct == 0 || friends[i] != friends[distinct - 1]) {
+          friends[distinct++] = friends[i];
+        }
+      }
+      return Arrays.copyOf(friends, distinct);
+    }
+
+    private void encodeNext(int[] friends) {
+      int user = nextUser++;
+      offsets[user] = out.size();
+      friendshipCount += friends.length;
+      maxDegree = Math.max(maxDegree, friends.length);
+
+      byte[] best = encodeList(user, friends, 0, null);
+      int bestDistance = 0;
+      for (int distance = 1; distance <= REFERENCE_WINDOW && distance <= user && friends.length > 0; distance++) {
+        int reference = (user - distance) % recentLists.length;
+        if (recentChainLengths[reference] >= MAX_REFERENCE_CHAIN || recentLists[reference].length == 0) {
+          continue;
+        }
+        byte[] candidate = encodeList(user, friends, distance, recentLists[reference]);
+        if (candidate.length < best.length) {
+          best = candidate;
+          bestDistance = distance;
+        }
+      }
+      recentChainLengths[user % recentLists.length] =
+        bestDistance == 0 ? 0 : recentChainLengths[(user - bestDistance) % recentLists.length] + 1;
+      recentLists[user % recentLists.length] = friends;
+      out.write(best, 0, best.length);
+    }
+  }
+
+  /** The lists decoded most recently while iterating, indexed by user number modulo their count. */
+  private static class RecentLists {
+    private final int[][] lists;
+    private final int[] degrees;
+
+    private RecentLists(int[][] lists, int[] degrees) {
+      this.lists = lists;
+      this.degrees = degrees;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.Longs;
+
+/**
+* A fixed-size summary of a friend list that estimates mutual friend counts without reading
+* the friend lists themselves.
+*
+* <p>The sketch keeps the {@link #SKETCH_SIZE} smallest 64-bit hashes of the friend IDs (a
+* bottom-k MinHash) along with the friend count. The smallest hashes of the union of two friend
+* lists are a uniform sample of that union, so the share of them found in both sketches
+* estimates the Jaccard similarity {@code J = |A ∩ B| / |A ∪ B|}, and from it
+* {@code |A ∩ B| = J (|A| + |B|) / (1 + J)}.
+*
+* <p>Error bounds: the Jaccard estimate has a standard error of about
+* {@code sqrt(J (1 - J) / SKETCH_SIZE)}, which is at most 0.045 with 128 hashes, and the
+* intersection estimate's error is that times {@code |A ∪ B|}. When both friend lists have at
+* most {@link #SKETCH_SIZE} friends the sketches hold every hash and the estimates are exact,
+* apart from 64-bit hash collisions.
+*/
+public class FriendListSketch {
+  public static final int SKETCH_SIZE = 128;
+
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+  // The smallest hashes of the friend IDs, sorted ascending without duplicates
+  private final long[] minHashes;
+  private final int friendCount;
+
+  private FriendListSketch(long[] minHashes, int friendCount) {
+    this.minHashes = minHashes;
+    this.friendCount = friendCount;
+  }
+
+  /**
+  * Builds the sketch of a friend list.
+  *
+  * @param friendIDs The user IDs of the friends, or {@code null} for an empty list
+  * @return The sketch of the friend list
+  */
+  public static FriendListSketch of(Collection<String> friendIDs) {
+    if (friendIDs == null || friendIDs.isEmpty()) {
+      return new FriendListSketch(new long[0], 0);
+    }
+
+    long[] hashes = new long[friendIDs.size()];
+    int position = 0;
+    for (String friendID : friendIDs) {
+      hashes[position++] = hash(friendID);
+    }
+    Arrays.sort(hashes);
+
+    int distinct = 1;
+    for (int i = 1; i < hashes.length; i++) {
+      if (hashes[i] != hashes[distinct - 1]) {
+        hashes[distinct++] = hashes[i];
+      }
+    }
+    return new FriendListSketch(Arrays.copyOf(hashes, Math.min(distinct, SKETCH_SIZE)), distinct);
+  }
+
+  /**
+  * Rebuilds a sketch from the values written by {@link #getStoredHashes()}.
+  *
+  * @param storedHashes The stored hashes, in the order they were written
+  * @param friendCount The number of distinct friends the sketch was built from
+  * @return The sketch
+  */
+  public static FriendListSketch fromStoredHashes(List<Long> storedHashes, long friendCount) {
+    return new FriendListSketch(Longs.toArray(storedHashes), (int) friendCount);
+  }
+
+  /** Returns the hashes of the sketch as a list that can be stored as a Datastore property. */
+  public ImmutableList<Long> getStoredHashes() {
+    return ImmutableList.copyOf(Longs.asList(minHashes));
+  }
+
+  public int getFriendCount() {
+    return friendCount;
+  }
+
+  /** Returns whether the sketch holds the hash of every friend, which makes its estimates exact. */
+  public boolean isExact() {
+    return minHashes.length == friendCount;
+  }
+
+  /** Estimates the Jaccard similarity of the two friend lists, between 0 and 1. */
+  public double estimateJaccard(FriendListSketch other) {
+    // Exact sketches can be compared in full; otherwise only the smallest hashes of the union
+    // are a uniform sample of it
+    int maxSampleSize = isExact() && other.isExact() ? Integer.MAX_VALUE : SKETCH_SIZE;
+    int unionSampleSize = 0;
+    int shared = 0;
+    int i = 0;
+    int j = 0;
+    while (unionSampleSize < maxSampleSize && (i < minHashes.length || j < other.minHashes.length)) {
+      if (j == other.minHashes.length || (i < minHashes.length && minHashes[i] < other.minHashes[j])) {
+        i++;
+      } else if (i == minHashes.length || minHashes[i] > other.minHashes[j]) {
+        j++;
+      } else {
+        shared++;
+        i++;
+        j++;
+      }
+      unionSampleSize++;
+    }
+    return unionSampleSize == 0 ? 0 : (double) shared / unionSampleSize;
+  }
+
+  /** Estimates the number of friends the two friend lists have in common. */
+  public int estimateIntersectionSize(FriendListSketch other) {
+    double jaccard = estimateJaccard(other);
+    double intersection = jaccard * (friendCount + other.friendCount) / (1 + jaccard);
+    return (int) Math.round(Math.min(intersection, Math.min(friendCount, other.friendCount)));
+  }
+
+  private static long hash(String friendID) {
+    return HASH_FUNCTION.hashUnencodedChars(friendID).asLong();
+  }
+}
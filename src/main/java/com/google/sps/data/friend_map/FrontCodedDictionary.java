@@ -0,0 +1,167 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import com.google.common.base.Preconditions;
+
+/**
+* A sorted list of user IDs stored with front coding.
+*
+* <p>The IDs are split into blocks of {@link #BLOCK_SIZE}. The first ID of each block is stored
+* in full, and every other ID only stores the length of the prefix it shares with the ID before
+* it followed by the rest of its bytes. IDs that share long prefixes, like numeric account IDs,
+* therefore only take a few bytes each. Looking an ID up binary searches the first IDs of the
+* blocks and then decodes a single block.
+*/
+public class FrontCodedDictionary {
+  private static final int BLOCK_SIZE = 16;
+
+  private final byte[] data;
+  private final int[] blockOffsets;
+  private final int size;
+
+  private FrontCodedDictionary(byte[] data, int[] blockOffsets, int size) {
+    this.data = data;
+    this.blockOffsets = blockOffsets;
+    this.size = size;
+  }
+
+  /**
+  * Encodes a list of IDs.
+  *
+  * @param sortedIDs The IDs, sorted in natural string order without duplicates
+  * @return The dictionary, where each ID's index is its position in {@code sortedIDs}
+  */
+  public static FrontCodedDictionary of(List<String> sortedIDs) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int[] blockOffsets = new int[(sortedIDs.size() + BLOCK_SIZE - 1) / BLOCK_SIZE];
+    byte[] previous = new byte[0];
+    String previousID = null;
+    for (int index = 0; index < sortedIDs.size(); index++) {
+      String id = sortedIDs.get(index);
+      Preconditions.checkArgument(previousID == null || previousID.compareTo(id) < 0,
+        "IDs must be sorted and unique");
+      byte[] bytes = id.getBytes(StandardCharsets.UTF_8);
+      int sharedPrefix = 0;
+      if (index % BLOCK_SIZE == 0) {
+        blockOffsets[index / BLOCK_SIZE] = out.size();
+      } else {
+        int maxPrefix = Math.min(previous.length, bytes.length);
+        while (sharedPrefix < maxPrefix && previous[sharedPrefix] == bytes[sharedPrefix]) {
+          sharedPrefix++;
+        }
+        VarInts.write(out, sharedPrefix);
+      }
+      VarInts.write(out, bytes.length - sharedPrefix);
+      out.write(bytes, sharedPrefix, bytes.length - sharedPrefix);
+      previous = bytes;
+      previousID = id;
+    }
+    return new FrontCodedDictionary(out.toByteArray(), blockOffsets, sortedIDs.size());
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Returns the ID at an index. */
+  public String get(int index) {
+    Preconditions.checkElementIndex(index, size);
+    VarInts.Reader reader = new VarInts.Reader(data, blockOffsets[index / BLOCK_SIZE]);
+    byte[] current = readFirst(reader);
+    for (int i = index - index % BLOCK_SIZE; i < index; i++) {
+      current = readNext(reader, current);
+    }
+    return new String(current, StandardCharsets.UTF_8);
+  }
+
+  /** Returns the index of an ID, or {@link UserIDInterner#NOT_INTERNED} if it is not stored. */
+  public int indexOf(String id) {
+    byte[] target = id.getBytes(StandardCharsets.UTF_8);
+    // Find the last block whose first ID is not after the target
+    int low = 0;
+    int high = blockOffsets.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      byte[] first = readFirst(new VarInts.Reader(data, blockOffsets[middle]));
+      if (compare(first, target) <= 0) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    int block = high;
+    if (block < 0) {
+      return UserIDInterner.NOT_INTERNED;
+    }
+
+    VarInts.Reader reader = new VarInts.Reader(data, blockOffsets[block]);
+    byte[] current = readFirst(reader);
+    int blockEnd = Math.min(size, (block + 1) * BLOCK_SIZE);
+    for (int index = block * BLOCK_SIZE; index < blockEnd; index++) {
+      if (index > block * BLOCK_SIZE) {
+        current = readNext(reader, current);
+      }
+      int comparison = compare(current, target);
+      if (comparison == 0) {
+        return index;
+      }
+      if (comparison > 0) {
+        break;
+      }
+    }
+    return UserIDInterner.NOT_INTERNED;
+  }
+
+  /** Returns the approximate number of bytes the dictionary occupies. */
+  public long getSizeInBytes() {
+    return data.length + 4L * blockOffsets.length;
+  }
+
+  private static byte[] readFirst(VarInts.Reader reader) {
+    int length = reader.readVarInt();
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) reader.readByte();
+    }
+    return bytes;
+  }
+
+  private static byte[] readNext(VarInts.Reader reader, byte[] previous) {
+    int sharedPrefix = reader.readVarInt();
+    int suffixLength = reader.readVarInt();
+    byte[] bytes = Arrays.copyOf(previous, sharedPrefix + suffixLength);
+    for (int i = sharedPrefix; i < bytes.length; i++) {
+      bytes[i] = (byte) reader.readByte();
+    }
+    return bytes;
+  }
+
+  /** Compares UTF-8 bytes in the same order as {@link String#compareTo} for IDs without surrogates. */
+  private static int compare(byte[] a, byte[] b) {
+    int length = Math.min(a.length, b.length);
+    for (int i = 0; i < length; i++) {
+      int difference = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return a.length - b.length;
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+* The friend lists of a friend map stored as arrays of interned IDs.
+*
+* <p>All friend lists are packed into one {@code int[]}, with the friends of interned user
+* {@code u} stored, sorted, between {@code getFriendsStart(u)} (inclusive) and
+* {@code getFriendsEnd(u)} (exclusive). Reading a friend list therefore neither hashes strings
+* nor allocates, which keeps the matching kernels free of garbage.
+*/
+public class InternedFriendGraph {
+  private final UserIDInterner interner;
+  private final int[] friendOffsets;
+  private final int[] friendIDs;
+
+  /**
+  * Packs the friend lists of every user in the map.
+  *
+  * @param friendMap The map of user IDs to the IDs of their friends
+  * @param interner The interned IDs of every user in {@code friendMap}
+  */
+  InternedFriendGraph(Map<String, ? extends Collection<String>> friendMap, UserIDInterner interner) {
+    this.interner = interner;
+    int userCount = interner.size();
+
+    int[] degrees = new int[userCount];
+    int totalFriendships = 0;
+    for (Map.Entry<String, ? extends Collection<String>> entry : friendMap.entrySet()) {
+      degrees[interner.getInternedID(entry.getKey())] = entry.getValue().size();
+      totalFriendships += entry.getValue().size();
+    }
+
+    this.friendOffsets = new int[userCount + 1];
+    for (int user = 0; user < userCount; user++) {
+      friendOffsets[user + 1] = friendOffsets[user] + degrees[user];
+    }
+
+    this.friendIDs = new int[totalFriendships];
+    for (Map.Entry<String, ? extends Collection<String>> entry : friendMap.entrySet()) {
+      int user = interner.getInternedID(entry.getKey());
+      int position = friendOffsets[user];
+      for (String friendID : entry.getValue()) {
+        friendIDs[position++] = interner.getInternedID(friendID);
+      }
+      Arrays.sort(friendIDs, friendOffsets[user], friendOffsets[user + 1]);
+    }
+  }
+
+  public UserIDInterner getInterner() {
+    return interner;
+  }
+
+  /** Returns the number of interned users, which bounds every interned ID. */
+  public int getUserCount() {
+    return interner.size();
+  }
+
+  public int getDegree(int user) {
+    return friendOffsets[user + 1] - friendOffsets[user];
+  }
+
+  public int getFriendsStart(int user) {
+    return friendOffsets[user];
+  }
+
+  public int getFriendsEnd(int user) {
+    return friendOffsets[user + 1];
+  }
+
+  /** Returns the interned ID stored at a position between a user's friends start and end. */
+  public int getFriendAt(int position) {
+    return friendIDs[position];
+  }
+
+  /** Returns whether {@code friend} is on {@code user}'s friend list. */
+  public boolean areFriends(int user, int friend) {
+    return Arrays.binarySearch(friendIDs, friendOffsets[user], friendOffsets[user + 1], friend) >= 0;
+  }
+
+  /** Returns the number of friends two users have in common. */
+  public int countMutualFriends(int user1, int user2) {
+    return SortedIntersection.intersectionSize(
+      friendIDs, friendOffsets[user1], friendOffsets[user1 + 1],
+      friendIDs, friendOffsets[user2], friendOffsets[user2 + 1]);
+  }
+
+  /**
+  * Writes the friends two users have in common to {@code out}, in ascending interned ID order.
+  *
+  * @param out Receives the mutual friends; must hold the smaller of the two users' degrees
+  * @return The number of mutual friends written to {@code out}
+  */
+  public int getMutualFriends(int user1, int user2, int[] out) {
+    return SortedIntersection.intersect(
+      friendIDs, friendOffsets[user1], friendOffsets[user1 + 1],
+      friendIDs, friendOffsets[user2], friendOffsets[user2 + 1],
+      out);
+  }
+
+  /** Returns a copy of a user's sorted friend list. */
+  public int[] getFriends(int user) {
+    return Arrays.copyOfRange(friendIDs, friendOffsets[user], friendOffsets[user + 1]);
+  }
+}
@@ -0,0 +1,218 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+* Intersection of sorted, duplicate-free ID arrays, used to find mutual friends.
+*
+* <p>When both lists have similar lengths they are merged in a single linear pass. When one list
+* is much longer than the other, every element of the short list is instead located in the long
+* one with a galloping (exponential) search that starts where the previous element was found, so
+* the cost grows with the short list's length times the log of the gap between matches rather
+* than with the long list's length. Both paths read the arrays sequentially and allocate nothing.
+*/
+public class SortedIntersection {
+  // Above this length ratio galloping beats merging
+  private static final int GALLOP_RATIO = 32;
+
+  /**
+  * Writes the IDs present in both sorted ranges to {@code out}, in ascending order.
+  *
+  * @param a The first sorted array
+  * @param aFrom The first index of the range of {@code a} (inclusive)
+  * @param aTo The last index of the range of {@code a} (exclusive)
+  * @param b The second sorted array
+  * @param bFrom The first index of the range of {@code b} (inclusive)
+  * @param bTo The last index of the range of {@code b} (exclusive)
+  * @param out Receives the common IDs; must hold the length of the shorter range
+  * @return The number of common IDs written to {@code out}
+  */
+  public static int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo, int[] out) {
+    return intersect(a, aFrom, aTo, b, bFrom, bTo, out, /* countOnly= */ false);
+  }
+
+  /** Counts the IDs present in both sorted ranges without writing them anywhere. */
+  public static int intersectionSize(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+    return intersect(a, aFrom, aTo, b, bFrom, bTo, null, /* countOnly= */ true);
+  }
+
+  /**
+  * Writes the strings present in both sorted arrays to {@code out}, in ascending order.
+  *
+  * @param a The first array, sorted in natural string order
+  * @param b The second array, sorted in natural string order
+  * @param out Receives the common strings; must hold the length of the shorter array
+  * @return The number of common strings written to {@code out}
+  */
+  public static int intersect(String[] a, String[] b, String[] out) {
+    return intersect(a, b, out, /* countOnly= */ false);
+  }
+
+  /** Counts the strings present in both sorted arrays without writing them anywhere. */
+  public static int intersectionSize(String[] a, String[] b) {
+    return intersect(a, b, null, /* countOnly= */ true);
+  }
+
+  /**
+  * Copies a list of IDs into a sorted array without duplicates, ready to be intersected.
+  *
+  * @param userIDs The IDs to copy, or {@code null} for an empty list
+  * @return The sorted, duplicate-free array of IDs
+  */
+  public static String[] toSortedArray(Collection<String> userIDs) {
+    if (userIDs == null || userIDs.isEmpty()) {
+      return new String[0];
+    }
+    String[] sorted = userIDs.toArray(new String[0]);
+    Arrays.sort(sorted);
+
+    int unique = 1;
+    for (int i = 1; i < sorted.length; i++) {
+      if (!sorted[i].equals(sorted[unique - 1])) {
+        sorted[unique++] = sorted[i];
+      }
+    }
+    return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+  }
+
+  private static int intersect(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo,
+      int[] out, boolean countOnly) {
+    int aLength = aTo - aFrom;
+    int bLength = bTo - bFrom;
+    if (aLength > bLength) {
+      // Keep the shorter range in a
+      return intersect(b, bFrom, bTo, a, aFrom, aTo, out, countOnly);
+    }
+    if (aLength == 0) {
+      return 0;
+    }
+
+    int found = 0;
+    if (bLength / aLength < GALLOP_RATIO) {
+      int i = aFrom;
+      int j = bFrom;
+      while (i < aTo && j < bTo) {
+        if (a[i] < b[j]) {
+          i++;
+        } else if (a[i] > b[j]) {
+          j++;
+        } else {
+          if (!countOnly) {
+            out[found] = a[i];
+          }
+          found++;
+          i++;
+          j++;
+        }
+      }
+      return found;
+    }
+
+    int low = bFrom;
+    for (int i = aFrom; i < aTo && low < bTo; i++) {
+      int target = a[i];
+      // Gallop until b[high] >= target, then binary search between the last two probes
+      int step = 1;
+      int high = low;
+      while (high < bTo && b[high] < target) {
+        low = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      high = Math.min(high, bTo - 1);
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (b[middle] < target) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      if (low < bTo && b[low] == target) {
+        if (!countOnly) {
+          out[found] = target;
+        }
+        found++;
+        low++;
+      }
+    }
+    return found;
+  }
+
+  private static int intersect(String[] a, String[] b, String[] out, boolean countOnly) {
+    if (a.length > b.length) {
+      // Keep the shorter array in a
+      return intersect(b, a, out, countOnly);
+    }
+    if (a.length == 0) {
+      return 0;
+    }
+
+    int found = 0;
+    if (b.length / a.length < GALLOP_RATIO) {
+      int i = 0;
+      int j = 0;
+      while (i < a.length && j < b.length) {
+        int comparison = a[i].compareTo(b[j]);
+        if (comparison < 0) {
+          i++;
+        } else if (comparison > 0) {
+          j++;
+        } else {
+          if (!countOnly) {
+            out[found] = a[i];
+          }
+          found++;
+          i++;
+          j++;
+        }
+      }
+      return found;
+    }
+
+    int low = 0;
+    for (int i = 0; i < a.length && low < b.length; i++) {
+      String target = a[i];
+      // Gallop until b[high] >= target, then binary search between the last two probes
+      int step = 1;
+      int high = low;
+      while (high < b.length && b[high].compareTo(target) < 0) {
+        low = high + 1;
+        high += step;
+        step <<= 1;
+      }
+      high = Math.min(high, b.length - 1);
+      while (low <= high) {
+        int middle = (low + high) >>> 1;
+        if (b[middle].compareTo(target) < 0) {
+          low = middle + 1;
+        } else {
+          high = middle - 1;
+        }
+      }
+      if (low < b.length && b[low].equals(target)) {
+        if (!countOnly) {
+          out[found] = target;
+        }
+        found++;
+        low++;
+      }
+    }
+    return found;
+  }
+}
@@ -0,0 +1,199 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* Every friendship stored once, as an undirected edge between two users.
+*
+* <p>Users are numbered in the order they were first seen, and an edge is stored as a single
+* {@code long} holding the lower number in the upper 32 bits and the higher number in the lower
+* 32 bits. The edges are sorted and contain no duplicates or self friendships, so the same
+* friend lists always produce the same store no matter which user's copy was read first. Friend
+* lists are derived from the edges, so both users of a friendship always see it.
+*/
+public class UndirectedEdgeStore {
+  private final ImmutableList<String> userIDs;
+  private final long[] edges;
+  // Users that submitted a friend list of their own, rather than only appearing on others'
+  private final BitSet listedUsers;
+
+  private UndirectedEdgeStore(ImmutableList<String> userIDs, long[] edges, BitSet listedUsers) {
+    this.userIDs = userIDs;
+    this.edges = edges;
+    this.listedUsers = listedUsers;
+  }
+
+  public int getUserCount() {
+    return userIDs.size();
+  }
+
+  public int getEdgeCount() {
+    return edges.length;
+  }
+
+  public String getUserID(int user) {
+    return userIDs.get(user);
+  }
+
+  /** Returns the number of the user with the lower number on an edge. */
+  public int getLowerUser(int edge) {
+    return (int) (edges[edge] >>> 32);
+  }
+
+  /** Returns the number of the user with the higher number on an edge. */
+  public int getHigherUser(int edge) {
+    return (int) edges[edge];
+  }
+
+  /**
+  * Derives the friend list of every user from the edges.
+  *
+  * <p>Users that never submitted a friend list are only included if they kept a friendship.
+  *
+  * @return The map of every user ID to the IDs of their friends, in the order users were seen
+  */
+  public ImmutableMap<String, ImmutableSet<String>> toFriendMap() {
+    List<ImmutableSet.Builder<String>> friendSets = new ArrayList<>(userIDs.size());
+    for (int user = 0; user < userIDs.size(); user++) {
+      friendSets.add(ImmutableSet.builder());
+    }
+    for (int edge = 0; edge < edges.length; edge++) {
+      int lowerUser = getLowerUser(edge);
+      int higherUser = getHigherUser(edge);
+      friendSets.get(lowerUser).add(userIDs.get(higherUser));
+      friendSets.get(higherUser).add(userIDs.get(lowerUser));
+    }
+
+    ImmutableMap.Builder<String, ImmutableSet<String>> friendMap =
+      ImmutableMap.builderWithExpectedSize(userIDs.size());
+    for (int user = 0; user < userIDs.size(); user++) {
+      ImmutableSet<String> friendSet = friendSets.get(user).build();
+      if (listedUsers.get(user) || !friendSet.isEmpty()) {
+        friendMap.put(userIDs.get(user), friendSet);
+      }
+    }
+    return friendMap.build();
+  }
+
+  /** Collects friend lists as they were submitted, and normalizes them into an edge store. */
+  static class Builder {
+    private final Map<String, Integer> userNumbers = new HashMap<>();
+    private final ImmutableList.Builder<String> userIDs = ImmutableList.builder();
+    private final BitSet listedUsers = new BitSet();
+    // Edges listed by their lower and by their higher numbered user, in canonical form
+    private long[] edgesFromLower = new long[16];
+    private int edgesFromLowerCount = 0;
+    private long[] edgesFromHigher = new long[16];
+    private int edgesFromHigherCount = 0;
+
+    /** Records the friendships a user listed; self friendships are ignored. */
+    void addFriendList(String userID, Iterable<String> friendIDs) {
+      int user = getUserNumber(userID);
+      listedUsers.set(user);
+      if (friendIDs == null) {
+        return;
+      }
+      for (String friendID : friendIDs) {
+        int friend = getUserNumber(friendID);
+        if (friend == user) {
+          continue;
+        }
+        if (user < friend) {
+          if (edgesFromLowerCount == edgesFromLower.length) {
+            edgesFromLower = Arrays.copyOf(edgesFromLower, edgesFromLowerCount * 2);
+          }
+          edgesFromLower[edgesFromLowerCount++] = toEdge(user, friend);
+        } else {
+          if (edgesFromHigherCount == edgesFromHigher.length) {
+            edgesFromHigher = Arrays.copyOf(edgesFromHigher, edgesFromHigherCount * 2);
+          }
+          edgesFromHigher[edgesFromHigherCount++] = toEdge(friend, user);
+        }
+      }
+    }
+
+    /**
+    * Merges the two directions of every friendship into one edge.
+    *
+    * @param policy Whether a friendship listed by only one of its users is kept
+    * @return The normalized edge store
+    */
+    UndirectedEdgeStore build(AsymmetricEdgePolicy policy) {
+      Preconditions.checkNotNull(policy);
+      long[] fromLower = sortedUnique(edgesFromLower, edgesFromLowerCount);
+      long[] fromHigher = sortedUnique(edgesFromHigher, edgesFromHigherCount);
+
+      long[] edges = new long[fromLower.length + fromHigher.length];
+      int edgeCount = 0;
+      int i = 0;
+      int j = 0;
+      while (i < fromLower.length || j < fromHigher.length) {
+        if (j == fromHigher.length || (i < fromLower.length && fromLower[i] < fromHigher[j])) {
+          if (policy == AsymmetricEdgePolicy.UNION) {
+            edges[edgeCount++] = fromLower[i];
+          }
+          i++;
+        } else if (i == fromLower.length || fromLower[i] > fromHigher[j]) {
+          if (policy == AsymmetricEdgePolicy.UNION) {
+            edges[edgeCount++] = fromHigher[j];
+          }
+          j++;
+        } else {
+          edges[edgeCount++] = fromLower[i];
+          i++;
+          j++;
+        }
+      }
+      return new UndirectedEdgeStore(userIDs.build(), Arrays.copyOf(edges, edgeCount), listedUsers);
+    }
+
+    private int getUserNumber(String userID) {
+      Integer number = userNumbers.get(userID);
+      if (number == null) {
+        number = userNumbers.size();
+        userNumbers.put(userID, number);
+        userIDs.add(userID);
+      }
+      return number;
+    }
+
+    private static long toEdge(int lowerUser, int higherUser) {
+      return ((long) lowerUser << 32) | higherUser;
+    }
+
+    private static long[] sortedUnique(long[] edges, int count) {
+      long[] sorted = Arrays.copyOf(edges, count);
+      Arrays.sort(sorted);
+      int unique = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if (unique == 0 || sorted[i] != sorted[unique - 1]) {
+          sorted[unique++] = sorted[i];
+        }
+      }
+      return Arrays.copyOf(sorted, unique);
+    }
+  }
+}
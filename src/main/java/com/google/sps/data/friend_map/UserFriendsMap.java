@@ -19,6 +19,12 @@ import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableMap;
 
@@ -30,6 +36,10 @@ import com.google.common.collect.ImmutableMap;
 public class UserFriendsMap {
 
   private final ImmutableMap<String, ImmutableSet<String>> friendMap;
+  // Only built for callers that work on interned IDs
+  private final Supplier<UserIDInterner> interner;
+  private final Supplier<InternedFriendGraph> internedGraph;
+  private final ConcurrentMap<String, FriendListSketch> friendListSketches = new ConcurrentHashMap<>();
 
   /**
   * Form a map of UserIDs to a set ID's of that user's friends.
@@ -40,9 +50,19 @@ public class UserFriendsMap {
   * @param userNodes A set of UserNodes that are used to form the map
   */
   public UserFriendsMap (Set<UserNode> userNodes) {
-    this.friendMap = userNodes.stream().collect(
-      ImmutableMap.toImmutableMap(UserNode::getID, UserNode::getFriendIDs));
+    this(userNodes.stream().collect(
+      ImmutableMap.toImmutableMap(UserNode::getID, UserNode::getFriendIDs)));
+  }
+
+  private UserFriendsMap(ImmutableMap<String, ImmutableSet<String>> friendMap) {
+    this.friendMap = friendMap;
+    this.interner = Suppliers.memoize(() -> new UserIDInterner(friendMap));
+    this.internedGraph = Suppliers.memoize(() -> new InternedFriendGraph(friendMap, interner.get()));
+  }
 
+  /** Returns a builder that takes friend lists one user at a time. */
+  public static Builder builder() {
+    return new Builder();
   }
 
   public ImmutableMap<String, ImmutableSet<String>> getFriendMap() {
@@ -56,5 +76,99 @@ public class UserFriendsMap {
   public ImmutableSet<String> getUserFriendIDs(String currentUser) {
     return friendMap.getOrDefault(currentUser, ImmutableSet.of());
   }
-}
 
+  /**
+  * Gets the dense integer IDs of every user in this map, which are built on first use and
+  * shared by all callers of this snapshot.
+  */
+  public UserIDInterner getInterner() {
+    return interner.get();
+  }
+
+  /**
+  * Gets the friend lists of this map as arrays of interned IDs, which are built on first use
+  * and shared by all callers of this snapshot.
+  */
+  public InternedFriendGraph getInternedGraph() {
+    return internedGraph.get();
+  }
+
+  /**
+  * Gets the sketch of a user's friend list, which is built on first use and shared by all
+  * callers of this snapshot.
+  */
+  public FriendListSketch getFriendListSketch(String userID) {
+    return friendListSketches.computeIfAbsent(userID, id -> FriendListSketch.of(getUserFriendIDs(id)));
+  }
+
+  /**
+  * Builds a map directly from friend lists, without creating a {@link UserNode} for each user.
+  *
+  * <p>Each friend list is copied once into its final set, and every ID is replaced by one
+  * shared instance of that string, so an ID that appears on many friend lists is only stored
+  * once. Friend lists added twice for the same user are merged.
+  *
+  * <p>By default friend lists are kept exactly as submitted. After
+  * {@link #normalizeEdges(AsymmetricEdgePolicy)}, they are instead collected into an
+  * {@link UndirectedEdgeStore} and every friend list is derived from its edges, so a
+  * friendship is always seen from both sides regardless of which copy was submitted.
+  */
+  public static class Builder {
+    private final Map<String, ImmutableSet.Builder<String>> friendSets = new LinkedHashMap<>();
+    private final Map<String, String> canonicalIDs = new HashMap<>();
+    private AsymmetricEdgePolicy edgePolicy = null;
+    private UndirectedEdgeStore.Builder edgeStoreBuilder = null;
+
+    private Builder() {}
+
+    /**
+    * Makes every friendship undirected, deciding with the given policy what happens to
+    * friendships only one of the two users listed. Must be called before any user is added.
+    */
+    public Builder normalizeEdges(AsymmetricEdgePolicy edgePolicy) {
+      Preconditions.checkState(friendSets.isEmpty() && edgeStoreBuilder == null,
+        "normalizeEdges must be called before users are added");
+      this.edgePolicy = Preconditions.checkNotNull(edgePolicy);
+      this.edgeStoreBuilder = new UndirectedEdgeStore.Builder();
+      return this;
+    }
+
+    /**
+    * Adds a user and their friend list.
+    *
+    * @param userID The ID of the user
+    * @param friendIDs The IDs of the user's friends, or {@code null} if they have none
+    */
+    public Builder addUser(String userID, Iterable<String> friendIDs) {
+      if (edgeStoreBuilder != null) {
+        edgeStoreBuilder.addFriendList(userID, friendIDs);
+        return this;
+      }
+      ImmutableSet.Builder<String> friendSet =
+        friendSets.computeIfAbsent(canonicalize(userID), id -> ImmutableSet.builder());
+      if (friendIDs != null) {
+        for (String friendID : friendIDs) {
+          friendSet.add(canonicalize(friendID));
+        }
+      }
+      return this;
+    }
+
+    public UserFriendsMap build() {
+      if (edgeStoreBuilder != null) {
+        return new UserFriendsMap(edgeStoreBuilder.build(edgePolicy).toFriendMap());
+      }
+      ImmutableMap.Builder<String, ImmutableSet<String>> friendMap =
+        ImmutableMap.builderWithExpectedSize(friendSets.size());
+      for (Map.Entry<String, ImmutableSet.Builder<String>> entry : friendSets.entrySet()) {
+        friendMap.put(entry.getKey(), entry.getValue().build());
+      }
+      return new UserFriendsMap(friendMap.build());
+    }
+
+    private String canonicalize(String id) {
+      String canonicalID = canonicalIDs.putIfAbsent(id, id);
+      return canonicalID == null ? id : canonicalID;
+    }
+  }
+}
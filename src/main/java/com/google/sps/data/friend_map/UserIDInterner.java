@@ -0,0 +1,68 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* Assigns every user ID in a friend map a dense integer ID between 0 and {@link #size()}.
+*
+* <p>Interned IDs let per-user state be kept in arrays and bitmaps instead of hash sets of
+* strings. They are only stable within one friend map snapshot, and must not be persisted.
+*/
+public class UserIDInterner {
+  public static final int NOT_INTERNED = -1;
+
+  private final ImmutableList<String> userIDs;
+  private final Map<String, Integer> internedIDs;
+
+  /**
+  * Interns every user in the map, and every friend ID that appears in a friend list,
+  * even if that friend has no entry of their own.
+  *
+  * @param friendMap The map of user IDs to the IDs of their friends
+  */
+  UserIDInterner(Map<String, ? extends Collection<String>> friendMap) {
+    ImmutableSet.Builder<String> builder = ImmutableSet.builder();
+    builder.addAll(friendMap.keySet());
+    for (Collection<String> friendIDs : friendMap.values()) {
+      builder.addAll(friendIDs);
+    }
+    this.userIDs = builder.build().asList();
+
+    this.internedIDs = new HashMap<>(userIDs.size() * 2);
+    for (int i = 0; i < userIDs.size(); i++) {
+      internedIDs.put(userIDs.get(i), i);
+    }
+  }
+
+  /** Returns the interned ID of a user, or {@link #NOT_INTERNED} if the user is not in the map. */
+  public int getInternedID(String userID) {
+    Integer internedID = internedIDs.get(userID);
+    return internedID == null ? NOT_INTERNED : internedID;
+  }
+
+  public String getUserID(int internedID) {
+    return userIDs.get(internedID);
+  }
+
+  public int size() {
+    return userIDs.size();
+  }
+}
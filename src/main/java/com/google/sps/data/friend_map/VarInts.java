@@ -0,0 +1,73 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+* Variable length encoding of non-negative ints, seven bits per byte with the high bit set on
+* every byte but the last, so small numbers take a single byte.
+*/
+final class VarInts {
+  private VarInts() {}
+
+  static void write(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  /** Maps signed ints to non-negative ones so small negative numbers also stay small. */
+  static int zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  static int unZigZag(int value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  /** A read position within an encoded byte array. */
+  static class Reader {
+    private final byte[] data;
+    private int position;
+
+    Reader(byte[] data, int position) {
+      this.data = data;
+      this.position = position;
+    }
+
+    int readVarInt() {
+      int value = 0;
+      int shift = 0;
+      byte next;
+      do {
+        next = data[position++];
+        value |= (next & 0x7F) << shift;
+        shift += 7;
+      } while (next < 0);
+      return value;
+    }
+
+    int readByte() {
+      return data[position++] & 0xFF;
+    }
+
+    int getPosition() {
+      return position;
+    }
+  }
+}
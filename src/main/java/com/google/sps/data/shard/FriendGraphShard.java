@@ -0,0 +1,36 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.io.IOException;
+import java.util.Collection;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* One partition of the friend graph, owning the friend lists of the users that
+* {@link ShardRouter} assigns to it.
+*/
+public interface FriendGraphShard {
+  /**
+  * Fetches the friend lists of several users owned by this shard in one call.
+  *
+  * @param userIDs The IDs of the users, which must all belong to this shard
+  * @return The map of each requested user ID to the IDs of their friends; users the shard
+  *     does not know are left out
+  * @throws IOException If the shard could not be reached
+  */
+  ImmutableMap<String, ImmutableSet<String>> getFriendLists(Collection<String> userIDs) throws IOException;
+}
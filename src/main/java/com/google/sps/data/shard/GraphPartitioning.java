@@ -0,0 +1,66 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import com.google.common.collect.ImmutableMap;
+
+/** The result of {@link LabelPropagationPartitioner}: which partition each user belongs to. */
+public class GraphPartitioning {
+  private final ImmutableMap<String, Integer> partitions;
+  private final int[] renumbering;
+  private final int[] partitionSizes;
+  private final double edgeCutRatio;
+  private final int iterations;
+
+  GraphPartitioning(ImmutableMap<String, Integer> partitions, int[] renumbering, int[] partitionSizes,
+      double edgeCutRatio, int iterations) {
+    this.partitions = partitions;
+    this.renumbering = renumbering;
+    this.partitionSizes = partitionSizes;
+    this.edgeCutRatio = edgeCutRatio;
+    this.iterations = iterations;
+  }
+
+  /** Returns the map of every user ID to the index of their partition. */
+  public ImmutableMap<String, Integer> getPartitions() {
+    return partitions;
+  }
+
+  /**
+  * Returns the new number of an interned ID, such that the users of partition 0 come first,
+  * then those of partition 1, and so on, keeping their interned order within a partition.
+  */
+  public int getRenumberedID(int internedID) {
+    return renumbering[internedID];
+  }
+
+  public int getPartitionCount() {
+    return partitionSizes.length;
+  }
+
+  public int getPartitionSize(int partition) {
+    return partitionSizes[partition];
+  }
+
+  /** Returns the share of friendships whose two users ended up in different partitions. */
+  public double getEdgeCutRatio() {
+    return edgeCutRatio;
+  }
+
+  /** Returns how many rounds of label propagation ran before the labels settled or the limit hit. */
+  public int getIterations() {
+    return iterations;
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.util.Collection;
+import java.util.Map;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+/** A shard whose friend lists are held in the current JVM. */
+public class InProcessShard implements FriendGraphShard {
+  private final ImmutableMap<String, ImmutableSet<String>> friendLists;
+
+  public InProcessShard(ImmutableMap<String, ImmutableSet<String>> friendLists) {
+    this.friendLists = friendLists;
+  }
+
+  /**
+  * Splits a friend map into one in-process shard per index of the router.
+  *
+  * @param friendsMap The map of the direct friendships between all users
+  * @param router Decides which shard owns each user
+  * @return The shards, in shard index order
+  */
+  public static ImmutableList<InProcessShard> partition(UserFriendsMap friendsMap, ShardRouter router) {
+    return partition(friendsMap.getFriendMap(), router);
+  }
+
+  /** Splits a map of friend lists into one in-process shard per index of the router. */
+  public static ImmutableList<InProcessShard> partition(Map<String, ImmutableSet<String>> friendMap,
+      ShardRouter router) {
+    ImmutableList.Builder<ImmutableMap.Builder<String, ImmutableSet<String>>> shardBuilders = ImmutableList.builder();
+    for (int shard = 0; shard < router.getShardCount(); shard++) {
+      shardBuilders.add(ImmutableMap.builder());
+    }
+    ImmutableList<ImmutableMap.Builder<String, ImmutableSet<String>>> builders = shardBuilders.build();
+    for (Map.Entry<String, ImmutableSet<String>> entry : friendMap.entrySet()) {
+      builders.get(router.getShardIndex(entry.getKey())).put(entry);
+    }
+    return builders.stream()
+      .map(builder -> new InProcessShard(builder.build()))
+      .collect(ImmutableList.toImmutableList());
+  }
+
+  @Override
+  public ImmutableMap<String, ImmutableSet<String>> getFriendLists(Collection<String> userIDs) {
+    ImmutableMap.Builder<String, ImmutableSet<String>> requested = ImmutableMap.builder();
+    for (String userID : ImmutableSet.copyOf(userIDs)) {
+      ImmutableSet<String> friends = friendLists.get(userID);
+      if (friends != null) {
+        requested.put(userID, friends);
+      }
+    }
+    return requested.build();
+  }
+
+  /** Returns the number of users this shard owns. */
+  public int getUserCount() {
+    return friendLists.size();
+  }
+}
@@ -0,0 +1,294 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+/**
+* Offline partitioner that groups densely connected users into the same partition.
+*
+* <p>The partitions are first filled with users in breadth first order, so they start out
+* roughly connected. Each round, every user works out in parallel which
+* partition most of their friends are in, using the labels from the end of the previous round.
+* Only a random half of the users that would gain friends in their partition are considered
+* each round, which stops neighbors from swapping back and forth forever. Between every pair of
+* partitions, as many users as possible are swapped in both directions, most improving first,
+* since swaps keep the sizes unchanged. The remaining moves are only made while the target stays
+* under its capacity of {@code (1 + slack)} times an even share of the users. The rounds stop
+* once no user wants to move, nothing could move for a few rounds, or the iteration limit is
+* reached.
+*/
+public class LabelPropagationPartitioner {
+  // Rounds in a row without a single move before giving up early
+  private static final int MAX_STALLED_ROUNDS = 3;
+
+  private final int partitionCount;
+  private final double capacitySlack;
+  private final int maxIterations;
+  private final long seed;
+
+  private LabelPropagationPartitioner(Builder builder) {
+    this.partitionCount = builder.partitionCount;
+    this.capacitySlack = builder.capacitySlack;
+    this.maxIterations = builder.maxIterations;
+    this.seed = builder.seed;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+  * Partitions the users of a friend map.
+  *
+  * @param friendsMap The map of the direct friendships between all users
+  * @return The partition of every user, the matching renumbering and the edge cut ratio
+  */
+  public GraphPartitioning partition(UserFriendsMap friendsMap) {
+    InternedFriendGraph graph = friendsMap.getInternedGraph();
+    int userCount = graph.getUserCount();
+    int capacity = (int) Math.ceil((double) userCount / partitionCount * (1 + capacitySlack));
+    Random random = new Random(seed);
+
+    int[] labels = new int[userCount];
+    int[] sizes = new int[partitionCount];
+    initializeLabels(graph, random, labels, sizes);
+
+    int iterations = 0;
+    int stalledRounds = 0;
+    ThreadLocal<int[]> neighborCounts = ThreadLocal.withInitial(() -> new int[partitionCount]);
+    while (iterations < maxIterations) {
+      iterations++;
+      int[] currentLabels = labels;
+      // Each user's wanted partition and how many more friends they would share it with
+      int[] wanted = new int[userCount];
+      int[] gains = new int[userCount];
+      IntStream.range(0, userCount).parallel().forEach(user -> {
+        int[] counts = neighborCounts.get();
+        Arrays.fill(counts, 0);
+        int end = graph.getFriendsEnd(user);
+        for (int position = graph.getFriendsStart(user); position < end; position++) {
+          counts[currentLabels[graph.getFriendAt(position)]]++;
+        }
+        int best = currentLabels[user];
+        for (int partition = 0; partition < partitionCount; partition++) {
+          if (counts[partition] > counts[best]) {
+            best = partition;
+          }
+        }
+        wanted[user] = best;
+        gains[user] = counts[best] - counts[currentLabels[user]];
+      });
+
+      // Bucket a random half of the wanted moves by source and target partition
+      List<List<List<Integer>>> movers = new ArrayList<>();
+      for (int from = 0; from < partitionCount; from++) {
+        List<List<Integer>> fromMovers = new ArrayList<>();
+        for (int to = 0; to < partitionCount; to++) {
+          fromMovers.add(new ArrayList<>());
+        }
+        movers.add(fromMovers);
+      }
+      boolean anyWanted = false;
+      int considered = 0;
+      for (int user = 0; user < userCount; user++) {
+        if (gains[user] > 0) {
+          anyWanted = true;
+          if (random.nextBoolean()) {
+            movers.get(labels[user]).get(wanted[user]).add(user);
+            considered++;
+          }
+        }
+      }
+      if (!anyWanted) {
+        break;
+      }
+
+      int moved = 0;
+      for (int from = 0; from < partitionCount; from++) {
+        for (int to = from + 1; to < partitionCount; to++) {
+          List<Integer> forward = sortByGain(movers.get(from).get(to), gains, random);
+          List<Integer> backward = sortByGain(movers.get(to).get(from), gains, random);
+          // Swapping users keeps both sizes unchanged, so it is allowed even at capacity
+          int swaps = Math.min(forward.size(), backward.size());
+          moved += move(forward.subList(0, swaps), to, labels, sizes);
+          moved += move(backward.subList(0, swaps), from, labels, sizes);
+          // The rest only move while the target has room
+          for (int user : forward.subList(swaps, forward.size())) {
+            if (sizes[to] < capacity) {
+              moved += move(Collections.singletonList(user), to, labels, sizes);
+            }
+          }
+          for (int user : backward.subList(swaps, backward.size())) {
+            if (sizes[from] < capacity) {
+              moved += move(Collections.singletonList(user), from, labels, sizes);
+            }
+          }
+        }
+      }
+      if (considered > 0 && moved == 0) {
+        stalledRounds++;
+        if (stalledRounds >= MAX_STALLED_ROUNDS) {
+          // Every wanted move keeps being blocked by capacity
+          break;
+        }
+      } else if (moved > 0) {
+        stalledRounds = 0;
+      }
+    }
+
+    return buildPartitioning(graph, labels, sizes, iterations);
+  }
+
+  /**
+  * Fills the partitions one after another with users in breadth first order from random start
+  * users, so each partition starts out as a few connected regions instead of random noise that
+  * propagation cannot untangle.
+  */
+  private void initializeLabels(InternedFriendGraph graph, Random random, int[] labels, int[] sizes) {
+    int userCount = graph.getUserCount();
+    int evenShare = (userCount + partitionCount - 1) / partitionCount;
+    int[] startOrder = IntStream.range(0, userCount).toArray();
+    for (int i = userCount - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int swap = startOrder[i];
+      startOrder[i] = startOrder[j];
+      startOrder[j] = swap;
+    }
+
+    Arrays.fill(labels, -1);
+    int[] queue = new int[userCount];
+    int partition = 0;
+    for (int start : startOrder) {
+      if (labels[start] != -1) {
+        continue;
+      }
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = start;
+      labels[start] = partition;
+      while (head < tail) {
+        int user = queue[head++];
+        if (labels[user] != partition) {
+          // Enqueued before the previous partition filled up; it belongs to the next one
+          labels[user] = partition;
+        }
+        sizes[partition]++;
+        if (sizes[partition] == evenShare && partition < partitionCount - 1) {
+          partition++;
+        }
+        int end = graph.getFriendsEnd(user);
+        for (int position = graph.getFriendsStart(user); position < end; position++) {
+          int friend = graph.getFriendAt(position);
+          if (labels[friend] == -1) {
+            labels[friend] = partition;
+            queue[tail++] = friend;
+          }
+        }
+      }
+    }
+  }
+
+  /** Shuffles the users, then orders them most improving first, so ties are broken randomly. */
+  private static List<Integer> sortByGain(List<Integer> users, int[] gains, Random random) {
+    Collections.shuffle(users, random);
+    users.sort((a, b) -> Integer.compare(gains[b], gains[a]));
+    return users;
+  }
+
+  private static int move(List<Integer> users, int target, int[] labels, int[] sizes) {
+    for (int user : users) {
+      sizes[labels[user]]--;
+      labels[user] = target;
+      sizes[target]++;
+    }
+    return users.size();
+  }
+
+  private GraphPartitioning buildPartitioning(InternedFriendGraph graph, int[] labels, int[] sizes, int iterations) {
+    UserIDInterner interner = graph.getInterner();
+    int userCount = graph.getUserCount();
+
+    ImmutableMap.Builder<String, Integer> partitions = ImmutableMap.builderWithExpectedSize(userCount);
+    int[] nextID = new int[partitionCount];
+    for (int partition = 1; partition < partitionCount; partition++) {
+      nextID[partition] = nextID[partition - 1] + sizes[partition - 1];
+    }
+    int[] renumbering = new int[userCount];
+    long friendships = 0;
+    long cutFriendships = 0;
+    for (int user = 0; user < userCount; user++) {
+      partitions.put(interner.getUserID(user), labels[user]);
+      renumbering[user] = nextID[labels[user]]++;
+      int end = graph.getFriendsEnd(user);
+      for (int position = graph.getFriendsStart(user); position < end; position++) {
+        friendships++;
+        if (labels[graph.getFriendAt(position)] != labels[user]) {
+          cutFriendships++;
+        }
+      }
+    }
+    double edgeCutRatio = friendships == 0 ? 0 : (double) cutFriendships / friendships;
+    return new GraphPartitioning(partitions.build(), renumbering, sizes, edgeCutRatio, iterations);
+  }
+
+  /** Builder for {@link LabelPropagationPartitioner}. */
+  public static class Builder {
+    private int partitionCount = 2;
+    private double capacitySlack = 0.05;
+    private int maxIterations = 30;
+    private long seed = 0L;
+
+    private Builder() {}
+
+    public Builder setPartitionCount(int partitionCount) {
+      Preconditions.checkArgument(partitionCount > 0, "partition count must be positive");
+      this.partitionCount = partitionCount;
+      return this;
+    }
+
+    /** Sets how far above an even share of the users a partition may grow, as a fraction. */
+    public Builder setCapacitySlack(double capacitySlack) {
+      Preconditions.checkArgument(capacitySlack >= 0, "capacity slack must not be negative");
+      this.capacitySlack = capacitySlack;
+      return this;
+    }
+
+    public Builder setMaxIterations(int maxIterations) {
+      Preconditions.checkArgument(maxIterations > 0, "iteration limit must be positive");
+      this.maxIterations = maxIterations;
+      return this;
+    }
+
+    public Builder setSeed(long seed) {
+      this.seed = seed;
+      return this;
+    }
+
+    public LabelPropagationPartitioner build() {
+      return new LabelPropagationPartitioner(this);
+    }
+  }
+}
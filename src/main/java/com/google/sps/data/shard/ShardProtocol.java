@@ -0,0 +1,96 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Map;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* The line based text protocol spoken between {@link RemoteShard} and {@link SocketShardServer}.
+*
+* <p>A request is a single line of comma separated user IDs. The response has one line per
+* known user, holding the user ID, a tab and their comma separated friend IDs, followed by an
+* empty line. User IDs are numeric, so they never contain the separators.
+*/
+final class ShardProtocol {
+  private static final char ID_SEPARATOR = ',';
+  private static final char FRIENDS_SEPARATOR = '\t';
+  private static final Joiner ID_JOINER = Joiner.on(ID_SEPARATOR);
+  private static final Splitter ID_SPLITTER = Splitter.on(ID_SEPARATOR).omitEmptyStrings();
+
+  private ShardProtocol() {}
+
+  static void writeRequest(Writer writer, Collection<String> userIDs) throws IOException {
+    writer.write(ID_JOINER.join(userIDs));
+    writer.write('\n');
+    writer.flush();
+  }
+
+  /** Reads a request, or returns {@code null} if the connection was closed. */
+  static ImmutableSet<String> readRequest(BufferedReader reader) throws IOException {
+    String line = reader.readLine();
+    return line == null ? null : ImmutableSet.copyOf(ID_SPLITTER.split(line));
+  }
+
+  static void writeResponse(Writer writer, Map<String, ImmutableSet<String>> friendLists) throws IOException {
+    for (Map.Entry<String, ImmutableSet<String>> entry : friendLists.entrySet()) {
+      writeFriendList(writer, entry.getKey(), entry.getValue());
+    }
+    writer.write('\n');
+    writer.flush();
+  }
+
+  static ImmutableMap<String, ImmutableSet<String>> readResponse(BufferedReader reader) throws IOException {
+    ImmutableMap.Builder<String, ImmutableSet<String>> friendLists = ImmutableMap.builder();
+    String line;
+    while ((line = reader.readLine()) != null && !line.isEmpty()) {
+      int separator = line.indexOf(FRIENDS_SEPARATOR);
+      if (separator < 0) {
+        throw new IOException("Malformed shard response line: " + line);
+      }
+      friendLists.put(line.substring(0, separator),
+        ImmutableSet.copyOf(ID_SPLITTER.split(line.substring(separator + 1))));
+    }
+    if (line == null) {
+      throw new IOException("Shard closed the connection mid-response");
+    }
+    return friendLists.build();
+  }
+
+  /** Writes one user's friend list in the format used by both responses and graph files. */
+  static void writeFriendList(Writer writer, String userID, Collection<String> friendIDs) throws IOException {
+    writer.write(userID);
+    writer.write(FRIENDS_SEPARATOR);
+    writer.write(ID_JOINER.join(friendIDs));
+    writer.write('\n');
+  }
+
+  /** Parses one line written by {@link #writeFriendList} into the map. */
+  static void readFriendList(String line, ImmutableMap.Builder<String, ImmutableSet<String>> friendLists) {
+    int separator = line.indexOf(FRIENDS_SEPARATOR);
+    String userID = separator < 0 ? line : line.substring(0, separator);
+    ImmutableSet<String> friendIDs = separator < 0
+        ? ImmutableSet.of()
+        : ImmutableSet.copyOf(ID_SPLITTER.split(line.substring(separator + 1)));
+    friendLists.put(userID, friendIDs);
+  }
+}
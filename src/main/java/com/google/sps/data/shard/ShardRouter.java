@@ -0,0 +1,64 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+* Assigns every user to a shard, either from a precomputed assignment such as a
+* {@link GraphPartitioning}, or by hashing their user ID.
+*/
+public class ShardRouter {
+  private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+  private final int shardCount;
+  private final ImmutableMap<String, Integer> assignments;
+
+  public ShardRouter(int shardCount) {
+    this(shardCount, ImmutableMap.of());
+  }
+
+  /**
+  * @param shardCount The number of shards
+  * @param assignments The shard of each user whose shard was chosen ahead of time; any other
+  *     user, such as one who signed up later, falls back to hashing
+  */
+  public ShardRouter(int shardCount, ImmutableMap<String, Integer> assignments) {
+    Preconditions.checkArgument(shardCount > 0, "shard count must be positive");
+    this.shardCount = shardCount;
+    this.assignments = assignments;
+  }
+
+  /** Routes users to the partitions chosen for them, one shard per partition. */
+  public static ShardRouter fromPartitioning(GraphPartitioning partitioning) {
+    return new ShardRouter(partitioning.getPartitionCount(), partitioning.getPartitions());
+  }
+
+  public int getShardCount() {
+    return shardCount;
+  }
+
+  /** Returns the index of the shard that owns a user's friend list. */
+  public int getShardIndex(String userID) {
+    Integer assignedShard = assignments.get(userID);
+    if (assignedShard != null) {
+      return assignedShard;
+    }
+    return Math.floorMod(HASH_FUNCTION.hashUnencodedChars(userID).asInt(), shardCount);
+  }
+}
@@ -0,0 +1,130 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+* Answers potential match queries over a friend graph that is split across shards, so the
+* graph does not have to fit in a single heap.
+*
+* <p>A query fetches the user's friend list from the user's shard, then asks every shard that
+* owns one of those friends for their friend lists in parallel, one batched request per shard,
+* and merges the answers the same way {@code PotentialMatchAlgorithm} does.
+*/
+public class ShardedFriendGraph {
+  private final ImmutableList<FriendGraphShard> shards;
+  private final ShardRouter router;
+  private final ExecutorService executor;
+
+  /**
+  * Routes users to the shards by hashing their user IDs.
+  *
+  * @param shards The shards, where the shard at index {@code i} owns the users a hashing
+  *     {@link ShardRouter} assigns to {@code i}
+  * @param executor Runs the requests to the shards in parallel
+  */
+  public ShardedFriendGraph(List<? extends FriendGraphShard> shards, ExecutorService executor) {
+    this(shards, new ShardRouter(shards.size()), executor);
+  }
+
+  /**
+  * @param shards The shards, where the shard at index {@code i} owns the users the router
+  *     assigns to {@code i}
+  * @param router Decides which shard owns each user; it must be the router the shards were
+  *     loaded with, such as one built from a {@link GraphPartitioning}
+  * @param executor Runs the requests to the shards in parallel
+  */
+  public ShardedFriendGraph(List<? extends FriendGraphShard> shards, ShardRouter router, ExecutorService executor) {
+    Preconditions.checkArgument(!shards.isEmpty(), "at least one shard is needed");
+    Preconditions.checkArgument(router.getShardCount() == shards.size(),
+      "the router has %s shards but %s were given", router.getShardCount(), shards.size());
+    this.shards = ImmutableList.copyOf(shards);
+    this.router = router;
+    this.executor = executor;
+  }
+
+  public ImmutableSet<String> getUserFriendIDs(String userID) throws IOException {
+    ImmutableSet<String> friendIDs =
+      shards.get(router.getShardIndex(userID)).getFriendLists(ImmutableList.of(userID)).get(userID);
+    return friendIDs == null ? ImmutableSet.of() : friendIDs;
+  }
+
+  /**
+  * Finds the set of potential matches for a single user.
+  *
+  * @param userID The user ID of the user who's potential matches are being found
+  * @return The set of user IDs of the potential matches that are found
+  * @throws IOException If a shard could not be reached
+  */
+  public ImmutableSet<String> findPotentialMatchesForUser(String userID) throws IOException {
+    ImmutableSet<String> userFriendIDs = getUserFriendIDs(userID);
+    Map<String, ImmutableSet<String>> friendLists = getFriendLists(userFriendIDs);
+
+    ImmutableSet.Builder<String> potentialMatchIDs = ImmutableSet.builder();
+    for (String friendID : userFriendIDs) {
+      for (String potentialMatchID : friendLists.getOrDefault(friendID, ImmutableSet.of())) {
+        if (!potentialMatchID.equals(userID) && !userFriendIDs.contains(potentialMatchID)) {
+          potentialMatchIDs.add(potentialMatchID);
+        }
+      }
+    }
+    return potentialMatchIDs.build();
+  }
+
+  /** Scatters one batched request to each shard owning some of the users, and gathers the answers. */
+  private Map<String, ImmutableSet<String>> getFriendLists(ImmutableSet<String> userIDs) throws IOException {
+    Map<Integer, List<String>> userIDsByShard = new HashMap<>();
+    for (String userID : userIDs) {
+      userIDsByShard.computeIfAbsent(router.getShardIndex(userID), shard -> new ArrayList<>()).add(userID);
+    }
+
+    List<Future<ImmutableMap<String, ImmutableSet<String>>>> responses = new ArrayList<>();
+    for (Map.Entry<Integer, List<String>> entry : userIDsByShard.entrySet()) {
+      FriendGraphShard shard = shards.get(entry.getKey());
+      List<String> shardUserIDs = entry.getValue();
+      responses.add(executor.submit(() -> shard.getFriendLists(shardUserIDs)));
+    }
+
+    Map<String, ImmutableSet<String>> friendLists = new HashMap<>();
+    try {
+      for (Future<ImmutableMap<String, ImmutableSet<String>>> response : responses) {
+        friendLists.putAll(response.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      responses.forEach(response -> response.cancel(true));
+      throw new IOException("Interrupted while waiting for shards", e);
+    } catch (ExecutionException e) {
+      responses.forEach(response -> response.cancel(true));
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Shard request failed", e.getCause());
+    }
+    return friendLists;
+  }
+}
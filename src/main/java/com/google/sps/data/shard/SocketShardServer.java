@@ -0,0 +1,218 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+/**
+* Serves a shard over a local socket, so shards can run as separate processes for scaling
+* experiments.
+*
+* <p>The server listens on the loopback interface unless another bind address is given, since
+* the protocol has no authentication.
+*
+* <p>Run {@code main} with a port, the shard's index, the shard count, a graph file and
+* optionally a partition file. The graph file has one line per user holding the user ID, a tab
+* and their comma separated friend IDs; each process only keeps the users its index owns. The
+* partition file has one line per user holding the user ID, a tab and the shard chosen for them,
+* as written by {@link #writePartitionFile}; without it users are assigned by hashing.
+*/
+public class SocketShardServer implements Closeable {
+  private static final Logger logger = Logger.getLogger(SocketShardServer.class.getName());
+
+  private final FriendGraphShard shard;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connectionHandlers = Executors.newCachedThreadPool();
+
+  /**
+  * Binds the server to a port on the loopback interface; connections are accepted once
+  * {@link #start()} is called.
+  *
+  * @param shard The shard to serve
+  * @param port The port to listen on, or 0 to pick a free one
+  */
+  public SocketShardServer(FriendGraphShard shard, int port) throws IOException {
+    this(shard, port, InetAddress.getLoopbackAddress());
+  }
+
+  /**
+  * Binds the server to a port on the given address; connections are accepted once
+  * {@link #start()} is called. The protocol is unauthenticated, so only bind an address that
+  * is reachable from trusted hosts.
+  *
+  * @param shard The shard to serve
+  * @param port The port to listen on, or 0 to pick a free one
+  * @param bindAddress The local address to listen on
+  */
+  public SocketShardServer(FriendGraphShard shard, int port, InetAddress bindAddress) throws IOException {
+    this.shard = shard;
+    this.serverSocket = new ServerSocket(port, 0, bindAddress);
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 4 && args.length != 5) {
+      System.err.println(
+        "Usage: SocketShardServer <port> <shard-index> <shard-count> <graph-file> [<partition-file>]");
+      System.exit(1);
+    }
+    int port = Integer.parseInt(args[0]);
+    int shardIndex = Integer.parseInt(args[1]);
+    int shardCount = Integer.parseInt(args[2]);
+    ShardRouter router = args.length == 5
+      ? loadRouter(Paths.get(args[4]), shardCount)
+      : new ShardRouter(shardCount);
+
+    SocketShardServer server = new SocketShardServer(loadShard(Paths.get(args[3]), router, shardIndex), port);
+    logger.info("Serving shard " + shardIndex + " on port " + server.getPort());
+    server.start();
+  }
+
+  /**
+  * Reads the users a shard owns from a graph file.
+  *
+  * @param graphFile The graph file, as written by {@link #writeGraphFile}
+  * @param router Decides which shard owns each user
+  * @param shardIndex The index of the shard to load
+  * @return The shard holding only the users it owns
+  */
+  public static InProcessShard loadShard(Path graphFile, ShardRouter router, int shardIndex) throws IOException {
+    ImmutableMap.Builder<String, ImmutableSet<String>> friendLists = ImmutableMap.builder();
+    try (Stream<String> lines = Files.lines(graphFile, StandardCharsets.UTF_8)) {
+      lines.filter(line -> !line.isEmpty())
+        .filter(line -> router.getShardIndex(line.split("\t", 2)[0]) == shardIndex)
+        .forEach(line -> ShardProtocol.readFriendList(line, friendLists));
+    }
+    return new InProcessShard(friendLists.build());
+  }
+
+  /**
+  * Writes a friend map in the graph file format read by {@code main}.
+  *
+  * @param friendsMap The map of the direct friendships between all users
+  * @param graphFile Where to write the graph file
+  */
+  public static void writeGraphFile(UserFriendsMap friendsMap, Path graphFile) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(graphFile, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, ImmutableSet<String>> entry : friendsMap.getFriendMap().entrySet()) {
+        ShardProtocol.writeFriendList(writer, entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+  * Writes the shard chosen for every user in the partition file format read by {@code main}.
+  *
+  * @param partitioning The partitioning whose partitions become the shards
+  * @param partitionFile Where to write the partition file
+  */
+  public static void writePartitionFile(GraphPartitioning partitioning, Path partitionFile) throws IOException {
+    try (Writer writer = Files.newBufferedWriter(partitionFile, StandardCharsets.UTF_8)) {
+      for (Map.Entry<String, Integer> entry : partitioning.getPartitions().entrySet()) {
+        writer.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+      }
+    }
+  }
+
+  /**
+  * Reads a partition file into a router, so every shard server and the querying side agree on
+  * which shard owns each user.
+  *
+  * @param partitionFile The partition file, as written by {@link #writePartitionFile}
+  * @param shardCount The number of shards
+  * @return The router sending the listed users to their chosen shards, and hashing the others
+  */
+  public static ShardRouter loadRouter(Path partitionFile, int shardCount) throws IOException {
+    Map<String, Integer> assignments = new HashMap<>();
+    try (Stream<String> lines = Files.lines(partitionFile, StandardCharsets.UTF_8)) {
+      lines.filter(line -> !line.isEmpty()).forEach(line -> {
+        String[] fields = line.split("\t", 2);
+        int shardIndex = Integer.parseInt(fields[1]);
+        if (shardIndex < 0 || shardIndex >= shardCount) {
+          throw new IllegalArgumentException("Shard " + shardIndex + " of user " + fields[0] + " is out of range");
+        }
+        assignments.put(fields[0], shardIndex);
+      });
+    }
+    return new ShardRouter(shardCount, ImmutableMap.copyOf(assignments));
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  /** Starts accepting connections on a background thread. */
+  public void start() {
+    Thread acceptor = new Thread(this::acceptConnections, "shard-acceptor-" + getPort());
+    acceptor.start();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    connectionHandlers.shutdownNow();
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        connectionHandlers.execute(() -> handleConnection(socket));
+      } catch (SocketException e) {
+        // The server socket was closed
+        return;
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "Failed to accept a shard connection", e);
+      }
+    }
+  }
+
+  private void handleConnection(Socket socket) {
+    try (Socket connection = socket) {
+      BufferedReader reader =
+        new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+      Writer writer = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8));
+      ImmutableSet<String> userIDs;
+      while ((userIDs = ShardProtocol.readRequest(reader)) != null) {
+        ShardProtocol.writeResponse(writer, shard.getFriendLists(userIDs));
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Shard connection failed", e);
+    }
+  }
+}
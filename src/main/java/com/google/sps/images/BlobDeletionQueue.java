@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.images;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+
+/**
+* Queue of photos that were replaced and can be deleted from Blobstore.
+*
+* <p>Replacing a photo only enqueues its blob key, stored as one {@code blob-deletion} entity
+* per blob, so the upload request does a single extra write. The blobs are deleted in batches
+* by {@link #runPendingBatch()}, together with their serving URLs and the entities that store
+* them, so photos nobody can see anymore stop taking up storage.
+*/
+public class BlobDeletionQueue {
+  static final String BLOB_DELETION_ENTITY = "blob-deletion";
+  static final String ENQUEUED_AT_PROPERTY = "enqueued-at";
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  private static final Logger logger = Logger.getLogger(BlobDeletionQueue.class.getName());
+
+  private final BlobstoreService blobstore;
+  private final ImagesService images;
+  private final DatastoreService datastore;
+  private final int batchSize;
+
+  public BlobDeletionQueue(DatastoreService datastore) {
+    this(BlobstoreServiceFactory.getBlobstoreService(), ImagesServiceFactory.getImagesService(),
+      datastore, DEFAULT_BATCH_SIZE);
+  }
+
+  BlobDeletionQueue(BlobstoreService blobstore, ImagesService images, DatastoreService datastore, int batchSize) {
+    this.blobstore = blobstore;
+    this.images = images;
+    this.datastore = datastore;
+    this.batchSize = batchSize;
+  }
+
+  /**
+  * Enqueues photos for deletion with a single datastore write.
+  *
+  * @param blobKeys The blob keys of photos that are no longer referenced by any user
+  */
+  public void enqueue(Collection<String> blobKeys) {
+    if (blobKeys.isEmpty()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    List<Entity> deletions = new ArrayList<>();
+    for (String blobKey : blobKeys) {
+      Entity deletion = new Entity(BLOB_DELETION_ENTITY, blobKey);
+      deletion.setProperty(ENQUEUED_AT_PROPERTY, now);
+      deletions.add(deletion);
+    }
+    datastore.put(deletions);
+  }
+
+  /**
+  * Deletes the oldest pending photos.
+  *
+  * <p>A serving URL the image service fails to delete is logged and skipped, since deleting the
+  * blob makes it stop working anyway. The entities are only removed once Blobstore has deleted
+  * the blobs, so a failed batch is retried on the next run.
+  *
+  * @return The number of photos that were deleted
+  */
+  public int runPendingBatch() {
+    List<Entity> deletions = datastore
+      .prepare(new Query(BLOB_DELETION_ENTITY).addSort(ENQUEUED_AT_PROPERTY).setKeysOnly())
+      .asList(FetchOptions.Builder.withLimit(batchSize));
+    if (deletions.isEmpty()) {
+      return 0;
+    }
+
+    List<BlobKey> blobKeys = new ArrayList<>();
+    List<Key> entityKeys = new ArrayList<>();
+    for (Entity deletion : deletions) {
+      String blobKey = deletion.getKey().getName();
+      BlobKey key = new BlobKey(blobKey);
+      try {
+        images.deleteServingUrl(key);
+      } catch (RuntimeException e) {
+        logger.log(Level.WARNING, "Could not delete the serving URL of blob " + blobKey, e);
+      }
+      blobKeys.add(key);
+      entityKeys.add(deletion.getKey());
+      entityKeys.add(KeyFactory.createKey(ImageVariantProcessor.IMAGE_SERVING_URL_ENTITY, blobKey));
+    }
+
+    blobstore.delete(blobKeys.toArray(new BlobKey[0]));
+    datastore.delete(entityKeys);
+    return blobKeys.size();
+  }
+}
@@ -0,0 +1,61 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.images;
+
+/** The sizes a profile photo is served at, each bounded by its longest side in pixels. */
+public enum ImageVariant {
+  // Match list cards and other small previews
+  THUMBNAIL("thumbnail", 200),
+  // Feed carousel cards
+  CARD("card", 600),
+  // The largest size the image service serves, for viewing a single photo
+  FULL("full", 1600);
+
+  private final String name;
+  private final int maxDimension;
+
+  ImageVariant(String name, int maxDimension) {
+    this.name = name;
+    this.maxDimension = maxDimension;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getMaxDimension() {
+    return maxDimension;
+  }
+
+  /**
+  * Looks up a variant by the name used in request parameters.
+  *
+  * @param name The variant name, such as {@code "card"}
+  * @return The variant, or {@code null} if no variant has that name
+  */
+  public static ImageVariant fromName(String name) {
+    for (ImageVariant variant : values()) {
+      if (variant.name.equals(name)) {
+        return variant;
+      }
+    }
+    return null;
+  }
+
+  /** Returns the URL of this variant of an image, given the image's serving URL. */
+  public String getUrl(String servingUrl) {
+    // The image service resizes and recompresses on the fly based on this suffix
+    return servingUrl + "=s" + maxDimension;
+  }
+}
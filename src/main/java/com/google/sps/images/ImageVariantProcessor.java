@@ -0,0 +1,133 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.images;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ImagesServiceFactory;
+import com.google.appengine.api.images.ServingUrlOptions;
+
+/**
+* Upload-time processing that makes every {@link ImageVariant} of a photo servable.
+*
+* <p>Each uploaded blob is registered with the image service, which returns a serving URL
+* that resizes and recompresses the image on Google's image servers and caches it at the edge.
+* The serving URL is stored in an entity keyed by the blob key, so {@code /blob-key} can look
+* it up with a single get. Uploads are registered in parallel on a pool of request threads,
+* which all finish before the upload request does.
+*/
+public class ImageVariantProcessor {
+  static final String IMAGE_SERVING_URL_ENTITY = "image-serving-url";
+  static final String SERVING_URL_PROPERTY = "url";
+  // A profile form holds at most five photos
+  private static final int WORKER_COUNT = 5;
+
+  private static final Logger logger = Logger.getLogger(ImageVariantProcessor.class.getName());
+
+  private final ImagesService images;
+  private final DatastoreService datastore;
+  private final ThreadFactory threadFactory;
+
+  public ImageVariantProcessor(DatastoreService datastore) {
+    this(ImagesServiceFactory.getImagesService(), datastore, null);
+  }
+
+  /**
+  * @param threadFactory Creates the worker threads, or {@code null} to use request threads,
+  *     which are the only threads allowed to call App Engine APIs
+  */
+  public ImageVariantProcessor(ImagesService images, DatastoreService datastore, ThreadFactory threadFactory) {
+    this.images = images;
+    this.datastore = datastore;
+    this.threadFactory = threadFactory;
+  }
+
+  /**
+  * Registers newly uploaded photos with the image service and stores their serving URLs.
+  *
+  * <p>A photo the image service rejects, for example because it is not an image, is logged
+  * and left out, so it keeps being served in its original form.
+  *
+  * @param blobKeys The blob keys of the uploaded photos
+  * @return The serving URL of every photo that was registered, by blob key
+  */
+  public Map<String, String> createServingUrls(Collection<String> blobKeys) {
+    if (blobKeys.isEmpty()) {
+      return new LinkedHashMap<>();
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(Math.min(WORKER_COUNT, blobKeys.size()),
+      threadFactory != null ? threadFactory : ThreadManager.currentRequestThreadFactory());
+    Map<String, Future<String>> pendingUrls = new LinkedHashMap<>();
+    try {
+      for (String blobKey : blobKeys) {
+        pendingUrls.put(blobKey, workers.submit(() ->
+          images.getServingUrl(ServingUrlOptions.Builder.withBlobKey(new BlobKey(blobKey)).secureUrl(true))));
+      }
+
+      Map<String, String> servingUrls = new LinkedHashMap<>();
+      List<Entity> servingUrlEntities = new ArrayList<>();
+      for (Map.Entry<String, Future<String>> pendingUrl : pendingUrls.entrySet()) {
+        try {
+          String servingUrl = pendingUrl.getValue().get();
+          servingUrls.put(pendingUrl.getKey(), servingUrl);
+          Entity servingUrlEntity = new Entity(IMAGE_SERVING_URL_ENTITY, pendingUrl.getKey());
+          servingUrlEntity.setUnindexedProperty(SERVING_URL_PROPERTY, servingUrl);
+          servingUrlEntities.add(servingUrlEntity);
+        } catch (ExecutionException e) {
+          logger.log(Level.WARNING, "Could not create a serving URL for blob " + pendingUrl.getKey(), e.getCause());
+        }
+      }
+      datastore.put(servingUrlEntities);
+      return servingUrls;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while processing uploaded photos", e);
+    } finally {
+      workers.shutdownNow();
+    }
+  }
+
+  /**
+  * Looks up the serving URL stored for a photo.
+  *
+  * @param blobKey The blob key of the photo
+  * @return The serving URL, or {@code null} if the photo was never registered
+  */
+  public String getServingUrl(String blobKey) {
+    try {
+      Entity servingUrlEntity = datastore.get(KeyFactory.createKey(IMAGE_SERVING_URL_ENTITY, blobKey));
+      return (String) servingUrlEntity.getProperty(SERVING_URL_PROPERTY);
+    } catch (EntityNotFoundException e) {
+      return null;
+    }
+  }
+}
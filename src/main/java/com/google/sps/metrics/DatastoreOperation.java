@@ -0,0 +1,35 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+/** The kinds of Datastore round trips that are counted separately. */
+public enum DatastoreOperation {
+  GET("get"),
+  QUERY("query"),
+  PUT("put"),
+  DELETE("delete"),
+  // Transactions, ID allocation and index lookups
+  OTHER("other");
+
+  private final String label;
+
+  DatastoreOperation(String label) {
+    this.label = label;
+  }
+
+  /** Returns the name used for the operation in logs and metric labels. */
+  public String getLabel() {
+    return label;
+  }
+}
@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+* The Datastore round trips made while handling one request.
+*
+* <p>The stats of the request being handled are attached to its thread between {@link #begin}
+* and {@link #end}, so the {@link InstrumentedDatastore} of any servlet or helper can add to
+* them without the stats being passed around. Calls made on other threads, such as executor
+* pools, are not attributed to the request.
+*/
+public class DatastoreRpcStats {
+  private static final ThreadLocal<DatastoreRpcStats> CURRENT = new ThreadLocal<>();
+
+  private final long[] counts = new long[DatastoreOperation.values().length];
+  private final long[] nanos = new long[DatastoreOperation.values().length];
+
+  DatastoreRpcStats() {}
+
+  /** Starts counting the round trips of the request handled by the current thread. */
+  public static DatastoreRpcStats begin() {
+    DatastoreRpcStats stats = new DatastoreRpcStats();
+    CURRENT.set(stats);
+    return stats;
+  }
+
+  /** Stops counting for the current thread's request. */
+  public static void end() {
+    CURRENT.remove();
+  }
+
+  /** Returns the stats of the request handled by the current thread, or {@code null} if none. */
+  public static DatastoreRpcStats current() {
+    return CURRENT.get();
+  }
+
+  void record(DatastoreOperation operation, long elapsedNanos) {
+    counts[operation.ordinal()]++;
+    nanos[operation.ordinal()] += elapsedNanos;
+  }
+
+  public long getCount(DatastoreOperation operation) {
+    return counts[operation.ordinal()];
+  }
+
+  public long getNanos(DatastoreOperation operation) {
+    return nanos[operation.ordinal()];
+  }
+
+  public long getTotalCount() {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  /** Describes the round trips, such as {@code "query=3 (41 ms), put=1 (6 ms)"}, for logging. */
+  public String toBreakdown() {
+    StringBuilder breakdown = new StringBuilder();
+    for (DatastoreOperation operation : DatastoreOperation.values()) {
+      if (counts[operation.ordinal()] == 0) {
+        continue;
+      }
+      if (breakdown.length() > 0) {
+        breakdown.append(", ");
+      }
+      breakdown.append(operation.getLabel()).append('=').append(counts[operation.ordinal()])
+        .append(" (").append(TimeUnit.NANOSECONDS.toMillis(nanos[operation.ordinal()])).append(" ms)");
+    }
+    return breakdown.length() == 0 ? "none" : breakdown.toString();
+  }
+}
@@ -0,0 +1,88 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** The request metrics of one endpoint since the instance started. */
+public class EndpointMetrics {
+  private final LogLinearHistogram latencyMicros = new LogLinearHistogram();
+  private final LogLinearHistogram responseBytes = new LogLinearHistogram();
+  private final LongAdder errors = new LongAdder();
+  private final LogLinearHistogram datastoreRpcsPerRequest = new LogLinearHistogram();
+  private final LongAdder[] datastoreRpcs = createAdders();
+  private final LongAdder[] datastoreRpcNanos = createAdders();
+
+  /**
+  * Records one finished request.
+  *
+  * @param latencyNanos How long the request took to handle
+  * @param status The HTTP status sent, or 500 if handling the request threw
+  * @param bytesWritten The size of the response body
+  */
+  public void recordRequest(long latencyNanos, int status, long bytesWritten) {
+    latencyMicros.record(latencyNanos / 1_000);
+    responseBytes.record(bytesWritten);
+    if (status >= 500) {
+      errors.increment();
+    }
+  }
+
+  /** Adds the Datastore round trips of one finished request. */
+  public void recordDatastoreRpcs(DatastoreRpcStats stats) {
+    datastoreRpcsPerRequest.record(stats.getTotalCount());
+    for (DatastoreOperation operation : DatastoreOperation.values()) {
+      datastoreRpcs[operation.ordinal()].add(stats.getCount(operation));
+      datastoreRpcNanos[operation.ordinal()].add(stats.getNanos(operation));
+    }
+  }
+
+  public long getRequestCount() {
+    return latencyMicros.getCount();
+  }
+
+  /** Returns the number of requests that failed with a server error. */
+  public long getErrorCount() {
+    return errors.sum();
+  }
+
+  public LogLinearHistogram getLatencyMicros() {
+    return latencyMicros;
+  }
+
+  public LogLinearHistogram getResponseBytes() {
+    return responseBytes;
+  }
+
+  /** Returns the distribution of the number of Datastore round trips made by one request. */
+  public LogLinearHistogram getDatastoreRpcsPerRequest() {
+    return datastoreRpcsPerRequest;
+  }
+
+  public long getDatastoreRpcCount(DatastoreOperation operation) {
+    return datastoreRpcs[operation.ordinal()].sum();
+  }
+
+  public long getDatastoreRpcNanos(DatastoreOperation operation) {
+    return datastoreRpcNanos[operation.ordinal()].sum();
+  }
+
+  private static LongAdder[] createAdders() {
+    LongAdder[] adders = new LongAdder[DatastoreOperation.values().length];
+    for (int i = 0; i < adders.length; i++) {
+      adders[i] = new LongAdder();
+    }
+    return adders;
+  }
+}
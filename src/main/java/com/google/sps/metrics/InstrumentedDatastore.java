@@ -0,0 +1,126 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.common.base.Ticker;
+
+/**
+* Decorates a {@link DatastoreService} so that every round trip it makes is counted and timed
+* in the {@link DatastoreRpcStats} of the current request.
+*
+* <p>A query is counted when one of its {@link PreparedQuery} results is requested, since
+* preparing it makes no round trip. Results fetched lazily while iterating are not timed.
+* Calls made outside a request are passed through without being counted. An
+* {@link AsyncDatastoreService} is counted the same way, but its calls return before their round
+* trip completes, so only the time to issue them is recorded.
+*/
+public class InstrumentedDatastore {
+  private InstrumentedDatastore() {}
+
+  /** Returns a datastore that records its round trips, then forwards them to {@code datastore}. */
+  public static DatastoreService wrap(DatastoreService datastore) {
+    return wrap(datastore, Ticker.systemTicker());
+  }
+
+  static DatastoreService wrap(DatastoreService datastore, Ticker ticker) {
+    return (DatastoreService) Proxy.newProxyInstance(DatastoreService.class.getClassLoader(),
+      new Class<?>[] {DatastoreService.class}, new DatastoreHandler(datastore, ticker));
+  }
+
+  /** Returns an async datastore that records its round trips, then forwards them to {@code datastore}. */
+  public static AsyncDatastoreService wrap(AsyncDatastoreService datastore) {
+    return (AsyncDatastoreService) Proxy.newProxyInstance(AsyncDatastoreService.class.getClassLoader(),
+      new Class<?>[] {AsyncDatastoreService.class}, new DatastoreHandler(datastore, Ticker.systemTicker()));
+  }
+
+  private static DatastoreOperation getOperation(String methodName) {
+    switch (methodName) {
+      case "get":
+        return DatastoreOperation.GET;
+      case "put":
+        return DatastoreOperation.PUT;
+      case "delete":
+        return DatastoreOperation.DELETE;
+      case "beginTransaction":
+      case "allocateIds":
+      case "allocateIdRange":
+      case "getIndexes":
+        return DatastoreOperation.OTHER;
+      default:
+        // prepare and the local transaction bookkeeping make no round trip
+        return null;
+    }
+  }
+
+  private static Object invokeAndRecord(Object target, Method method, Object[] args,
+      DatastoreOperation operation, Ticker ticker) throws Throwable {
+    DatastoreRpcStats stats = operation == null ? null : DatastoreRpcStats.current();
+    long start = stats == null ? 0 : ticker.read();
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    } finally {
+      if (stats != null) {
+        stats.record(operation, ticker.read() - start);
+      }
+    }
+  }
+
+  private static class DatastoreHandler implements InvocationHandler {
+    // Either a DatastoreService or an AsyncDatastoreService, which share their method names
+    private final Object datastore;
+    private final Ticker ticker;
+
+    private DatastoreHandler(Object datastore, Ticker ticker) {
+      this.datastore = datastore;
+      this.ticker = ticker;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      Object result = invokeAndRecord(datastore, method, args, getOperation(method.getName()), ticker);
+      if (result instanceof PreparedQuery) {
+        return Proxy.newProxyInstance(PreparedQuery.class.getClassLoader(),
+          new Class<?>[] {PreparedQuery.class}, new PreparedQueryHandler((PreparedQuery) result, ticker));
+      }
+      return result;
+    }
+  }
+
+  private static class PreparedQueryHandler implements InvocationHandler {
+    private final PreparedQuery preparedQuery;
+    private final Ticker ticker;
+
+    private PreparedQueryHandler(PreparedQuery preparedQuery, Ticker ticker) {
+      this.preparedQuery = preparedQuery;
+      this.ticker = ticker;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      // Every method fetching results starts with "as" or is countEntities
+      boolean fetchesResults = method.getName().startsWith("as") || method.getName().equals("countEntities");
+      return invokeAndRecord(preparedQuery, method, args,
+        fetchesResults ? DatastoreOperation.QUERY : null, ticker);
+    }
+  }
+}
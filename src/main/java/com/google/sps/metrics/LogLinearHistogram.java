@@ -0,0 +1,112 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+* Lock-free histogram of non-negative values, such as latencies in microseconds or sizes in
+* bytes, with a bounded relative error.
+*
+* <p>Like an HDR histogram, values below {@code 2^SUB_BUCKET_BITS} get a bucket each, and every
+* higher power of two range is split into {@code 2^SUB_BUCKET_BITS} equal buckets. Any
+* percentile is therefore within about 3% of the true value, recording is a few shifts and one
+* atomic increment, and the whole histogram is a fixed array of counts that never allocates.
+*/
+public class LogLinearHistogram {
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  // Larger values are recorded as this one
+  private static final long MAX_TRACKABLE_VALUE = (1L << 40) - 1;
+  private static final int BUCKET_COUNT = getBucketIndex(MAX_TRACKABLE_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  /** Records one value; negative values are recorded as 0. */
+  public void record(long value) {
+    long clamped = Math.min(Math.max(value, 0), MAX_TRACKABLE_VALUE);
+    counts.incrementAndGet(getBucketIndex(clamped));
+    count.increment();
+    sum.add(clamped);
+    max.accumulate(clamped);
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getSum() {
+    return sum.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+  * Returns the value that the given share of the recorded values are at or below.
+  *
+  * <p>The result is the highest value of the bucket holding that percentile, capped at the
+  * largest recorded value, so it never understates the tail. Values recorded concurrently may
+  * or may not be included.
+  *
+  * @param percentile The percentile between 0 and 100, such as 99 for the p99
+  * @return The value at the percentile, or 0 if nothing was recorded
+  */
+  public long getValueAtPercentile(double percentile) {
+    long total = 0;
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      snapshot[bucket] = counts.get(bucket);
+      total += snapshot[bucket];
+    }
+    if (total == 0) {
+      return 0;
+    }
+
+    long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+      seen += snapshot[bucket];
+      if (seen >= rank) {
+        return Math.min(getBucketUpperBound(bucket), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  static int getBucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    // The bucket's power of two range, counted from the first range above the exact buckets
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long getBucketUpperBound(int bucket) {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+    long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+    return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+  }
+}
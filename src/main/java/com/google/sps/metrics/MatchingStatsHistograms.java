@@ -0,0 +1,63 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import com.google.sps.data.MatchingStats;
+import com.google.sps.data.MatchingStatsCollector;
+
+/** Aggregates the stats of every potential match search into one histogram per counter. */
+public class MatchingStatsHistograms implements MatchingStatsCollector {
+  private final LogLinearHistogram friendsScanned = new LogLinearHistogram();
+  private final LogLinearHistogram edgesTraversed = new LogLinearHistogram();
+  private final LogLinearHistogram duplicatesDiscarded = new LogLinearHistogram();
+  private final LogLinearHistogram exclusionsApplied = new LogLinearHistogram();
+  private final LogLinearHistogram resultSize = new LogLinearHistogram();
+  private final LogLinearHistogram elapsedMicros = new LogLinearHistogram();
+
+  MatchingStatsHistograms() {}
+
+  @Override
+  public void record(MatchingStats stats) {
+    friendsScanned.record(stats.getFriendsScanned());
+    edgesTraversed.record(stats.getEdgesTraversed());
+    duplicatesDiscarded.record(stats.getDuplicatesDiscarded());
+    exclusionsApplied.record(stats.getExclusionsApplied());
+    resultSize.record(stats.getResultSize());
+    elapsedMicros.record(stats.getElapsedNanos() / 1_000);
+  }
+
+  public LogLinearHistogram getFriendsScanned() {
+    return friendsScanned;
+  }
+
+  public LogLinearHistogram getEdgesTraversed() {
+    return edgesTraversed;
+  }
+
+  public LogLinearHistogram getDuplicatesDiscarded() {
+    return duplicatesDiscarded;
+  }
+
+  public LogLinearHistogram getExclusionsApplied() {
+    return exclusionsApplied;
+  }
+
+  public LogLinearHistogram getResultSize() {
+    return resultSize;
+  }
+
+  public LogLinearHistogram getElapsedMicros() {
+    return elapsedMicros;
+  }
+}
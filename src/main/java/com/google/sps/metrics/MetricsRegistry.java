@@ -0,0 +1,177 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+* The request metrics of every endpoint of this instance, written out in the Prometheus text
+* exposition format.
+*
+* <p>Metrics are kept in memory per instance and reset when it restarts; a scraper sums them
+* across instances. Latency and response size are exported as summaries with precomputed
+* quantiles, so the p50, p95 and p99 can be read straight off {@code /metrics}.
+*/
+public class MetricsRegistry {
+  // Endpoints past this many share one entry, so odd paths cannot grow the registry forever
+  private static final int MAX_ENDPOINTS = 100;
+  private static final String OTHER_ENDPOINT = "other";
+  private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+  private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+  private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+  private final MatchingStatsHistograms matchingStats = new MatchingStatsHistograms();
+
+  MetricsRegistry() {}
+
+  /** Returns the registry shared by the filter and the metrics servlet. */
+  public static MetricsRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns the metrics of an endpoint, creating them on its first request. */
+  public EndpointMetrics getEndpoint(String endpoint) {
+    EndpointMetrics metrics = endpoints.get(endpoint);
+    if (metrics != null) {
+      return metrics;
+    }
+    if (endpoints.size() >= MAX_ENDPOINTS) {
+      endpoint = OTHER_ENDPOINT;
+    }
+    return endpoints.computeIfAbsent(endpoint, key -> new EndpointMetrics());
+  }
+
+  /** Returns the collector for the work done by potential match searches. */
+  public MatchingStatsHistograms getMatchingStats() {
+    return matchingStats;
+  }
+
+  /** Writes every metric in the Prometheus text format, endpoints in alphabetical order. */
+  public void writePrometheus(PrintWriter out) {
+    Map<String, EndpointMetrics> sortedEndpoints = new TreeMap<>(endpoints);
+
+    writeHeader(out, "http_requests_total", "counter", "Requests handled, by endpoint.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      writeSample(out, "http_requests_total", getLabels(entry.getKey()), entry.getValue().getRequestCount());
+    }
+
+    writeHeader(out, "http_request_errors_total", "counter",
+      "Requests that failed with a server error, by endpoint.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      writeSample(out, "http_request_errors_total", getLabels(entry.getKey()),
+        entry.getValue().getErrorCount());
+    }
+
+    writeHeader(out, "http_request_duration_seconds", "summary", "Request latency, by endpoint.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      writeSummary(out, "http_request_duration_seconds", getLabels(entry.getKey()),
+        entry.getValue().getLatencyMicros(), /* scale= */ 1e-6);
+    }
+
+    writeHeader(out, "http_response_size_bytes", "summary", "Response body size, by endpoint.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      writeSummary(out, "http_response_size_bytes", getLabels(entry.getKey()),
+        entry.getValue().getResponseBytes(), /* scale= */ 1);
+    }
+
+    writeHeader(out, "datastore_rpcs_per_request", "summary",
+      "Datastore round trips made by one request, by endpoint.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      writeSummary(out, "datastore_rpcs_per_request", getLabels(entry.getKey()),
+        entry.getValue().getDatastoreRpcsPerRequest(), /* scale= */ 1);
+    }
+
+    writeHeader(out, "datastore_rpcs_total", "counter", "Datastore round trips, by endpoint and operation.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      for (DatastoreOperation operation : DatastoreOperation.values()) {
+        writeSample(out, "datastore_rpcs_total", getLabels(entry.getKey(), "operation", operation.getLabel()),
+          entry.getValue().getDatastoreRpcCount(operation));
+      }
+    }
+
+    writeHeader(out, "datastore_rpc_duration_seconds_total", "counter",
+      "Time spent waiting on Datastore, by endpoint and operation.");
+    for (Map.Entry<String, EndpointMetrics> entry : sortedEndpoints.entrySet()) {
+      for (DatastoreOperation operation : DatastoreOperation.values()) {
+        writeSample(out, "datastore_rpc_duration_seconds_total",
+          getLabels(entry.getKey(), "operation", operation.getLabel()),
+          entry.getValue().getDatastoreRpcNanos(operation) * 1e-9);
+      }
+    }
+
+    writeMatchingSummary(out, "matching_friends_scanned", "Friends expanded by one potential match search.",
+      matchingStats.getFriendsScanned(), /* scale= */ 1);
+    writeMatchingSummary(out, "matching_edges_traversed", "Friend of friend entries examined by one search.",
+      matchingStats.getEdgesTraversed(), /* scale= */ 1);
+    writeMatchingSummary(out, "matching_duplicates_discarded",
+      "Candidates one search reached through more than one friend.",
+      matchingStats.getDuplicatesDiscarded(), /* scale= */ 1);
+    writeMatchingSummary(out, "matching_exclusions_applied",
+      "Candidates one search dropped as already decided.",
+      matchingStats.getExclusionsApplied(), /* scale= */ 1);
+    writeMatchingSummary(out, "matching_result_size", "Potential matches returned by one search.",
+      matchingStats.getResultSize(), /* scale= */ 1);
+    writeMatchingSummary(out, "matching_duration_seconds", "Time taken by one potential match search.",
+      matchingStats.getElapsedMicros(), /* scale= */ 1e-6);
+  }
+
+  private static void writeMatchingSummary(PrintWriter out, String name, String help,
+      LogLinearHistogram histogram, double scale) {
+    writeHeader(out, name, "summary", help);
+    writeSummary(out, name, /* labels= */ "", histogram, scale);
+  }
+
+  private static void writeHeader(PrintWriter out, String name, String type, String help) {
+    out.print("# HELP " + name + " " + help + "\n");
+    out.print("# TYPE " + name + " " + type + "\n");
+  }
+
+  private static void writeSummary(PrintWriter out, String name, String labels,
+      LogLinearHistogram histogram, double scale) {
+    for (double quantile : QUANTILES) {
+      String quantileLabel = "quantile=\"" + quantile + "\"";
+      writeSample(out, name, labels.isEmpty() ? quantileLabel : labels + "," + quantileLabel,
+        histogram.getValueAtPercentile(quantile * 100) * scale);
+    }
+    writeSample(out, name + "_sum", labels, histogram.getSum() * scale);
+    writeSample(out, name + "_count", labels, histogram.getCount());
+  }
+
+  private static void writeSample(PrintWriter out, String name, String labels, double value) {
+    out.print(name + (labels.isEmpty() ? "" : "{" + labels + "}") + " " + formatValue(value) + "\n");
+  }
+
+  private static String getLabels(String endpoint) {
+    return "endpoint=\"" + escapeLabelValue(endpoint) + "\"";
+  }
+
+  private static String getLabels(String endpoint, String name, String value) {
+    return getLabels(endpoint) + "," + name + "=\"" + escapeLabelValue(value) + "\"";
+  }
+
+  private static String formatValue(double value) {
+    return value == Math.rint(value) && Math.abs(value) < 1e15
+        ? Long.toString((long) value)
+        : Double.toString(value);
+  }
+
+  private static String escapeLabelValue(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import com.google.common.base.Ticker;
+
+/**
+* Records the latency, status, response size and Datastore round trips of every request
+* against its endpoint in the {@link MetricsRegistry}.
+*
+* <p>The endpoint is the servlet path, such as {@code /potential-matches}, without the query
+* string, so the number of endpoints stays small. Recording costs a couple of clock reads and
+* atomic increments per request. Requests slower than {@link #SLOW_REQUEST_THRESHOLD_NANOS}
+* are logged with a breakdown of their Datastore round trips.
+*
+* <p>The filter is mapped first in web.xml, so it wraps every other filter and measures what
+* is actually sent to the client.
+*/
+public class RequestMetricsFilter implements Filter {
+  static final long SLOW_REQUEST_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final Logger logger = Logger.getLogger(RequestMetricsFilter.class.getName());
+
+  private final MetricsRegistry registry;
+  private final Ticker ticker;
+
+  public RequestMetricsFilter() {
+    this(MetricsRegistry.getInstance(), Ticker.systemTicker());
+  }
+
+  RequestMetricsFilter(MetricsRegistry registry, Ticker ticker) {
+    this.registry = registry;
+    this.ticker = ticker;
+  }
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String endpoint = getEndpoint((HttpServletRequest) request);
+    CountingResponse countingResponse = new CountingResponse((HttpServletResponse) response);
+    DatastoreRpcStats rpcStats = DatastoreRpcStats.begin();
+    long start = ticker.read();
+    boolean failed = true;
+    try {
+      chain.doFilter(request, countingResponse);
+      countingResponse.flushWriter();
+      failed = false;
+    } finally {
+      long latencyNanos = ticker.read() - start;
+      DatastoreRpcStats.end();
+      int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : countingResponse.getStatus();
+      EndpointMetrics metrics = registry.getEndpoint(endpoint);
+      metrics.recordRequest(latencyNanos, status, countingResponse.getBytesWritten());
+      metrics.recordDatastoreRpcs(rpcStats);
+      if (latencyNanos >= SLOW_REQUEST_THRESHOLD_NANOS) {
+        logger.warning("Slow request to " + endpoint + " took "
+          + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms with status " + status
+          + "; Datastore round trips: " + rpcStats.toBreakdown());
+      }
+    }
+  }
+
+  @Override
+  public void destroy() {}
+
+  private static String getEndpoint(HttpServletRequest request) {
+    String servletPath = request.getServletPath();
+    return servletPath == null || servletPath.isEmpty() ? "/" : servletPath;
+  }
+
+  /** Response that counts the bytes of the body as the servlet writes them. */
+  private static class CountingResponse extends HttpServletResponseWrapper {
+    private CountingOutputStream outputStream;
+    private PrintWriter writer;
+
+    private CountingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+      if (outputStream == null) {
+        outputStream = new CountingOutputStream(super.getOutputStream());
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        if (outputStream != null) {
+          throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        outputStream = new CountingOutputStream(super.getOutputStream());
+        writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      flushWriter();
+      super.flushBuffer();
+    }
+
+    private void flushWriter() {
+      if (writer != null) {
+        writer.flush();
+      }
+    }
+
+    private long getBytesWritten() {
+      return outputStream == null ? 0 : outputStream.bytesWritten;
+    }
+  }
+
+  private static class CountingOutputStream extends ServletOutputStream {
+    private final ServletOutputStream delegate;
+    private long bytesWritten = 0;
+
+    private CountingOutputStream(ServletOutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      delegate.write(b);
+      bytesWritten++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      delegate.write(b, off, len);
+      bytesWritten += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return delegate.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      delegate.setWriteListener(writeListener);
+    }
+  }
+}
@@ -15,6 +15,7 @@
 package com.google.sps.servlets;
 
 import java.io.IOException;
+import java.util.Arrays;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -22,20 +23,103 @@ import javax.servlet.http.HttpServletResponse;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreService;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.blobstore.ByteRange;
+import com.google.appengine.api.blobstore.RangeFormatException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.images.ImageVariant;
+import com.google.sps.images.ImageVariantProcessor;
+import com.google.sps.metrics.InstrumentedDatastore;
 
 /**
  * Servlet that handles requests for a blob given its blobkey
+ *
+ * <p>With a size parameter naming an {@link ImageVariant}, such as {@code size=card}, the
+ * request is redirected to the resized variant on the image service instead. Photos uploaded
+ * before variants existed, and anything the image service rejected, are served in their
+ * original form.
+ *
+ * <p>A blob key always names the same bytes, so responses are marked immutable and cached for a
+ * year, with the blob key as the entity tag. Conditional requests are answered with 304 without
+ * reading the blob, and single byte ranges are passed through to Blobstore. Any other Range
+ * header is ignored and the whole blob is served.
  */
 @WebServlet("/blob-key")
 public class BlobServlet extends HttpServlet {
-  private static final String IMAGE_KEY_PARAMETER = "imageKey";
+  static final String IMAGE_KEY_PARAMETER = "imageKey";
+  static final String SIZE_PARAMETER = "size";
+  static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+  // A variant may still be created for an original served in its place, so it is not immutable
+  static final String FALLBACK_CACHE_CONTROL = "public, max-age=86400";
+
+  // Instance variables are package-private so that they are visible for testing
+  BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+  ImageVariantProcessor imageVariants = new ImageVariantProcessor(datastore);
 
-  private final BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
-  
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    BlobKey blobKey = new BlobKey(request.getParameter(IMAGE_KEY_PARAMETER));
-    blobstoreService.serve(blobKey, response);
+    String imageKey = request.getParameter(IMAGE_KEY_PARAMETER);
+    if (imageKey == null || imageKey.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+
+    ImageVariant variant = ImageVariant.fromName(request.getParameter(SIZE_PARAMETER));
+    String variantUrl = null;
+    if (variant != null) {
+      String servingUrl = imageVariants.getServingUrl(imageKey);
+      if (servingUrl != null) {
+        variantUrl = variant.getUrl(servingUrl);
+      }
+    }
+    // The original and the redirect to a variant are different responses, so get different tags
+    String entityTag = variantUrl == null
+      ? getEntityTag(imageKey)
+      : getEntityTag(imageKey + "-" + variant.getName());
+    boolean immutable = variant == null || variantUrl != null;
+    response.setHeader("ETag", entityTag);
+    response.setHeader("Cache-Control", immutable ? IMMUTABLE_CACHE_CONTROL : FALLBACK_CACHE_CONTROL);
+    if (matchesEntityTag(request, entityTag)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    if (variantUrl != null) {
+      response.sendRedirect(variantUrl);
+      return;
+    }
+
+    response.setHeader("Accept-Ranges", "bytes");
+    BlobKey blobKey = new BlobKey(imageKey);
+    ByteRange byteRange;
+    try {
+      byteRange = blobstoreService.getByteRange(request);
+    } catch (RangeFormatException e) {
+      // A Range header that is malformed, or asks for several ranges, may be ignored, and the
+      // whole blob is a valid answer
+      byteRange = null;
+    }
+    if (byteRange == null) {
+      blobstoreService.serve(blobKey, response);
+    } else {
+      blobstoreService.serve(blobKey, byteRange, response);
+    }
+  }
+
+  private static String getEntityTag(String value) {
+    return "\"" + value + "\"";
+  }
+
+  /** Returns whether the client already holds the response with the given entity tag. */
+  private static boolean matchesEntityTag(HttpServletRequest request, String entityTag) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    return Arrays.stream(ifNoneMatch.split(","))
+      .map(String::trim)
+      .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+      .anyMatch(tag -> tag.equals("*") || tag.equals(entityTag));
   }
 }
 
@@ -0,0 +1,314 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Filter that gzip-compresses response bodies for clients that accept it.
+ *
+ * <p>The first {@link #MIN_COMPRESSED_BYTES} bytes of a body are held back. Bodies that end
+ * before that are sent as they are, since gzip would barely shrink them. Once a body grows past
+ * it, the filter decides from the content type whether to compress, and from then on streams
+ * the rest through the compressor without buffering it. Photos from {@link BlobServlet} are
+ * already compressed and served by Blobstore, so that endpoint is skipped entirely.
+ *
+ * <p>The filter is mapped in web.xml after {@code RequestMetricsFilter}, so the recorded
+ * latency includes compression and the recorded size is the compressed size.
+ */
+public class CompressionFilter implements Filter {
+  static final int MIN_COMPRESSED_BYTES = 1024;
+
+  // Endpoints whose responses are already compressed, or do not come from the servlet at all
+  private static final ImmutableSet<String> SKIPPED_ENDPOINTS = ImmutableSet.of("/blob-key");
+  private static final ImmutableSet<String> COMPRESSED_CONTENT_TYPE_PREFIXES =
+    ImmutableSet.of("image/", "audio/", "video/", "application/zip", "application/gzip");
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    if (SKIPPED_ENDPOINTS.contains(httpRequest.getServletPath()) || "HEAD".equals(httpRequest.getMethod())) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    // Caches must keep compressed and uncompressed copies apart
+    httpResponse.addHeader("Vary", "Accept-Encoding");
+    if (!acceptsGzip(httpRequest.getHeader("Accept-Encoding"))) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    CompressingResponse compressingResponse = new CompressingResponse(httpResponse);
+    chain.doFilter(request, compressingResponse);
+    compressingResponse.finish();
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns whether an Accept-Encoding header allows gzip, honoring {@code q=0}. */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+        continue;
+      }
+      double quality = 1.0;
+      for (int i = 1; i < parts.length; i++) {
+        String parameter = parts[i].trim();
+        if (parameter.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2));
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      return quality > 0;
+    }
+    return false;
+  }
+
+  private static boolean isCompressible(HttpServletResponse response) {
+    if (response.containsHeader("Content-Encoding") || response.containsHeader("Content-Range")) {
+      return false;
+    }
+    String contentType = response.getContentType();
+    if (contentType == null) {
+      return true;
+    }
+    String lowerCaseType = contentType.toLowerCase();
+    return COMPRESSED_CONTENT_TYPE_PREFIXES.stream().noneMatch(lowerCaseType::startsWith);
+  }
+
+  /**
+  * Response that holds back the start of the body until it is known whether compressing it is
+  * worth it. The declared content length is held back too, since compressing changes it.
+  */
+  private static class CompressingResponse extends HttpServletResponseWrapper {
+    private CompressingOutputStream outputStream;
+    private PrintWriter writer;
+    private long contentLength = -1;
+
+    private CompressingResponse(HttpServletResponse response) {
+      super(response);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+      if (writer != null) {
+        throw new IllegalStateException("getWriter() has already been called");
+      }
+      if (outputStream == null) {
+        outputStream = new CompressingOutputStream(this);
+      }
+      return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+      if (writer == null) {
+        if (outputStream != null) {
+          throw new IllegalStateException("getOutputStream() has already been called");
+        }
+        outputStream = new CompressingOutputStream(this);
+        writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+      }
+      return writer;
+    }
+
+    @Override
+    public void setContentLength(int length) {
+      contentLength = length;
+    }
+
+    @Override
+    public void setContentLengthLong(long length) {
+      contentLength = length;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+      if ("Content-Length".equalsIgnoreCase(name)) {
+        contentLength = value == null ? -1 : Long.parseLong(value);
+      } else {
+        super.setHeader(name, value);
+      }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+      if ("Content-Length".equalsIgnoreCase(name)) {
+        setHeader(name, value);
+      } else {
+        super.addHeader(name, value);
+      }
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.flush();
+      }
+      super.flushBuffer();
+    }
+
+    @Override
+    public void resetBuffer() {
+      super.resetBuffer();
+      if (outputStream != null) {
+        outputStream.resetHeldBack();
+      }
+    }
+
+    @Override
+    public void reset() {
+      super.reset();
+      contentLength = -1;
+      if (outputStream != null) {
+        outputStream.resetHeldBack();
+      }
+    }
+
+    /** Sends whatever is still held back and ends the compressed stream. */
+    private void finish() throws IOException {
+      if (writer != null) {
+        writer.flush();
+      }
+      if (outputStream != null) {
+        outputStream.finish();
+      }
+    }
+
+    /** Starts sending the body uncompressed, passing on the content length it declared. */
+    private OutputStream startUncompressed() throws IOException {
+      if (contentLength >= 0) {
+        super.setContentLengthLong(contentLength);
+      }
+      return super.getOutputStream();
+    }
+
+    private OutputStream startCompressed() throws IOException {
+      super.setHeader("Content-Encoding", "gzip");
+      return new GZIPOutputStream(super.getOutputStream(), MIN_COMPRESSED_BYTES, /* syncFlush= */ true);
+    }
+  }
+
+  private static class CompressingOutputStream extends ServletOutputStream {
+    private final CompressingResponse response;
+    private ByteArrayOutputStream heldBack = new ByteArrayOutputStream(MIN_COMPRESSED_BYTES);
+    // Null until it is decided whether to compress
+    private OutputStream delegate;
+
+    private CompressingOutputStream(CompressingResponse response) {
+      this.response = response;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (delegate == null) {
+        if (heldBack.size() + len <= MIN_COMPRESSED_BYTES) {
+          heldBack.write(b, off, len);
+          return;
+        }
+        delegate = isCompressible(response) ? response.startCompressed() : response.startUncompressed();
+        heldBack.writeTo(delegate);
+        heldBack = null;
+      }
+      delegate.write(b, off, len);
+    }
+
+    /** Flushes the body once it is decided; until then flushing would commit it too early. */
+    @Override
+    public void flush() throws IOException {
+      if (delegate != null) {
+        delegate.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      finish();
+    }
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    /** The filter does not support async requests, so non-blocking writes never apply. */
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      throw new IllegalStateException("Compressed responses are only written from synchronous requests");
+    }
+
+    private void resetHeldBack() {
+      if (delegate == null) {
+        heldBack.reset();
+      }
+    }
+
+    private void finish() throws IOException {
+      if (delegate == null) {
+        delegate = response.startUncompressed();
+        heldBack.writeTo(delegate);
+        heldBack = null;
+      }
+      if (delegate instanceof GZIPOutputStream) {
+        ((GZIPOutputStream) delegate).finish();
+      }
+      delegate.flush();
+    }
+  }
+}
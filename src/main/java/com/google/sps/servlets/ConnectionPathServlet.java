@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.gson.Gson;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.data.ConnectionPath;
+import com.google.sps.data.ConnectionPathFinder;
+import com.google.sps.data.FriendGraphSnapshot;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that returns the shortest chain of friendships connecting two users.
+ */
+@WebServlet("/connection-path")
+public class ConnectionPathServlet extends HttpServlet {
+  static final String USER_ID_1_REQUEST_URL_PARAM = "userid1";
+  static final String USER_ID_2_REQUEST_URL_PARAM = "userid2";
+  static final String MAX_DEPTH_REQUEST_URL_PARAM = "maxdepth";
+
+  static final int DEFAULT_MAX_DEPTH = 6;
+  static final int MAX_ALLOWED_DEPTH = 10;
+  static final int MAX_NODES_VISITED = 100_000;
+
+  private final Gson gson = new Gson();
+
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String userID1 = request.getParameter(USER_ID_1_REQUEST_URL_PARAM);
+    String userID2 = request.getParameter(USER_ID_2_REQUEST_URL_PARAM);
+
+    int maxDepth;
+    try {
+      maxDepth = getMaxDepth(request.getParameter(MAX_DEPTH_REQUEST_URL_PARAM));
+    } catch (NumberFormatException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "maxdepth must be a number");
+      return;
+    }
+
+    UserFriendsMap friendsMap = FriendGraphSnapshot.get(datastore);
+    ConnectionPath connectionPath =
+      ConnectionPathFinder.findShortestPath(userID1, userID2, friendsMap, maxDepth, MAX_NODES_VISITED);
+
+    response.setContentType("application/json");
+    response.getWriter().print(gson.toJson(connectionPath));
+  }
+
+  /** Reads the requested maximum depth, keeping it between 1 and {@link #MAX_ALLOWED_DEPTH}. */
+  private static int getMaxDepth(String maxDepthParam) {
+    if (maxDepthParam == null || maxDepthParam.isEmpty()) {
+      return DEFAULT_MAX_DEPTH;
+    }
+    return Math.max(1, Math.min(MAX_ALLOWED_DEPTH, Integer.parseInt(maxDepthParam)));
+  }
+}
@@ -0,0 +1,191 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.sps.data.MatchInformation;
+import com.google.sps.data.MatchRecomputeScheduler;
+import com.google.sps.data.PotentialMatchFeed;
+import com.google.sps.data.friend_map.SortedIntersection;
+import com.google.sps.images.ImageVariant;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that returns everything the feed page needs to show a user's next potential match.
+ *
+ * <p>The response holds the same next match and hop distance as {@code /potential-matches},
+ * since both pick it with {@link PotentialMatchFeed}, together with the match's name, bio,
+ * card-size photo URLs and mutual friends, so a card costs a single round trip. Reads that do
+ * not depend on each other are issued on the async datastore before any of them is waited on:
+ * the user's own friends list is read while the next match is picked, and the names of the
+ * mutual friends are all looked up at once.
+ */
+@WebServlet("/feed-card")
+public class FeedCardServlet extends HttpServlet {
+  static final String USER_ID_REQUEST_URL_PARAM = "userid";
+  static final String EXTENDED_SEARCH_REQUEST_URL_PARAM = "extended";
+
+  static final String NEXT_POTENTIAL_MATCH_JSON_KEY = "nextPotentialMatchID";
+  static final String HOP_DISTANCE_JSON_KEY = "hopDistance";
+  static final String PHOTO_URLS_JSON_KEY = "photo-urls";
+  static final String MUTUAL_FRIENDS_JSON_KEY = "mutual-friends";
+  static final String MUTUAL_FRIEND_COUNT_JSON_KEY = "mutual-friend-count";
+
+  // A card only has room for a few names; the count covers the rest
+  static final int MAX_MUTUAL_FRIEND_NAMES = 10;
+
+  private static final FetchOptions SINGLE_RESULT = FetchOptions.Builder.withLimit(1);
+
+  // Instance variables are package-private so that they are visible for testing
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+  AsyncDatastoreService asyncDatastore =
+    InstrumentedDatastore.wrap(DatastoreServiceFactory.getAsyncDatastoreService());
+  private final Gson gson = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String userID = request.getParameter(USER_ID_REQUEST_URL_PARAM);
+    if (userID == null || userID.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "userid is required");
+      return;
+    }
+    MatchRecomputeScheduler.recordActivity(userID);
+    boolean extendedSearch = Boolean.parseBoolean(request.getParameter(EXTENDED_SEARCH_REQUEST_URL_PARAM));
+
+    // Only needed for the mutual friends, so it is fetched in the background meanwhile
+    List<Entity> userResult = queryUser(userID).asList(SINGLE_RESULT);
+    MatchInformation matchInfo = new PotentialMatchFeed(datastore).advanceToNextPotentialMatch(userID, extendedSearch);
+    String matchID = matchInfo.getNextPotentialMatchID();
+
+    ImmutableMap.Builder<String, Object> cardBuilder = ImmutableMap.builder();
+    cardBuilder.put(NEXT_POTENTIAL_MATCH_JSON_KEY, matchID)
+      .put(HOP_DISTANCE_JSON_KEY, matchInfo.getHopDistance());
+    if (!PotentialMatchFeed.NO_POTENTIAL_MATCH_RESULT.equals(matchID)) {
+      List<Entity> matchResult = queryUser(matchID).asList(SINGLE_RESULT);
+      addMatchProfile(cardBuilder, getFirst(matchResult));
+      addMutualFriends(cardBuilder, getFirst(userResult), getFirst(matchResult));
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().print(gson.toJson(cardBuilder.build()));
+  }
+
+  private void addMatchProfile(ImmutableMap.Builder<String, Object> cardBuilder, Entity matchEntity) {
+    if (matchEntity == null) {
+      // The feed reads the photo list unconditionally, even for a match without a profile
+      cardBuilder.put(PHOTO_URLS_JSON_KEY, ImmutableList.of());
+      return;
+    }
+    putIfNotNull(cardBuilder, UserDataServlet.USER_NAME_PROPERTY, matchEntity.getProperty(UserDataServlet.USER_NAME_PROPERTY));
+    putIfNotNull(cardBuilder, UserDataServlet.USER_BIO_PROPERTY, matchEntity.getProperty(UserDataServlet.USER_BIO_PROPERTY));
+    cardBuilder.put(PHOTO_URLS_JSON_KEY, getCardPhotoUrls(
+      (List<String>) matchEntity.getProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY),
+      (List<String>) matchEntity.getProperty(UserDataServlet.USER_IMAGE_URLS_PROPERTY)));
+  }
+
+  /**
+  * Adds the number of mutual friends and the names of the first few. The name lookups are all
+  * issued before the first one is read, so they take about as long as one.
+  */
+  private void addMutualFriends(ImmutableMap.Builder<String, Object> cardBuilder, Entity userEntity,
+      Entity matchEntity) {
+    String[] userFriendIDs = SortedIntersection.toSortedArray(getFriendsList(userEntity));
+    String[] matchFriendIDs = SortedIntersection.toSortedArray(getFriendsList(matchEntity));
+    String[] mutualFriendIDs = new String[Math.min(userFriendIDs.length, matchFriendIDs.length)];
+    int mutualFriendCount = SortedIntersection.intersect(userFriendIDs, matchFriendIDs, mutualFriendIDs);
+
+    List<List<Entity>> nameResults = new ArrayList<>();
+    for (int i = 0; i < Math.min(mutualFriendCount, MAX_MUTUAL_FRIEND_NAMES); i++) {
+      Query nameQuery = new Query(UserDataServlet.USER_ENTITY)
+        .setFilter(new FilterPredicate(UserDataServlet.USER_ID_PROPERTY, FilterOperator.EQUAL, mutualFriendIDs[i]))
+        .addProjection(new PropertyProjection(UserDataServlet.USER_NAME_PROPERTY, String.class));
+      nameResults.add(asyncDatastore.prepare(nameQuery).asList(SINGLE_RESULT));
+    }
+    ImmutableList.Builder<String> names = ImmutableList.builder();
+    for (List<Entity> nameResult : nameResults) {
+      Entity nameEntity = getFirst(nameResult);
+      // A friend without a name is still counted, just not listed
+      if (nameEntity != null) {
+        names.add((String) nameEntity.getProperty(UserDataServlet.USER_NAME_PROPERTY));
+      }
+    }
+
+    cardBuilder.put(MUTUAL_FRIENDS_JSON_KEY, names.build())
+      .put(MUTUAL_FRIEND_COUNT_JSON_KEY, mutualFriendCount);
+  }
+
+  /**
+  * Returns the URL of every photo at card size, in photo order. Photos with a serving URL are
+  * fetched straight from the image service; the others go through {@code /blob-key}.
+  */
+  static ImmutableList<String> getCardPhotoUrls(List<String> blobKeys, List<String> imageUrls) {
+    if (blobKeys == null) {
+      return ImmutableList.of();
+    }
+    ImmutableList.Builder<String> photoUrls = ImmutableList.builder();
+    for (int i = 0; i < blobKeys.size(); i++) {
+      String blobKey = blobKeys.get(i);
+      if (blobKey == null || blobKey.isEmpty()) {
+        continue;
+      }
+      String servingUrl = imageUrls != null && i < imageUrls.size() ? imageUrls.get(i) : null;
+      photoUrls.add(servingUrl == null || servingUrl.isEmpty()
+        ? "/blob-key?" + BlobServlet.IMAGE_KEY_PARAMETER + "=" + blobKey
+          + "&" + BlobServlet.SIZE_PARAMETER + "=" + ImageVariant.CARD.getName()
+        : ImageVariant.CARD.getUrl(servingUrl));
+    }
+    return photoUrls.build();
+  }
+
+  private PreparedQuery queryUser(String userID) {
+    return asyncDatastore.prepare(new Query(UserDataServlet.USER_ENTITY)
+      .setFilter(new FilterPredicate(UserDataServlet.USER_ID_PROPERTY, FilterOperator.EQUAL, userID)));
+  }
+
+  private static List<String> getFriendsList(Entity userEntity) {
+    return userEntity == null
+      ? null
+      : (List<String>) userEntity.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
+  }
+
+  private static Entity getFirst(List<Entity> results) {
+    return results.isEmpty() ? null : results.get(0);
+  }
+
+  private static void putIfNotNull(ImmutableMap.Builder<String, Object> builder, String key, Object value) {
+    if (value != null) {
+      builder.put(key, value);
+    }
+  }
+}
@@ -33,8 +33,10 @@ import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Entity;
 import com.google.sps.data.friend_map.UserNode;
 import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.MatchRecomputeScheduler;
 import com.google.sps.data.PotentialMatchAlgorithm;
 import com.google.sps.data.MatchInformation;
+import com.google.sps.metrics.InstrumentedDatastore;
 
 /**
  * Servlet to handle requests to update match decision information.
@@ -55,13 +57,14 @@ public class MatchDecisionsServlet extends HttpServlet {
   private static final String POTENTIAL_MATCH_REQUEST_PARAM = "potentialMatchID";
   private static final String DECISION_REQUEST_PARAM = "decision";
   
-  DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String userID = (String) request.getParameter(USER_ID_REQUEST_PARAM);
     String potentialMatchID = (String) request.getParameter(POTENTIAL_MATCH_REQUEST_PARAM);
     String decision = (String) request.getParameter(DECISION_REQUEST_PARAM);
+    MatchRecomputeScheduler.recordActivity(userID);
 
     Entity matchInfoEntity = datastore.prepare(new Query(MATCH_INFO_ENTITY).setFilter(
       new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, userID))).asSingleEntity();
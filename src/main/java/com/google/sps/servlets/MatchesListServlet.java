@@ -32,6 +32,7 @@ import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Entity;
+import com.google.sps.metrics.InstrumentedDatastore;
 
 /**
  * Servlet that handles requests to retrieve a list of a user's matches
@@ -46,7 +47,7 @@ public class MatchesListServlet extends HttpServlet {
   private static final String MATCHES_LIST_PROPERTY = "matches-list";
   private static final String USER_ID_REQUEST_URL_PARAM = "id";
   
-  DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -24,9 +24,8 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import com.google.gson.Gson;
-import com.google.common.collect.Sets;
-import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Query;
@@ -35,6 +34,9 @@ import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Query.FilterOperator;
 import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Entity;
+import com.google.sps.data.friend_map.FriendListSketch;
+import com.google.sps.data.friend_map.SortedIntersection;
+import com.google.sps.metrics.InstrumentedDatastore;
 
 /**
  * Servlet to handle requests to update match decision information.
@@ -43,6 +45,10 @@ import com.google.appengine.api.datastore.Entity;
 public class MutualFriendsServlet extends HttpServlet {
   static final String USER_ID_1_REQUEST_URL_PARAM = "userid1";
   static final String USER_ID_2_REQUEST_URL_PARAM = "userid2";
+  static final String APPROXIMATE_REQUEST_URL_PARAM = "approximate";
+
+  static final String MUTUAL_FRIEND_COUNT_JSON_KEY = "count";
+  static final String APPROXIMATE_JSON_KEY = "approximate";
 
   static final String USER_ENTITY = "User";
   static final String USER_ID_PROPERTY = "id";
@@ -50,7 +56,7 @@ public class MutualFriendsServlet extends HttpServlet {
 
   private final Gson gson = new Gson();
 
-  DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
@@ -70,13 +76,28 @@ public class MutualFriendsServlet extends HttpServlet {
               new FilterPredicate(UserDataServlet.USER_ID_PROPERTY, FilterOperator.EQUAL, userID2)))
       .asSingleEntity();
 
+    if (Boolean.parseBoolean(request.getParameter(APPROXIMATE_REQUEST_URL_PARAM))) {
+      // Fast mode: only the count is returned, estimated from the stored friend list sketches
+      FriendListSketch sketch1 = getFriendListSketch(userEntity1);
+      FriendListSketch sketch2 = getFriendListSketch(userEntity2);
+      ImmutableMap<String, Object> estimate = ImmutableMap.of(
+        MUTUAL_FRIEND_COUNT_JSON_KEY, sketch1.estimateIntersectionSize(sketch2),
+        APPROXIMATE_JSON_KEY, !(sketch1.isExact() && sketch2.isExact()));
+
+      response.setContentType("application/json");
+      response.getWriter().print(gson.toJson(estimate));
+      return;
+    }
+
     List<String> userFriendsList1 = (List<String>) userEntity1.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
     List<String> userFriendsList2 = (List<String>) userEntity2.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
 
-    ImmutableSet<String> userFriendsSet1 = userFriendsList1 == null ? ImmutableSet.of() : ImmutableSet.copyOf(userFriendsList1);
-    ImmutableSet<String> userFriendsSet2 = userFriendsList2 == null ? ImmutableSet.of() : ImmutableSet.copyOf(userFriendsList2);
+    String[] sortedFriendIDs1 = SortedIntersection.toSortedArray(userFriendsList1);
+    String[] sortedFriendIDs2 = SortedIntersection.toSortedArray(userFriendsList2);
 
-    ImmutableList<String> mutualFriendsIDList = ImmutableList.copyOf(Sets.intersection(userFriendsSet1, userFriendsSet2));
+    String[] mutualFriendIDs = new String[Math.min(sortedFriendIDs1.length, sortedFriendIDs2.length)];
+    int mutualFriendCount = SortedIntersection.intersect(sortedFriendIDs1, sortedFriendIDs2, mutualFriendIDs);
+    List<String> mutualFriendsIDList = Arrays.asList(mutualFriendIDs).subList(0, mutualFriendCount);
 
     ImmutableList<String> mutualFriendsNameList = mutualFriendsIDList
       .stream()
@@ -89,6 +110,17 @@ public class MutualFriendsServlet extends HttpServlet {
     response.getWriter().print(json);
   }
 
+  /** Reads a user's stored friend list sketch, building it from the friends list if it is missing. */
+  private FriendListSketch getFriendListSketch(Entity userEntity) {
+    List<Long> storedHashes = (List<Long>) userEntity.getProperty(UserDataServlet.USER_FRIENDS_SKETCH_PROPERTY);
+    Long friendCount = (Long) userEntity.getProperty(UserDataServlet.USER_FRIEND_COUNT_PROPERTY);
+    if (friendCount == null) {
+      // Written before sketches were stored
+      return FriendListSketch.of((List<String>) userEntity.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY));
+    }
+    return FriendListSketch.fromStoredHashes(storedHashes == null ? ImmutableList.of() : storedHashes, friendCount);
+  }
+
   private String getNameFromDatastore(String userID) {
     Entity userEntity = datastore.prepare(new Query(USER_ENTITY).setFilter(
       new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, userID))).asSingleEntity();
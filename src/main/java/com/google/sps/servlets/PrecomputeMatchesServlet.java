@@ -0,0 +1,53 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.gson.Gson;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.data.BulkMatchPrecomputeJob;
+import com.google.sps.data.PrecomputeReport;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that runs the nightly bulk potential match precompute job.
+ *
+ * <p>Called repeatedly by the cron job in cron.xml during the night; each call resumes from the
+ * job's checkpoint, and calls after the job has completed do nothing.
+ */
+@WebServlet("/tasks/precompute-matches")
+public class PrecomputeMatchesServlet extends HttpServlet {
+  private final Gson gson = new Gson();
+
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Boolean.parseBoolean(request.getHeader(RecomputeMatchesServlet.CRON_REQUEST_HEADER))) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    PrecomputeReport report = new BulkMatchPrecomputeJob(datastore).run();
+
+    response.setContentType("application/json");
+    response.getWriter().print(gson.toJson(report));
+  }
+}
@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.sps.data.MatchRecomputeScheduler;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that runs the next batch of pending potential match recomputes.
+ *
+ * <p>Called by the cron job in cron.xml, so no user request pays for recomputation.
+ */
+@WebServlet("/tasks/recompute-matches")
+public class RecomputeMatchesServlet extends HttpServlet {
+  // App Engine strips this header from external requests, so only cron can set it
+  static final String CRON_REQUEST_HEADER = "X-Appengine-Cron";
+
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!Boolean.parseBoolean(request.getHeader(CRON_REQUEST_HEADER))) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int recomputedUsers = new MatchRecomputeScheduler(datastore).runPendingBatch();
+
+    response.setContentType("text/plain");
+    response.getWriter().println("Recomputed potential matches for " + recomputedUsers + " users");
+  }
+}
@@ -17,8 +17,11 @@ package com.google.sps.servlets;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -32,6 +35,7 @@ import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
 import com.google.appengine.api.datastore.Query;
 import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
 import com.google.appengine.api.datastore.Query.FilterOperator;
@@ -40,13 +44,23 @@ import com.google.appengine.api.images.ImagesService;
 import com.google.appengine.api.images.ImagesServiceFactory;
 import com.google.appengine.api.images.ServingUrlOptions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.gson.Gson;
+import com.google.sps.data.FriendGraphSnapshot;
+import com.google.sps.data.MatchRecomputeScheduler;
+import com.google.sps.data.friend_map.FriendListSketch;
+import com.google.sps.images.BlobDeletionQueue;
+import com.google.sps.images.ImageVariantProcessor;
+import com.google.sps.metrics.InstrumentedDatastore;
 
 /**
  * Servlet that provides information about a specific user, and allows setting a user's info.
  * 
  * <p>A User Entity consists of the following information: a user id, name, email, bio, and friends-list.
  * These entities are stored in Datastore with their user id as the 'kind'.
+ *
+ * <p>Reads can select profile fields with {@code fields}, such as {@code fields=name,bio,blobkeys}.
+ * The friends list is not part of a profile read; it is paged through {@link UserFriendsServlet}.
  */
 
 @WebServlet("/user-data")
@@ -58,7 +72,10 @@ public class UserDataServlet extends HttpServlet {
   static final String USER_EMAIL_PROPERTY = "email";
   static final String USER_FOUND_PROPERTY = "user-found";
   static final String USER_FRIENDS_LIST_PROPERTY = "friends-list";
+  static final String USER_FRIENDS_SKETCH_PROPERTY = "friends-sketch";
+  static final String USER_FRIEND_COUNT_PROPERTY = "friend-count";
   static final String USER_ID_PROPERTY = "id";
+  static final String USER_IMAGE_URLS_PROPERTY = "image-urls";
   static final String USER_LINK_PROPERTY = "link";
   static final String USER_NAME_PROPERTY = "name";
   static final String USER_PHOTO_1_PROPERTY = "profile-photo";
@@ -66,20 +83,36 @@ public class UserDataServlet extends HttpServlet {
   static final String USER_PHOTO_3_PROPERTY = "photo-3";
   static final String USER_PHOTO_4_PROPERTY = "photo-4";
   static final String USER_PHOTO_5_PROPERTY = "photo-5";
+  static final int USER_PHOTO_COUNT = 5;
+  static final String FIELDS_PARAMETER = "fields";
+  // The fields a profile read can select, in the order they are sent
+  static final ImmutableSet<String> PROFILE_FIELDS = ImmutableSet.of(USER_BIO_PROPERTY,
+      USER_EMAIL_PROPERTY, USER_ID_PROPERTY, USER_LINK_PROPERTY, USER_NAME_PROPERTY, USER_BLOBKEYS_PROPERTY);
+  // The single-valued indexed fields, which can be read with a projection query; the id is the
+  // query's filter, so it is known without being projected
+  private static final ImmutableSet<String> PROJECTED_FIELDS = ImmutableSet.of(USER_BIO_PROPERTY,
+      USER_EMAIL_PROPERTY, USER_LINK_PROPERTY, USER_NAME_PROPERTY);
+  private static final String[] USER_PHOTO_PROPERTIES = {USER_PHOTO_1_PROPERTY, USER_PHOTO_2_PROPERTY,
+      USER_PHOTO_3_PROPERTY, USER_PHOTO_4_PROPERTY, USER_PHOTO_5_PROPERTY};
 
-  // Blobstore and Datastore instance variables are package-private so that they are visible for testing
+  // Blobstore, Datastore and image processing instance variables are package-private so that they are visible for testing
   BlobstoreService blobstore = BlobstoreServiceFactory.getBlobstoreService();
-  DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+  ImageVariantProcessor imageVariants = new ImageVariantProcessor(datastore);
+  BlobDeletionQueue blobDeletions = new BlobDeletionQueue(datastore);
   private final Gson gson = new Gson();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    // Get the userId, and query Datastore for the corresponding entity
+    // Get the userId, and the profile fields to send back
     String userId = getStringParameter(request, USER_ID_PROPERTY, DEFAULT_STRING);
+    List<String> fields = getFields(request);
+    if (!PROFILE_FIELDS.containsAll(fields)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "fields must be a subset of " + PROFILE_FIELDS);
+      return;
+    }
 
-    Entity userEntity = datastore.prepare(new Query(USER_ENTITY).setFilter(
-        new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, userId))).asSingleEntity();
-
+    Entity userEntity = loadProfileFields(userId, fields);
     ImmutableMap.Builder<String, Object> userDataBuilder = ImmutableMap.builder();
     if (userEntity == null) {
       // If a user entity was not found
@@ -87,22 +120,13 @@ public class UserDataServlet extends HttpServlet {
     }
     else {
       // If a user entity was found (a single entity)
-      // Get the user's information
-      userDataBuilder.put(USER_FOUND_PROPERTY, true)
-          .put(USER_BIO_PROPERTY, (String) userEntity.getProperty(USER_BIO_PROPERTY))
-          .put(USER_EMAIL_PROPERTY, userEntity.getProperty(USER_EMAIL_PROPERTY))
-          .put(USER_ID_PROPERTY, userEntity.getProperty(USER_ID_PROPERTY))
-          .put(USER_LINK_PROPERTY, userEntity.getProperty(USER_LINK_PROPERTY))
-          .put(USER_NAME_PROPERTY, userEntity.getProperty(USER_NAME_PROPERTY))
-          .put(USER_BLOBKEYS_PROPERTY, (ArrayList<String>) userEntity.getProperty(USER_BLOBKEYS_PROPERTY));
-
-      // An empty ArrayList is returned as null, make sure that an empty ArrayList is provided instead
-      ArrayList<String> userFriendsList = (ArrayList<String>) userEntity.getProperty(USER_FRIENDS_LIST_PROPERTY);
-      if (userFriendsList == null) {
-        userDataBuilder.put(USER_FRIENDS_LIST_PROPERTY, new ArrayList<String>());
-      }
-      else {
-        userDataBuilder.put(USER_FRIENDS_LIST_PROPERTY, userFriendsList);
+      // Get the requested information; the friends list is paged through /user-data/friends
+      userDataBuilder.put(USER_FOUND_PROPERTY, true);
+      for (String field : fields) {
+        Object value = userEntity.getProperty(field);
+        if (value != null) {
+          userDataBuilder.put(field, value);
+        }
       }
     }
 
@@ -124,6 +148,7 @@ public class UserDataServlet extends HttpServlet {
     // Check if a user entity with userId already exists
     Entity userEntity = datastore.prepare(new Query(USER_ENTITY).setFilter(
         new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, userId))).asSingleEntity();
+    List<String> oldFriendsList = new ArrayList<>();
     if (userEntity == null) {
       // User entity needs to be created, and property values need to be initialized
       userEntity = new Entity(USER_ENTITY);
@@ -132,7 +157,7 @@ public class UserDataServlet extends HttpServlet {
       userEntity.setProperty(USER_EMAIL_PROPERTY, userEmail);
       userEntity.setProperty(USER_BIO_PROPERTY, userBio);
       userEntity.setProperty(USER_LINK_PROPERTY, userLink);
-      userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, Arrays.asList(friends));
+      setFriendsList(userEntity, Arrays.asList(friends));
       userEntity.setProperty(USER_BLOBKEYS_PROPERTY, new ArrayList<>(Arrays.asList(new String[]{"", "", "", "", ""})));
     }
     else {
@@ -144,37 +169,139 @@ public class UserDataServlet extends HttpServlet {
       setPropertyIfNotDefault(userEntity, USER_BIO_PROPERTY, userBio, DEFAULT_STRING);
       setPropertyIfNotDefault(userEntity, USER_LINK_PROPERTY, userLink, DEFAULT_STRING);
 
+      List<String> storedFriendsList = (List<String>) userEntity.getProperty(USER_FRIENDS_LIST_PROPERTY);
+      if (storedFriendsList != null) {
+        oldFriendsList = storedFriendsList;
+      }
+
       // If the friends-list property wasn't given, don't override the current friends list
       if (friends.length != 0) {
-        userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, Arrays.asList(friends));
+        setFriendsList(userEntity, Arrays.asList(friends));
       }
     }
-    getAndStoreBlobKeys(request, userEntity);
+    List<String> replacedBlobKeys = getAndStoreBlobKeys(request, userEntity);
     datastore.put(userEntity);
+    // Only once nothing refers to the replaced photos anymore
+    blobDeletions.enqueue(replacedBlobKeys);
+
+    // Potential matches of everyone within two hops of this user are refreshed in the background
+    List<String> newFriendsList = (List<String>) userEntity.getProperty(USER_FRIENDS_LIST_PROPERTY);
+    if (newFriendsList == null) {
+      newFriendsList = new ArrayList<>();
+    }
+    new MatchRecomputeScheduler(datastore).enqueueFriendListChange(userId, oldFriendsList, newFriendsList);
+    if (!newFriendsList.equals(oldFriendsList)) {
+      FriendGraphSnapshot.invalidate();
+    }
 
     // Redirect to the profile page, and let the front-end know the current logged in user
     response.sendRedirect("/profile.html?id=" + userId);
   }
 
-  /** Stores the blob-keys (in Datastore) of files uploaded to Blobstore. */
-  private void getAndStoreBlobKeys(HttpServletRequest request, Entity userEntity) {
-    List<String> blobKeys = (ArrayList<String>) userEntity.getProperty(USER_BLOBKEYS_PROPERTY);
+  /** Returns the requested profile fields, or all of them if the fields parameter is missing */
+  private List<String> getFields(HttpServletRequest request) {
+    String fields = request.getParameter(FIELDS_PARAMETER);
+    if (fields == null || fields.isEmpty()) {
+      return PROFILE_FIELDS.asList();
+    }
+    return Arrays.stream(fields.split(","))
+        .map(String::trim)
+        .distinct()
+        .collect(Collectors.toList());
+  }
 
-    if (getBooleanParameter(request, USER_PHOTO_1_PROPERTY)) {
-      blobKeys.set(0, getUploadedFileBlobKey(request, USER_PHOTO_1_PROPERTY));
+  /**
+   * Loads the user entity with at least the given fields.
+   *
+   * <p>Scalar fields are read with a projection query, which only reads the index and so
+   * never transfers the user's friends list or photo lists. A user missing one of the projected
+   * properties, such as a bio too long to be indexed, is not returned by the projection, so the
+   * full entity is loaded in that case.
+   */
+  private Entity loadProfileFields(String userId, List<String> fields) {
+    FilterPredicate userFilter = new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, userId);
+    if (fields.stream().allMatch(field -> field.equals(USER_ID_PROPERTY) || PROJECTED_FIELDS.contains(field))) {
+      // Always projects the same properties, so a single composite index serves every selection
+      Query projection = new Query(USER_ENTITY).setFilter(userFilter);
+      for (String field : PROJECTED_FIELDS) {
+        projection.addProjection(new PropertyProjection(field, String.class));
+      }
+      Entity userEntity = datastore.prepare(projection).asSingleEntity();
+      if (userEntity != null) {
+        userEntity.setProperty(USER_ID_PROPERTY, userId);
+        return userEntity;
+      }
     }
-    if (getBooleanParameter(request, USER_PHOTO_2_PROPERTY)) {
-      blobKeys.set(1, getUploadedFileBlobKey(request, USER_PHOTO_2_PROPERTY));
+    return datastore.prepare(new Query(USER_ENTITY).setFilter(userFilter)).asSingleEntity();
+  }
+
+  /**
+   * Stores the blob-keys (in Datastore) of files uploaded to Blobstore.
+   *
+   * @return The blob-keys of the photos that were replaced by the upload
+   */
+  private List<String> getAndStoreBlobKeys(HttpServletRequest request, Entity userEntity) {
+    List<Integer> uploadedPhotos = new ArrayList<>();
+    for (int photo = 0; photo < USER_PHOTO_COUNT; photo++) {
+      if (getBooleanParameter(request, USER_PHOTO_PROPERTIES[photo])) {
+        uploadedPhotos.add(photo);
+      }
+    }
+    if (uploadedPhotos.isEmpty()) {
+      return new ArrayList<>();
     }
-    if (getBooleanParameter(request, USER_PHOTO_3_PROPERTY)) {
-      blobKeys.set(2, getUploadedFileBlobKey(request, USER_PHOTO_3_PROPERTY));
+
+    // The upload metadata is parsed once and shared by every photo input
+    Map<String, List<BlobKey>> uploads = blobstore.getUploads(request);
+    List<String> blobKeys = (ArrayList<String>) userEntity.getProperty(USER_BLOBKEYS_PROPERTY);
+    Map<Integer, String> uploadedBlobKeys = new LinkedHashMap<>();
+    List<String> replacedBlobKeys = new ArrayList<>();
+    for (int photo : uploadedPhotos) {
+      String blobKey = getFirstBlobKey(uploads, USER_PHOTO_PROPERTIES[photo]);
+      uploadedBlobKeys.put(photo, blobKey);
+      String replacedBlobKey = blobKeys.set(photo, blobKey);
+      if (replacedBlobKey != null && !replacedBlobKey.isEmpty() && !replacedBlobKey.equals(blobKey)) {
+        replacedBlobKeys.add(replacedBlobKey);
+      }
     }
-    if (getBooleanParameter(request, USER_PHOTO_4_PROPERTY)) {
-      blobKeys.set(3, getUploadedFileBlobKey(request, USER_PHOTO_4_PROPERTY));
+    storeImageServingUrls(userEntity, uploadedBlobKeys);
+    return replacedBlobKeys;
+  }
+
+  /**
+   * Registers newly uploaded photos with the image service, so their resized variants can be
+   * served, and stores their serving URLs at the same positions as their blob-keys.
+   */
+  private void storeImageServingUrls(Entity userEntity, Map<Integer, String> uploadedBlobKeys) {
+    List<String> newBlobKeys = uploadedBlobKeys.values()
+      .stream()
+      .filter(blobKey -> blobKey != null)
+      .collect(Collectors.toList());
+    if (newBlobKeys.isEmpty()) {
+      return;
     }
-    if (getBooleanParameter(request, USER_PHOTO_5_PROPERTY)) {
-      blobKeys.set(4, getUploadedFileBlobKey(request, USER_PHOTO_5_PROPERTY));
+
+    List<String> imageUrls = (List<String>) userEntity.getProperty(USER_IMAGE_URLS_PROPERTY);
+    imageUrls = imageUrls == null
+        ? new ArrayList<>(Collections.nCopies(USER_PHOTO_COUNT, DEFAULT_STRING))
+        : new ArrayList<>(imageUrls);
+    Map<String, String> servingUrls = imageVariants.createServingUrls(newBlobKeys);
+    for (Map.Entry<Integer, String> uploadedBlobKey : uploadedBlobKeys.entrySet()) {
+      String servingUrl = servingUrls.get(uploadedBlobKey.getValue());
+      imageUrls.set(uploadedBlobKey.getKey(), servingUrl == null ? DEFAULT_STRING : servingUrl);
     }
+    userEntity.setUnindexedProperty(USER_IMAGE_URLS_PROPERTY, imageUrls);
+  }
+
+  /**
+   * Sets the user's friends list, along with the sketch of it that is used to estimate mutual
+   * friend counts without reading the list.
+   */
+  private void setFriendsList(Entity userEntity, List<String> friendsList) {
+    FriendListSketch sketch = FriendListSketch.of(friendsList);
+    userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, friendsList);
+    userEntity.setUnindexedProperty(USER_FRIENDS_SKETCH_PROPERTY, sketch.getStoredHashes());
+    userEntity.setUnindexedProperty(USER_FRIEND_COUNT_PROPERTY, sketch.getFriendCount());
   }
 
   /** Method that sets the entity's value of a particular property, if the value is not the default value */
@@ -203,8 +330,12 @@ public class UserDataServlet extends HttpServlet {
 
   /** Gets the blobkey of the image passed to the designated input tag in HTML */
   public String getUploadedFileBlobKey(HttpServletRequest request, String formInputElementName) {
-    Map<String, List<BlobKey>> blobs = blobstore.getUploads(request);
-    List<BlobKey> blobKeys = blobs.get(formInputElementName);
+    return getFirstBlobKey(blobstore.getUploads(request), formInputElementName);
+  }
+
+  /** Returns the blobkey of the file uploaded to an input tag, or null if no file was selected */
+  private static String getFirstBlobKey(Map<String, List<BlobKey>> uploads, String formInputElementName) {
+    List<BlobKey> blobKeys = uploads.get(formInputElementName);
 
     // If user submitted form without selecting a file, then we can't get a URL. (dev server)
     if (blobKeys == null || blobKeys.isEmpty()) {
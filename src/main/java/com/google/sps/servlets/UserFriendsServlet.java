@@ -0,0 +1,107 @@
+// Copyright 2020 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that pages through a user's friends list.
+ *
+ * <p>The list is read with a projection on the friends-list property, which returns one index
+ * entry per friend in ID order, so a page only reads the friends on it no matter how long the
+ * list is. The response holds the friend IDs and, while there may be more, a {@code cursor} to
+ * pass back for the next page.
+ */
+@WebServlet("/user-data/friends")
+public class UserFriendsServlet extends HttpServlet {
+  static final String USER_ID_PARAMETER = "id";
+  static final String CURSOR_PARAMETER = "cursor";
+  static final String LIMIT_PARAMETER = "limit";
+  static final String FRIENDS_PROPERTY = "friends";
+  static final String CURSOR_PROPERTY = "cursor";
+  static final int DEFAULT_LIMIT = 100;
+  static final int MAX_LIMIT = 500;
+
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+  private final Gson gson = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String userId = request.getParameter(USER_ID_PARAMETER);
+    if (userId == null || userId.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "id is required");
+      return;
+    }
+
+    FetchOptions fetchOptions;
+    try {
+      fetchOptions = FetchOptions.Builder.withLimit(getLimit(request.getParameter(LIMIT_PARAMETER)));
+      String cursor = request.getParameter(CURSOR_PARAMETER);
+      if (cursor != null && !cursor.isEmpty()) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+    } catch (IllegalArgumentException e) {
+      // Also covers a malformed limit, since NumberFormatException is an IllegalArgumentException
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "invalid limit or cursor");
+      return;
+    }
+
+    Query friendsQuery = new Query(UserDataServlet.USER_ENTITY)
+      .setFilter(new FilterPredicate(UserDataServlet.USER_ID_PROPERTY, FilterOperator.EQUAL, userId))
+      .addProjection(new PropertyProjection(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, String.class))
+      .addSort(UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
+    QueryResultList<Entity> page = datastore.prepare(friendsQuery).asQueryResultList(fetchOptions);
+
+    List<String> friends = new ArrayList<>();
+    for (Entity friendEntry : page) {
+      friends.add((String) friendEntry.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY));
+    }
+    ImmutableMap.Builder<String, Object> pageBuilder = ImmutableMap.builder();
+    pageBuilder.put(FRIENDS_PROPERTY, friends);
+    // A short page is the last one
+    if (friends.size() == fetchOptions.getLimit() && page.getCursor() != null) {
+      pageBuilder.put(CURSOR_PROPERTY, page.getCursor().toWebSafeString());
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().print(gson.toJson(pageBuilder.build()));
+  }
+
+  private static int getLimit(String limitParam) {
+    if (limitParam == null || limitParam.isEmpty()) {
+      return DEFAULT_LIMIT;
+    }
+    return Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParam)));
+  }
+}
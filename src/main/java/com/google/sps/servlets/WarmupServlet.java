@@ -0,0 +1,85 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.servlets;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import com.google.common.base.Stopwatch;
+import com.google.gson.Gson;
+import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.sps.data.FriendGraphSnapshot;
+import com.google.sps.data.MatchInformation;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.metrics.InstrumentedDatastore;
+
+/**
+ * Servlet that prepares a new instance before App Engine sends it any traffic.
+ *
+ * <p>Warmup requests are enabled in appengine-web.xml. Each phase loads the classes and sets
+ * up the clients that the first feed requests would otherwise pay for, and the friend graph
+ * snapshot is loaded into {@link FriendGraphSnapshot} with its interned arrays built. The time
+ * of every phase is logged and returned.
+ */
+@WebServlet("/_ah/warmup")
+public class WarmupServlet extends HttpServlet {
+  private static final String USER_ENTITY = "User";
+
+  private static final Logger logger = Logger.getLogger(WarmupServlet.class.getName());
+
+  DatastoreService datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Map<String, Long> phaseMillis = new LinkedHashMap<>();
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    // A single keys-only read opens the Datastore connection
+    datastore.prepare(new Query(USER_ENTITY).setKeysOnly()).asList(FetchOptions.Builder.withLimit(1));
+    phaseMillis.put("datastore", lap(stopwatch));
+
+    BlobstoreServiceFactory.getBlobstoreService();
+    phaseMillis.put("blobstore", lap(stopwatch));
+
+    Gson gson = new Gson();
+    gson.toJson(new MatchInformation("warmup"));
+    phaseMillis.put("gson", lap(stopwatch));
+
+    UserFriendsMap friendsMap = FriendGraphSnapshot.get(datastore);
+    friendsMap.getInternedGraph();
+    phaseMillis.put("friend-graph", lap(stopwatch));
+
+    logger.info("Warmup finished: " + phaseMillis + " ms, " + friendsMap.getUserIDs().size()
+      + " users in the friend graph snapshot");
+    response.setContentType("application/json");
+    response.getWriter().print(gson.toJson(phaseMillis));
+  }
+
+  /** Returns the milliseconds since the last lap, and starts the next one. */
+  private static long lap(Stopwatch stopwatch) {
+    long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+    stopwatch.reset().start();
+    return elapsedMillis;
+  }
+}
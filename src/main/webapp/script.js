@@ -58,35 +58,27 @@ window.addEventListener("load", function(){
   function a(a,b){var c=/^(?:file):/,d=new XMLHttpRequest,e=0;d.onreadystatechange=function(){4==d.readyState&&(e=d.status),c.test(location.href)&&d.responseText&&(e=200),4==d.readyState&&200==e&&(a.outerHTML=d.responseText)};try{d.open("GET",b,!0),d.send()}catch(f){}}var b,c=document.getElementsByTagName("*");for(b in c)c[b].hasAttribute&&c[b].hasAttribute("data-include")&&a(c[b],c[b].getAttribute("data-include"));
 });
 
-function getMutualFriends(pmID, callback) {
-  const currentUser = getCurrentUserId();
-  fetch('/mutual-friends?userid1=' + currentUser + '&userid2=' + pmID).then(response => response.json()).then(callback);
-}
-
-function displayPotentialMatchInfo(pmID) {
-  console.log(currentPMDisplayed);
-  fetch('/user-data?id=' + pmID).then(response => response.json()).then((userinfo) => {
-    const name = userinfo.name;
-    const bio = userinfo.bio;
-    getMutualFriends(pmID, mutualFriends => {
-      const carouselContainer = document.getElementById("carousel-inner");
-      let numPhotos = 0;
-      for (let i = 0; i < userinfo.blobkeys.length; i++) {
-        if (userinfo.blobkeys[i] !== "") {
-          numPhotos++;
-          const imageElement = createImageFromBlobstore(userinfo.blobkeys[i]);
-          const slideshowElement = createSlideshowElement(imageElement, "carousel-item" + (i === 0 ? " active" : ""), name, bio, mutualFriends);
-          carouselContainer.appendChild(slideshowElement);
-        }
-      }
-      if (numPhotos === 0) {
-        const noImageElement = createImgElement("images/no_image.png");
-        const noImageSlideshowElement = createSlideshowElement(noImageElement, "carousel-item active", name, bio, mutualFriends);
-        carouselContainer.appendChild(noImageSlideshowElement);
-      }
-      addIndicators(numPhotos);
-    });
-  });
+// Shows a card from /feed-card, which already holds the potential match's profile and mutual friends
+function displayPotentialMatchInfo(card) {
+  const name = card.name;
+  const bio = card.bio;
+  let mutualFriends = card["mutual-friends"].join(",");
+  if (card["mutual-friend-count"] > card["mutual-friends"].length) {
+    mutualFriends += " and " + (card["mutual-friend-count"] - card["mutual-friends"].length) + " more";
+  }
+  const carouselContainer = document.getElementById("carousel-inner");
+  const photoURLs = card["photo-urls"];
+  for (let i = 0; i < photoURLs.length; i++) {
+    const imageElement = createImgElement(photoURLs[i]);
+    const slideshowElement = createSlideshowElement(imageElement, "carousel-item" + (i === 0 ? " active" : ""), name, bio, mutualFriends);
+    carouselContainer.appendChild(slideshowElement);
+  }
+  if (photoURLs.length === 0) {
+    const noImageElement = createImgElement("images/no_image.png");
+    const noImageSlideshowElement = createSlideshowElement(noImageElement, "carousel-item active", name, bio, mutualFriends);
+    carouselContainer.appendChild(noImageSlideshowElement);
+  }
+  addIndicators(photoURLs.length);
 }
 
 function deletePotentialMatchInfo() {
@@ -141,15 +133,15 @@ function createIndicator(dataSlideNumber, className) {
 function getNextPotentialMatch() {
   deletePotentialMatchInfo();
   const currentUser = getCurrentUserId();
-  fetch('/potential-matches?userid=' + currentUser).then(response => response.json()).then((pmID) => { 
-      if (pmID.nextPotentialMatchID === NO_MATCH) {
+  fetch('/feed-card?userid=' + currentUser + '&extended=true').then(response => response.json()).then((card) => {
+      if (card.nextPotentialMatchID === NO_MATCH) {
         noPotentialMatch();
         return;
       }
       document.getElementById("pass-btn").disabled = false;
       document.getElementById("friend-btn").disabled = false;
-      displayPotentialMatchInfo(pmID.nextPotentialMatchID);
-      currentPMDisplayed = pmID.nextPotentialMatchID;
+      displayPotentialMatchInfo(card);
+      currentPMDisplayed = card.nextPotentialMatchID;
   }); 
 }
 
@@ -183,7 +175,7 @@ function loadProfile() {
   if (id === null) {
     return;
   }
-  fetch('/user-data?id=' + id).then(response => response.json()).then((userinfo) => {
+  fetch('/user-data?fields=name,bio,blobkeys&id=' + id).then(response => response.json()).then((userinfo) => {
     name = userinfo.name;
     bio = userinfo.bio;
     document.getElementById("name").value = name;
@@ -192,19 +184,19 @@ function loadProfile() {
 
     // Load user images
     if (userinfo.blobkeys[0] !== "") {
-      setImageFromBlobstore(userinfo.blobkeys[0], "profile-photo-image");
+      setImageFromBlobstore(userinfo.blobkeys[0], "profile-photo-image", "card");
     }
     if (userinfo.blobkeys[1] !== "") {
-      setImageFromBlobstore(userinfo.blobkeys[1], "photo-2-image");
+      setImageFromBlobstore(userinfo.blobkeys[1], "photo-2-image", "thumbnail");
     }
     if (userinfo.blobkeys[2] !== "") {
-      setImageFromBlobstore(userinfo.blobkeys[2], "photo-3-image");
+      setImageFromBlobstore(userinfo.blobkeys[2], "photo-3-image", "thumbnail");
     }
     if (userinfo.blobkeys[3] !== "") {
-      setImageFromBlobstore(userinfo.blobkeys[3], "photo-4-image");
+      setImageFromBlobstore(userinfo.blobkeys[3], "photo-4-image", "thumbnail");
     }
     if (userinfo.blobkeys[4] !== "") {
-      setImageFromBlobstore(userinfo.blobkeys[4], "photo-5-image");
+      setImageFromBlobstore(userinfo.blobkeys[4], "photo-5-image", "thumbnail");
     }
   });
 }
@@ -224,7 +216,7 @@ function displayMatches() {
 
 function createCardElement(userID) {
   const cardDiv = document.createElement("div");
-  fetch('/user-data?id=' + userID).then(response => response.json()).then((userinfo) => {
+  fetch('/user-data?fields=name,bio,blobkeys&id=' + userID).then(response => response.json()).then((userinfo) => {
     console.log(userinfo);
     if (userinfo === null) {
         return;
@@ -265,7 +257,7 @@ function createCardElement(userID) {
 function getFirstAvailableImage(blobkeyList) {
   for (let i = 0; i < blobkeyList.length; i++) {
     if (blobkeyList[i] !== "") {
-      return createImageFromBlobstore(blobkeyList[i]);
+      return createImageFromBlobstore(blobkeyList[i], "card");
       }
   }
   return createImgElement("images/no_image.png");
@@ -314,19 +306,20 @@ function submitProfileForm() {
   }
 }
 
+// Function that returns the URL of the given size ("thumbnail", "card" or "full") of the image with the provided blobkey
+function getBlobstoreImageURL(imageBlobKey, size) {
+  return '/blob-key?imageKey=' + imageBlobKey + '&size=' + size;
+}
+
 // Function that sets the img src tag with the image corresponding to the provided blobkey
-function setImageFromBlobstore(imageBlobKey, imageId) {
-  fetch('/blob-key?imageKey=' + imageBlobKey).then((response) => response.blob()).then((blobContent) => {
-    document.getElementById(imageId).src = URL.createObjectURL(blobContent);
-  });
+function setImageFromBlobstore(imageBlobKey, imageId, size) {
+  document.getElementById(imageId).src = getBlobstoreImageURL(imageBlobKey, size);
 }
 
 //Function that creates an image element that corresponds to the provided blobkey and returns it
-function createImageFromBlobstore(imageBlobKey) {
+function createImageFromBlobstore(imageBlobKey, size) {
   const imgElement = document.createElement('img');
-  fetch('/blob-key?imageKey=' + imageBlobKey).then((response) => response.blob()).then((blobContent) => {
-    imgElement.src = URL.createObjectURL(blobContent);
-  });
+  imgElement.src = getBlobstoreImageURL(imageBlobKey, size);
   imgElement.setAttribute("height", "800");
   imgElement.setAttribute("width", "1100");
   return imgElement;
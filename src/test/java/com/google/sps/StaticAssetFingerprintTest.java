@@ -0,0 +1,57 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.hash.Hashing;
+
+/**
+* Checks that every fingerprinted asset reference in the pages still matches the asset's
+* content, since those assets are cached for a year by the static file handlers.
+*/
+@RunWith(JUnit4.class)
+public class StaticAssetFingerprintTest {
+  private static final File WEBAPP_DIRECTORY = new File("src/main/webapp");
+  private static final Pattern FINGERPRINTED_REFERENCE =
+    Pattern.compile("(?:src|href)=\"([^\"?]+)\\?v=([0-9a-f]+)\"");
+
+  @Test
+  public void fingerprintsMatchContent() throws IOException {
+    File[] pages = WEBAPP_DIRECTORY.listFiles((directory, name) -> name.endsWith(".html"));
+    assertWithMessage("pages in %s", WEBAPP_DIRECTORY).that(pages).isNotEmpty();
+
+    for (File page : pages) {
+      String html = new String(Files.readAllBytes(page.toPath()), StandardCharsets.UTF_8);
+      Matcher matcher = FINGERPRINTED_REFERENCE.matcher(html);
+      while (matcher.find()) {
+        File asset = new File(WEBAPP_DIRECTORY, matcher.group(1));
+        String fingerprint = Hashing.sha256().hashBytes(Files.readAllBytes(asset.toPath()))
+          .toString().substring(0, matcher.group(2).length());
+        assertWithMessage("fingerprint of %s in %s", asset.getName(), page.getName())
+          .that(matcher.group(2)).isEqualTo(fingerprint);
+      }
+    }
+  }
+}
@@ -0,0 +1,174 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class BulkMatchPrecomputeJobTest {
+  private static final String USER_ENTITY = "User";
+  private static final String USER_ID_PROPERTY = "id";
+  private static final String USER_FRIENDS_LIST_PROPERTY = "friends-list";
+
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+
+    // User A is friends with everyone else, who are only friends with User A
+    addUser(USER_A_ID, USER_B_ID, USER_C_ID, USER_D_ID);
+    addUser(USER_B_ID, USER_A_ID);
+    addUser(USER_C_ID, USER_A_ID);
+    addUser(USER_D_ID, USER_A_ID);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /**
+  * Runs the job when User B already passed on User C, User C has stale match information and
+  * Users A and D have none.
+  *
+  * <p>Should refresh User B and User C, only dropping User C from User B's potential matches
+  * while keeping their passed list, and leave Users A and D without match information.
+  */
+  @Test
+  public void refreshesExistingUsersAndPreservesDecisions() {
+    addMatchInfo(USER_B_ID, ImmutableList.of(), ImmutableList.of(USER_C_ID));
+    addMatchInfo(USER_C_ID, ImmutableList.of(USER_A_ID), ImmutableList.of());
+
+    PrecomputeReport report = new BulkMatchPrecomputeJob(datastore, /* batchSize= */ 2, Long.MAX_VALUE).run();
+
+    assertThat(report.isCompleted()).isTrue();
+    assertThat(report.getUsersProcessed()).isEqualTo(4);
+    assertThat(report.getEntitiesWritten()).isEqualTo(2);
+    assertThat(getMatchInfo(USER_A_ID)).isNull();
+    assertThat(getMatchInfo(USER_D_ID)).isNull();
+    assertThat(getPotentialMatches(USER_B_ID)).containsExactly(USER_D_ID);
+    assertThat(getPotentialMatches(USER_C_ID)).containsExactly(USER_B_ID, USER_D_ID);
+    assertThat((List<String>) getMatchInfo(USER_B_ID).getProperty(MatchInfoRefresher.PASSED_IDS_PROPERTY))
+      .containsExactly(USER_C_ID);
+  }
+
+  /**
+  * Runs the job when an earlier run was interrupted after writing User B.
+  *
+  * <p>Should only process the users after User B in user ID order.
+  */
+  @Test
+  public void resumesAfterCheckpoint() {
+    for (String userID : ImmutableList.of(USER_A_ID, USER_B_ID, USER_C_ID, USER_D_ID)) {
+      addMatchInfo(userID, ImmutableList.of(), ImmutableList.of());
+    }
+    Entity checkpoint = new Entity(KeyFactory.createKey(
+      BulkMatchPrecomputeJob.CHECKPOINT_ENTITY, BulkMatchPrecomputeJob.CHECKPOINT_NAME));
+    checkpoint.setProperty(BulkMatchPrecomputeJob.LAST_USER_ID_PROPERTY, USER_B_ID);
+    checkpoint.setProperty(BulkMatchPrecomputeJob.COMPLETED_AT_PROPERTY, null);
+    datastore.put(checkpoint);
+
+    PrecomputeReport report = new BulkMatchPrecomputeJob(datastore, /* batchSize= */ 1, Long.MAX_VALUE).run();
+
+    assertThat(report.getUsersProcessed()).isEqualTo(2);
+    assertThat(getPotentialMatches(USER_A_ID)).isNull();
+    assertThat(getPotentialMatches(USER_B_ID)).isNull();
+    assertThat(getPotentialMatches(USER_C_ID)).isNotNull();
+    assertThat(getPotentialMatches(USER_D_ID)).isNotNull();
+  }
+
+  /**
+  * Runs the job twice in a row.
+  *
+  * <p>The second run should do nothing since the first one completed recently.
+  */
+  @Test
+  public void completedRunIsNotRepeated() {
+    new BulkMatchPrecomputeJob(datastore, /* batchSize= */ 10, Long.MAX_VALUE).run();
+    PrecomputeReport secondReport = new BulkMatchPrecomputeJob(datastore, /* batchSize= */ 10, Long.MAX_VALUE).run();
+
+    assertThat(secondReport.isCompleted()).isTrue();
+    assertThat(secondReport.getUsersProcessed()).isEqualTo(0);
+  }
+
+  /**
+  * Runs the job without any time budget.
+  *
+  * <p>Should stop before writing anything and report that it did not complete.
+  */
+  @Test
+  public void stopsWhenTimeBudgetRunsOut() {
+    addMatchInfo(USER_A_ID, ImmutableList.of(), ImmutableList.of());
+
+    PrecomputeReport report = new BulkMatchPrecomputeJob(datastore, /* batchSize= */ 1, -1).run();
+
+    assertThat(report.isCompleted()).isFalse();
+    assertThat(report.getEntitiesWritten()).isEqualTo(0);
+    assertThat(getPotentialMatches(USER_A_ID)).isNull();
+  }
+
+  private void addUser(String userID, String... friendIDs) {
+    Entity userEntity = new Entity(USER_ENTITY);
+    userEntity.setProperty(USER_ID_PROPERTY, userID);
+    userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, ImmutableList.copyOf(friendIDs));
+    datastore.put(userEntity);
+  }
+
+  private void addMatchInfo(String userID, List<String> potentialMatches, List<String> passedIDs) {
+    Entity matchInfo = new Entity(MatchInfoRefresher.MATCH_INFO_ENTITY);
+    matchInfo.setProperty(MatchInfoRefresher.USER_ID_PROPERTY, userID);
+    matchInfo.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, potentialMatches);
+    matchInfo.setProperty(MatchInfoRefresher.FRIENDED_IDS_PROPERTY, ImmutableList.of());
+    matchInfo.setProperty(MatchInfoRefresher.PASSED_IDS_PROPERTY, passedIDs);
+    matchInfo.setProperty(MatchInfoRefresher.MATCHES_LIST_PROPERTY, ImmutableList.of());
+    datastore.put(matchInfo);
+  }
+
+  private Entity getMatchInfo(String userID) {
+    return datastore.prepare(new Query(MatchInfoRefresher.MATCH_INFO_ENTITY).setFilter(
+      new FilterPredicate(MatchInfoRefresher.USER_ID_PROPERTY, FilterOperator.EQUAL, userID))).asSingleEntity();
+  }
+
+  private List<String> getPotentialMatches(String userID) {
+    return (List<String>) getMatchInfo(userID).getProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY);
+  }
+}
@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserNode;
+
+@RunWith(JUnit4.class)
+public class ConnectionPathFinderTest {
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+  private static final String USER_E_ID = "56789";
+  private static final String USER_F_ID = "67890";
+
+  /**
+  * User A reaches User E either along A - B - C - D - E or along the shortcut A - F - E, so the
+  * shortcut should be returned.
+  */
+  @Test
+  public void shortestPathIsFound() {
+    ConnectionPath path = ConnectionPathFinder.findShortestPath(USER_A_ID, USER_E_ID, createFriendsMap(), 6, 1_000);
+
+    assertThat(path.getPath()).containsExactly(USER_A_ID, USER_F_ID, USER_E_ID).inOrder();
+    assertThat(path.getDegreesOfSeparation()).isEqualTo(2);
+  }
+
+  /** Paths are returned from the first user to the second, whichever side the searches meet on. */
+  @Test
+  public void pathRunsFromFirstUserToSecond() {
+    ConnectionPath path = ConnectionPathFinder.findShortestPath(USER_C_ID, USER_A_ID, createFriendsMap(), 6, 1_000);
+
+    assertThat(path.getPath()).containsExactly(USER_C_ID, USER_B_ID, USER_A_ID).inOrder();
+  }
+
+  /** Users further apart than the maximum depth are reported as not connected. */
+  @Test
+  public void pathLongerThanMaxDepthIsNotFound() {
+    ConnectionPath path = ConnectionPathFinder.findShortestPath(USER_A_ID, USER_D_ID, createFriendsMap(), 2, 1_000);
+
+    assertThat(path.getPath()).isEmpty();
+    assertThat(path.getDegreesOfSeparation()).isEqualTo(-1);
+    assertThat(path.isBudgetExhausted()).isFalse();
+  }
+
+  /** A user is zero degrees away from themselves, and unknown users are not connected. */
+  @Test
+  public void sameAndUnknownUsers() {
+    UserFriendsMap friendsMap = createFriendsMap();
+
+    assertThat(ConnectionPathFinder.findShortestPath(USER_A_ID, USER_A_ID, friendsMap, 6, 1_000)
+      .getDegreesOfSeparation()).isEqualTo(0);
+    assertThat(ConnectionPathFinder.findShortestPath(USER_A_ID, "unknown", friendsMap, 6, 1_000)
+      .getPath()).isEmpty();
+  }
+
+  /**
+  * Two users at the ends of a long chain whose every link also has 50 other friends. Searching
+  * from both ends should only visit the chain and the leaves next to it, and running out of
+  * budget should be reported.
+  */
+  @Test
+  public void bidirectionalSearchVisitsFewUsers() {
+    int chainLength = 6;
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    for (int link = 0; link <= chainLength; link++) {
+      ImmutableSet.Builder<String> friends = ImmutableSet.builder();
+      if (link > 0) {
+        friends.add("link" + (link - 1));
+      }
+      if (link < chainLength) {
+        friends.add("link" + (link + 1));
+      }
+      for (int leaf = 0; leaf < 50; leaf++) {
+        String leafID = "leaf" + link + "-" + leaf;
+        friends.add(leafID);
+        userNodes.add(new UserNode(leafID, ImmutableSet.of("link" + link)));
+      }
+      userNodes.add(new UserNode("link" + link, friends.build()));
+    }
+    UserFriendsMap friendsMap = new UserFriendsMap(userNodes.build());
+
+    ConnectionPath path = ConnectionPathFinder.findShortestPath("link0", "link" + chainLength, friendsMap, 6, 1_000);
+    ConnectionPath limitedPath = ConnectionPathFinder.findShortestPath("link0", "link" + chainLength, friendsMap, 6, 20);
+
+    assertThat(path.getDegreesOfSeparation()).isEqualTo(chainLength);
+    assertThat(path.getNodesVisited()).isAtMost(chainLength * 51 + 2);
+    assertThat(limitedPath.isBudgetExhausted()).isTrue();
+    assertThat(limitedPath.getPath()).isEmpty();
+  }
+
+  private static UserFriendsMap createFriendsMap() {
+    return new UserFriendsMap(ImmutableSet.of(
+      new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_F_ID)),
+      new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID)),
+      new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_D_ID)),
+      new UserNode(USER_D_ID, ImmutableSet.of(USER_C_ID, USER_E_ID)),
+      new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID, USER_F_ID)),
+      new UserNode(USER_F_ID, ImmutableSet.of(USER_A_ID, USER_E_ID))));
+  }
+}
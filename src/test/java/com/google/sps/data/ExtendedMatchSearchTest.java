@@ -0,0 +1,162 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserNode;
+
+@RunWith(JUnit4.class)
+public class ExtendedMatchSearchTest {
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+  private static final String USER_E_ID = "56789";
+  private static final String USER_F_ID = "67890";
+
+  /**
+  * User A reaches User C through both B and F, User D at three hops and User E at four. User C
+  * should be returned once at two hops, User D at three, and User E not at all.
+  */
+  @Test
+  public void candidatesAreTaggedWithHopDistance() {
+    ExtendedMatchResult result = ExtendedMatchSearch.builder().build()
+      .findPotentialMatches(USER_A_ID, createFriendsMap(), ExclusionSet.none());
+
+    assertThat(result.isBudgetExhausted()).isFalse();
+    assertThat(result.getHopDistances())
+      .containsExactlyEntriesIn(ImmutableMap.of(USER_C_ID, 2, USER_D_ID, 3)).inOrder();
+  }
+
+  /** Excluded users are expanded through but never returned. */
+  @Test
+  public void excludedUsersAreNotReturned() {
+    UserFriendsMap friendsMap = createFriendsMap();
+    ExclusionSet exclusions = ExclusionSet.of(friendsMap.getInterner(), ImmutableList.of(USER_C_ID));
+
+    ExtendedMatchResult result = ExtendedMatchSearch.builder().build()
+      .findPotentialMatches(USER_A_ID, friendsMap, exclusions);
+
+    assertThat(result.getHopDistances()).containsExactly(USER_D_ID, 3);
+  }
+
+  /** The search stops as soon as the target number of candidates is found. */
+  @Test
+  public void searchStopsAtTargetCandidates() {
+    ExtendedMatchResult result = ExtendedMatchSearch.builder().setTargetCandidates(1).build()
+      .findPotentialMatches(USER_A_ID, createFriendsMap(), ExclusionSet.none());
+
+    assertThat(result.isBudgetExhausted()).isFalse();
+    assertThat(result.getHopDistances()).containsExactly(USER_C_ID, 2);
+  }
+
+  /** Running out of the node budget or the time budget ends the search early. */
+  @Test
+  public void budgetsStopSearch() {
+    ExtendedMatchResult nodeLimited = ExtendedMatchSearch.builder().setMaxNodesVisited(2).build()
+      .findPotentialMatches(USER_A_ID, createFriendsMap(), ExclusionSet.none());
+
+    // Every read of this clock moves it forward by a second
+    Ticker slowTicker = new Ticker() {
+      private long nanos = 0;
+
+      @Override
+      public long read() {
+        nanos += TimeUnit.SECONDS.toNanos(1);
+        return nanos;
+      }
+    };
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    ImmutableSet.Builder<String> hubFriends = ImmutableSet.builder();
+    for (int i = 0; i < 1_000; i++) {
+      userNodes.add(new UserNode("friend" + i, ImmutableSet.of(USER_B_ID)));
+      hubFriends.add("friend" + i);
+    }
+    userNodes.add(new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID)));
+    userNodes.add(new UserNode(USER_B_ID, hubFriends.add(USER_A_ID).build()));
+    ExtendedMatchResult timeLimited = ExtendedMatchSearch.builder()
+      .setTimeBudget(1, TimeUnit.MILLISECONDS)
+      .setTargetCandidates(10_000)
+      .setTicker(slowTicker)
+      .build()
+      .findPotentialMatches(USER_A_ID, new UserFriendsMap(userNodes.build()), ExclusionSet.none());
+
+    assertThat(nodeLimited.isBudgetExhausted()).isTrue();
+    assertThat(nodeLimited.getNodesVisited()).isEqualTo(2);
+    assertThat(timeLimited.isBudgetExhausted()).isTrue();
+    assertThat(timeLimited.getNodesVisited()).isLessThan(1_001);
+  }
+
+  /**
+  * User A's friends B and C share the same 600 friends, so expanding C only examines edges back
+  * to users that were already reached. Those edges still count towards the edge budget.
+  */
+  @Test
+  public void edgesToReachedUsersCountTowardsBudget() {
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    ImmutableSet.Builder<String> sharedFriends = ImmutableSet.builder();
+    for (int i = 0; i < 600; i++) {
+      userNodes.add(new UserNode("friend" + i, ImmutableSet.of(USER_B_ID, USER_C_ID)));
+      sharedFriends.add("friend" + i);
+    }
+    userNodes.add(new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_C_ID)));
+    userNodes.add(new UserNode(USER_B_ID, sharedFriends.add(USER_A_ID).build()));
+    userNodes.add(new UserNode(USER_C_ID, sharedFriends.build()));
+
+    ExtendedMatchResult result = ExtendedMatchSearch.builder()
+      .setMaxEdgesExamined(2 + 601 + 100)
+      .setTargetCandidates(10_000)
+      .build()
+      .findPotentialMatches(USER_A_ID, new UserFriendsMap(userNodes.build()), ExclusionSet.none());
+
+    assertThat(result.isBudgetExhausted()).isTrue();
+    assertThat(result.getNodesVisited()).isEqualTo(2 + 600);
+    assertThat(result.getEdgesExamined()).isEqualTo(2 + 601 + 100);
+    assertThat(result.getHopDistances()).hasSize(600);
+  }
+
+  /** Searches reusing a thread's scratch arrays do not see the users reached by earlier ones. */
+  @Test
+  public void repeatedSearchesGiveSameResult() {
+    UserFriendsMap friendsMap = createFriendsMap();
+    ExtendedMatchSearch search = ExtendedMatchSearch.builder().build();
+
+    ExtendedMatchResult first = search.findPotentialMatches(USER_A_ID, friendsMap, ExclusionSet.none());
+    ExtendedMatchResult second = search.findPotentialMatches(USER_A_ID, friendsMap, ExclusionSet.none());
+
+    assertThat(second.getHopDistances()).containsExactlyEntriesIn(first.getHopDistances()).inOrder();
+    assertThat(second.getEdgesExamined()).isEqualTo(first.getEdgesExamined());
+  }
+
+  private static UserFriendsMap createFriendsMap() {
+    return new UserFriendsMap(ImmutableSet.of(
+      new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_F_ID)),
+      new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID)),
+      new UserNode(USER_F_ID, ImmutableSet.of(USER_A_ID, USER_C_ID)),
+      new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_F_ID, USER_D_ID)),
+      new UserNode(USER_D_ID, ImmutableSet.of(USER_C_ID, USER_E_ID)),
+      new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID))));
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.sps.data.friend_map.InternedFriendGraph;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+import com.google.sps.data.friend_map.UserNode;
+
+@RunWith(JUnit4.class)
+public class FriendsOfFriendsKernelTest {
+  private static final int USER_COUNT = 300;
+  private static final int FRIENDSHIP_COUNT = 1_500;
+  private static final int MEASURED_CALLS = 100_000;
+
+  private UserFriendsMap friendsMap;
+  private InternedFriendGraph graph;
+  private UserIDInterner interner;
+
+  /** Builds a random, symmetric friend graph that is the same on every run. */
+  @Before
+  public void setUp() {
+    Random random = new Random(48);
+    List<Set<String>> friendLists = new ArrayList<>();
+    for (int i = 0; i < USER_COUNT; i++) {
+      friendLists.add(new HashSet<>());
+    }
+    for (int i = 0; i < FRIENDSHIP_COUNT; i++) {
+      int userA = random.nextInt(USER_COUNT);
+      int userB = random.nextInt(USER_COUNT);
+      if (userA != userB) {
+        friendLists.get(userA).add(userID(userB));
+        friendLists.get(userB).add(userID(userA));
+      }
+    }
+
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    for (int i = 0; i < USER_COUNT; i++) {
+      userNodes.add(new UserNode(userID(i), friendLists.get(i)));
+    }
+    friendsMap = new UserFriendsMap(userNodes.build());
+    graph = friendsMap.getInternedGraph();
+    interner = graph.getInterner();
+  }
+
+  /**
+  * Tests if the kernel finds the same potential matches as the set based algorithm for
+  * every user, and counts mutual friends correctly.
+  */
+  @Test
+  public void matchesSetBasedAlgorithm() {
+    int[] matches = new int[graph.getUserCount()];
+    int[] mutualCounts = new int[graph.getUserCount()];
+
+    for (String userID : friendsMap.getUserIDs()) {
+      int matchCount = FriendsOfFriendsKernel.findPotentialMatches(
+        graph, interner.getInternedID(userID), ExclusionSet.none(), matches, mutualCounts);
+
+      ImmutableSet.Builder<String> kernelMatches = ImmutableSet.builder();
+      for (int i = 0; i < matchCount; i++) {
+        String matchID = interner.getUserID(matches[i]);
+        kernelMatches.add(matchID);
+        int expectedMutualCount = Sets.intersection(
+          friendsMap.getUserFriendIDs(userID), friendsMap.getUserFriendIDs(matchID)).size();
+        assertThat(mutualCounts[i]).isEqualTo(expectedMutualCount);
+      }
+      assertThat(kernelMatches.build()).containsExactlyElementsIn(findPotentialMatchesFromSets(userID));
+    }
+  }
+
+  /**
+  * Tests if the limited search without any limits finds the same potential matches as the
+  * set based algorithm, and counts every friend of friend entry it examines.
+  */
+  @Test
+  public void unlimitedSearchMatchesSetBasedAlgorithm() {
+    int[] matches = new int[graph.getUserCount()];
+    FriendsOfFriendsKernel.ExpansionCounters counters = new FriendsOfFriendsKernel.ExpansionCounters();
+
+    for (String userID : friendsMap.getUserIDs()) {
+      int matchCount = FriendsOfFriendsKernel.findPotentialMatches(graph, interner.getInternedID(userID),
+        ExclusionSet.none(), ExpansionLimits.unlimited(), matches, counters);
+
+      ImmutableSet.Builder<String> kernelMatches = ImmutableSet.builder();
+      for (int i = 0; i < matchCount; i++) {
+        kernelMatches.add(interner.getUserID(matches[i]));
+      }
+      int expectedEdges = friendsMap.getUserFriendIDs(userID)
+        .stream()
+        .mapToInt(friendID -> friendsMap.getUserFriendIDs(friendID).size())
+        .sum();
+      assertThat(kernelMatches.build()).containsExactlyElementsIn(findPotentialMatchesFromSets(userID));
+      assertThat(counters.getEdgesTraversed()).isEqualTo(expectedEdges);
+      assertThat(counters.isApproximate()).isFalse();
+    }
+  }
+
+  /**
+  * Tests if a buffer that is too small only receives the first matches, while the full count
+  * is still returned.
+  */
+  @Test
+  public void smallBufferIsNotOverrun() {
+    int user = interner.getInternedID(userID(0));
+    int[] fullBuffer = new int[graph.getUserCount()];
+    int[] smallBuffer = new int[2];
+
+    int fullCount = FriendsOfFriendsKernel.findPotentialMatches(graph, user, ExclusionSet.none(), fullBuffer, null);
+    int smallCount = FriendsOfFriendsKernel.findPotentialMatches(graph, user, ExclusionSet.none(), smallBuffer, null);
+
+    assertThat(smallCount).isEqualTo(fullCount);
+    assertThat(smallBuffer[0]).isEqualTo(fullBuffer[0]);
+    assertThat(smallBuffer[1]).isEqualTo(fullBuffer[1]);
+  }
+
+  /**
+  * Measures the bytes allocated by the calling thread over many calls once the scratch arrays
+  * have been sized, which should round down to zero bytes per call.
+  */
+  @Test
+  public void steadyStateCallsDoNotAllocate() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+    int[] matches = new int[graph.getUserCount()];
+    int[] mutualCounts = new int[graph.getUserCount()];
+    ExclusionSet exclusions = ExclusionSet.of(interner, ImmutableSet.of(userID(1), userID(2)));
+
+    // Warm up so the scratch arrays exist and the loop is compiled
+    long checksum = runCalls(matches, mutualCounts, exclusions, MEASURED_CALLS);
+
+    long threadID = Thread.currentThread().getId();
+    long allocatedBefore = allocationBean.getThreadAllocatedBytes(threadID);
+    checksum += runCalls(matches, mutualCounts, exclusions, MEASURED_CALLS);
+    long allocatedAfter = allocationBean.getThreadAllocatedBytes(threadID);
+
+    assertThat(checksum).isGreaterThan(0L);
+    assertThat((allocatedAfter - allocatedBefore) / (double) MEASURED_CALLS).isLessThan(1.0);
+  }
+
+  private long runCalls(int[] matches, int[] mutualCounts, ExclusionSet exclusions, int calls) {
+    long checksum = 0;
+    int userCount = graph.getUserCount();
+    for (int i = 0; i < calls; i++) {
+      checksum += FriendsOfFriendsKernel.findPotentialMatches(graph, i % userCount, exclusions, matches, mutualCounts);
+    }
+    return checksum;
+  }
+
+  private Set<String> findPotentialMatchesFromSets(String userID) {
+    Set<String> userFriendIDs = friendsMap.getUserFriendIDs(userID);
+    Set<String> potentialMatchIDs = new HashSet<>();
+    for (String friendID : userFriendIDs) {
+      potentialMatchIDs.addAll(friendsMap.getUserFriendIDs(friendID));
+    }
+    potentialMatchIDs.remove(userID);
+    potentialMatchIDs.removeAll(userFriendIDs);
+    return potentialMatchIDs;
+  }
+
+  private static String userID(int index) {
+    return Integer.toString(10_000 + index);
+  }
+}
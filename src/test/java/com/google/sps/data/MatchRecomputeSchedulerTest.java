@@ -0,0 +1,199 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.RateLimiter;
+
+@RunWith(JUnit4.class)
+public class MatchRecomputeSchedulerTest {
+  private static final String USER_ENTITY = "User";
+  private static final String USER_ID_PROPERTY = "id";
+  private static final String USER_FRIENDS_LIST_PROPERTY = "friends-list";
+
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+  private static final String USER_E_ID = "56789";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+  private MatchRecomputeScheduler scheduler;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    scheduler = new MatchRecomputeScheduler(datastore, /* batchSize= */ 100, RateLimiter.create(1000.0));
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /**
+  * User B, who is friends with User A, becomes friends with User C.
+  *
+  * <p>User A should gain User C as a potential match once the pending batch is run, and
+  * the task queue should be empty afterwards.
+  */
+  @Test
+  public void newFriendshipReachesTwoHopNeighbor() {
+    addUser(USER_A_ID, USER_B_ID);
+    addUser(USER_B_ID, USER_A_ID, USER_C_ID);
+    addUser(USER_C_ID, USER_B_ID);
+    addMatchInfo(USER_A_ID, ImmutableList.of(), ImmutableList.of());
+
+    scheduler.enqueueFriendListChange(USER_B_ID, ImmutableList.of(USER_A_ID),
+      ImmutableList.of(USER_A_ID, USER_C_ID));
+    int recomputedUsers = scheduler.runPendingBatch();
+
+    assertThat(recomputedUsers).isEqualTo(1);
+    assertThat(getPotentialMatches(USER_A_ID)).containsExactly(USER_C_ID);
+    assertThat(countPendingTasks()).isEqualTo(0);
+  }
+
+  /**
+  * User B becomes friends with Users C and D, but User A has already passed on User C.
+  *
+  * <p>User A should only gain User D, and their passed list should be left untouched.
+  */
+  @Test
+  public void decidedUsersAreNotResurfaced() {
+    addUser(USER_A_ID, USER_B_ID);
+    addUser(USER_B_ID, USER_A_ID, USER_C_ID, USER_D_ID);
+    addUser(USER_C_ID, USER_B_ID);
+    addUser(USER_D_ID, USER_B_ID);
+    addMatchInfo(USER_A_ID, ImmutableList.of(), ImmutableList.of(USER_C_ID));
+
+    scheduler.enqueueFriendListChange(USER_B_ID, ImmutableList.of(USER_A_ID),
+      ImmutableList.of(USER_A_ID, USER_C_ID, USER_D_ID));
+    scheduler.runPendingBatch();
+
+    Entity matchInfo = getMatchInfo(USER_A_ID);
+    assertThat((List<String>) matchInfo.getProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY))
+      .containsExactly(USER_D_ID);
+    assertThat((List<String>) matchInfo.getProperty(MatchInfoRefresher.PASSED_IDS_PROPERTY))
+      .containsExactly(USER_C_ID);
+  }
+
+  /**
+  * User A's potential matches were refilled by the extended search with Users D and E,
+  * both three hops away, and User B then becomes friends with User D.
+  *
+  * <p>User D should keep their position but no longer be marked as three hops away, and
+  * User E should be kept as a three-hop potential match.
+  */
+  @Test
+  public void extendedSearchResultsAreKept() {
+    addUser(USER_A_ID, USER_B_ID);
+    addUser(USER_B_ID, USER_A_ID, USER_C_ID, USER_D_ID);
+    addUser(USER_C_ID, USER_B_ID, USER_E_ID);
+    addUser(USER_D_ID, USER_B_ID);
+    addUser(USER_E_ID, USER_C_ID);
+    addMatchInfo(USER_A_ID, ImmutableList.of(USER_D_ID, USER_E_ID), ImmutableList.of(USER_C_ID));
+    Entity refilledMatchInfo = getMatchInfo(USER_A_ID);
+    refilledMatchInfo.setProperty(PotentialMatchFeed.THREE_HOP_IDS_PROPERTY, ImmutableList.of(USER_D_ID, USER_E_ID));
+    datastore.put(refilledMatchInfo);
+
+    scheduler.enqueueFriendListChange(USER_B_ID, ImmutableList.of(USER_A_ID, USER_C_ID),
+      ImmutableList.of(USER_A_ID, USER_C_ID, USER_D_ID));
+    scheduler.runPendingBatch();
+
+    Entity matchInfo = getMatchInfo(USER_A_ID);
+    assertThat((List<String>) matchInfo.getProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY))
+      .containsExactly(USER_D_ID, USER_E_ID).inOrder();
+    assertThat((List<String>) matchInfo.getProperty(PotentialMatchFeed.THREE_HOP_IDS_PROPERTY))
+      .containsExactly(USER_E_ID);
+  }
+
+  /**
+  * The same friend list change is enqueued twice before any batch runs.
+  *
+  * <p>Should result in a single pending task per affected user.
+  */
+  @Test
+  public void repeatedChangesAreDeduplicated() {
+    scheduler.enqueueFriendListChange(USER_B_ID, ImmutableList.of(), ImmutableList.of(USER_A_ID, USER_C_ID));
+    scheduler.enqueueFriendListChange(USER_B_ID, ImmutableList.of(USER_A_ID), ImmutableList.of(USER_A_ID, USER_C_ID));
+
+    assertThat(countPendingTasks()).isEqualTo(3);
+  }
+
+  /**
+  * A friend list is submitted again without any changes.
+  *
+  * <p>Should not enqueue any work.
+  */
+  @Test
+  public void unchangedFriendListEnqueuesNothing() {
+    scheduler.enqueueFriendListChange(USER_A_ID, ImmutableList.of(USER_B_ID), ImmutableList.of(USER_B_ID));
+
+    assertThat(countPendingTasks()).isEqualTo(0);
+    assertThat(scheduler.runPendingBatch()).isEqualTo(0);
+  }
+
+  private void addUser(String userID, String... friendIDs) {
+    Entity userEntity = new Entity(USER_ENTITY);
+    userEntity.setProperty(USER_ID_PROPERTY, userID);
+    userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, ImmutableList.copyOf(friendIDs));
+    datastore.put(userEntity);
+  }
+
+  private void addMatchInfo(String userID, List<String> potentialMatches, List<String> passedIDs) {
+    Entity matchInfo = new Entity(MatchInfoRefresher.MATCH_INFO_ENTITY);
+    matchInfo.setProperty(MatchInfoRefresher.USER_ID_PROPERTY, userID);
+    matchInfo.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, potentialMatches);
+    matchInfo.setProperty(MatchInfoRefresher.FRIENDED_IDS_PROPERTY, ImmutableList.of());
+    matchInfo.setProperty(MatchInfoRefresher.PASSED_IDS_PROPERTY, passedIDs);
+    matchInfo.setProperty(MatchInfoRefresher.MATCHES_LIST_PROPERTY, ImmutableList.of());
+    datastore.put(matchInfo);
+  }
+
+  private Entity getMatchInfo(String userID) {
+    return datastore.prepare(new Query(MatchInfoRefresher.MATCH_INFO_ENTITY).setFilter(
+      new FilterPredicate(MatchInfoRefresher.USER_ID_PROPERTY, FilterOperator.EQUAL, userID))).asSingleEntity();
+  }
+
+  private List<String> getPotentialMatches(String userID) {
+    return (List<String>) getMatchInfo(userID).getProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY);
+  }
+
+  private int countPendingTasks() {
+    return datastore.prepare(new Query(MatchRecomputeScheduler.RECOMPUTE_TASK_ENTITY))
+      .countEntities(FetchOptions.Builder.withDefaults());
+  }
+}
@@ -16,11 +16,14 @@ package com.google.sps.data;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableMap;
 import com.google.sps.data.friend_map.UserFriendsMap;
@@ -36,6 +39,7 @@ public class PotentialMatchAlgorithmTest {
   private static final String USER_C_ID = "34567";
   private static final String USER_D_ID = "45678";
   private static final String USER_E_ID = "56789";
+  private static final String USER_F_ID = "67890";
 
   /**
   * Tests if correct potential matches are found for a single user with zero friends
@@ -181,5 +185,256 @@ public class PotentialMatchAlgorithmTest {
     
     assertThat(potentialMatches).containsExactlyEntriesIn(expectedMatches);
   }
-}
 
+  /**
+  * Tests if excluded users are skipped when finding potential matches for five users who
+  * have several friendships between each other.
+  *
+  * <p>User B would normally match with Users C and D, but has already decided on User C, so
+  * should only get User D. Excluding a user who is not in the map should have no effect.
+  */
+  @Test
+  public void excludedUsersAreSkipped() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_C_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_A_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_E_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+
+    Set<UserNode> fiveUserNodeSet = ImmutableSet.of(userA, userB, userC, userD, userE);
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(fiveUserNodeSet);
+    ExclusionSet exclusions =
+      ExclusionSet.of(resultingFriendsMap.getInterner(), ImmutableSet.of(USER_C_ID, "99999"));
+    ImmutableSet<String> potentialMatches =
+      PotentialMatchAlgorithm.findPotentialMatchesForUser(USER_B_ID, resultingFriendsMap, exclusions);
+
+    assertThat(exclusions.size()).isEqualTo(1);
+    assertThat(potentialMatches).containsExactly(USER_D_ID);
+  }
+
+  /**
+  * Tests if an empty exclusion set gives the same potential matches as the regular algorithm.
+  *
+  * <p>User E should map to a set with just User A either way.
+  */
+  @Test
+  public void emptyExclusionsMatchRegularAlgorithm() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_D_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_E_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userD, userE));
+    ExclusionSet exclusions = ExclusionSet.of(resultingFriendsMap.getInterner(), ImmutableSet.of());
+
+    assertThat(PotentialMatchAlgorithm.findPotentialMatchesForUser(USER_E_ID, resultingFriendsMap, exclusions))
+      .containsExactlyElementsIn(PotentialMatchAlgorithm.findPotentialMatchesForUser(USER_E_ID, resultingFriendsMap));
+  }
+
+  /**
+  * Tests if unlimited expansion limits find the same potential matches as the regular algorithm.
+  *
+  * <p>User B should map to a set with User C and User D, and the result should be exact.
+  */
+  @Test
+  public void unlimitedExpansionIsExact() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_C_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_A_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD));
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_B_ID, resultingFriendsMap, ExclusionSet.none(), ExpansionLimits.unlimited());
+
+    assertThat(result.isApproximate()).isFalse();
+    assertThat(result.getEdgesTraversed()).isEqualTo(3);
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_C_ID, USER_D_ID);
+  }
+
+  /**
+  * Tests if a hub friend's friend list is sampled when it is longer than the fan-out cap.
+  *
+  * <p>User A is a hub with 100 friends and User B's only friend. With a cap of 10, User B
+  * should get at most 10 distinct potential matches, the result should be marked approximate,
+  * and running it again with the same seed should give the same sample.
+  */
+  @Test
+  public void hubFriendListIsSampled() {
+    ImmutableSet.Builder<String> hubFriends = ImmutableSet.builder();
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    for (int i = 0; i < 100; i++) {
+      String friendID = "friend" + i;
+      hubFriends.add(friendID);
+      userNodes.add(new UserNode(friendID, ImmutableSet.of(USER_A_ID)));
+    }
+    userNodes.add(new UserNode(USER_A_ID, hubFriends.add(USER_B_ID).build()));
+    userNodes.add(new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID)));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(userNodes.build());
+    ExpansionLimits limits = ExpansionLimits.builder().setMaxFanOutPerFriend(10).setSamplingSeed(7L).build();
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_B_ID, resultingFriendsMap, ExclusionSet.none(), limits);
+    PotentialMatchResult repeatedResult = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_B_ID, resultingFriendsMap, ExclusionSet.none(), limits);
+
+    assertThat(result.isApproximate()).isTrue();
+    assertThat(result.getEdgesTraversed()).isEqualTo(10);
+    assertThat(result.getPotentialMatchIDs().size()).isAtLeast(9);
+    assertThat(result.getPotentialMatchIDs()).isEqualTo(repeatedResult.getPotentialMatchIDs());
+  }
+
+  /**
+  * Tests if the expansion stops once the work budget is used up.
+  *
+  * <p>User A's friends B and D are expanded from lowest degree up, so with a budget of two edges
+  * only User B's friend list is read and the result should be marked approximate.
+  */
+  @Test
+  public void workBudgetStopsExpansion() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_E_ID, USER_C_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD, userE));
+    ExpansionLimits limits = ExpansionLimits.builder().setMaxEdgesTraversed(2).build();
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_A_ID, resultingFriendsMap, ExclusionSet.none(), limits);
+
+    assertThat(result.isApproximate()).isTrue();
+    assertThat(result.getEdgesTraversed()).isEqualTo(2);
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_C_ID);
+  }
+
+  /**
+  * Tests if an enabled stats collector receives the work counters of a search.
+  *
+  * <p>User A's friends B and D reach A twice, C twice and the excluded User E once, so only
+  * User C is returned, with one duplicate discarded and one exclusion applied. Reaching User A
+  * is not counted as an exclusion.
+  */
+  @Test
+  public void statsCollectorReceivesWorkCounters() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_C_ID, USER_E_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD, userE));
+    ExclusionSet exclusions = ExclusionSet.of(resultingFriendsMap.getInterner(), ImmutableSet.of(USER_E_ID));
+    List<MatchingStats> recordedStats = new ArrayList<>();
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_A_ID, resultingFriendsMap, exclusions, ExpansionLimits.unlimited(), recordedStats::add);
+
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_C_ID);
+    assertThat(recordedStats).hasSize(1);
+    MatchingStats stats = recordedStats.get(0);
+    assertThat(stats.getFriendsScanned()).isEqualTo(2);
+    assertThat(stats.getEdgesTraversed()).isEqualTo(5);
+    assertThat(stats.getDuplicatesDiscarded()).isEqualTo(1);
+    assertThat(stats.getExclusionsApplied()).isEqualTo(1);
+    assertThat(stats.getResultSize()).isEqualTo(1);
+    assertThat(stats.getElapsedNanos()).isAtLeast(0L);
+  }
+
+  /**
+  * Tests if a search without exclusions reports none, even though it reaches the user and
+  * their friends.
+  *
+  * <p>User A is friends with Users B and C, who are also friends with each other, and User C
+  * is friends with User D, so only User D should be returned.
+  */
+  @Test
+  public void noExclusionsAreReportedWithoutExclusionSet() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_C_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_A_ID, USER_B_ID, USER_D_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_C_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD));
+    List<MatchingStats> recordedStats = new ArrayList<>();
+    PotentialMatchResult result = PotentialMatchAlgorithm.findPotentialMatchesForUser(
+      USER_A_ID, resultingFriendsMap, ExclusionSet.none(), ExpansionLimits.unlimited(), recordedStats::add);
+
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_D_ID);
+    assertThat(recordedStats).hasSize(1);
+    assertThat(recordedStats.get(0).getEdgesTraversed()).isEqualTo(5);
+    assertThat(recordedStats.get(0).getExclusionsApplied()).isEqualTo(0);
+  }
+
+  /**
+  * Tests if mutual friends are counted from the sorted interned friend lists.
+  *
+  * <p>Users A and C share friends B and D, Users A and E share none, and an unknown user
+  * should have no mutual friends with anyone.
+  */
+  @Test
+  public void mutualFriendsAreCounted() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_C_ID, USER_E_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+
+    UserFriendsMap resultingFriendsMap = new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD, userE));
+
+    assertThat(PotentialMatchAlgorithm.countMutualFriends(USER_A_ID, USER_C_ID, resultingFriendsMap)).isEqualTo(2);
+    assertThat(PotentialMatchAlgorithm.countMutualFriends(USER_A_ID, USER_E_ID, resultingFriendsMap)).isEqualTo(1);
+    assertThat(PotentialMatchAlgorithm.countMutualFriends(USER_B_ID, USER_E_ID, resultingFriendsMap)).isEqualTo(0);
+    assertThat(PotentialMatchAlgorithm.countMutualFriends(USER_A_ID, "unknown", resultingFriendsMap)).isEqualTo(0);
+    // Friend lists this short fit in their sketches, so the estimate is exact
+    assertThat(PotentialMatchAlgorithm.estimateMutualFriends(USER_A_ID, USER_C_ID, resultingFriendsMap)).isEqualTo(2);
+  }
+
+  /**
+  * Tests if potential matches are ranked by their number of mutual friends.
+  *
+  * <p>User A shares two friends with User C and one with User E, so User C should come first
+  * even though User E was listed first, and the tie between Users E and F keeps their order.
+  */
+  @Test
+  public void potentialMatchesAreRankedByMutualFriends() {
+    UserNode userA = new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userB = new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID, USER_F_ID));
+    UserNode userC = new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_D_ID));
+    UserNode userD = new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_C_ID, USER_E_ID));
+    UserNode userE = new UserNode(USER_E_ID, ImmutableSet.of(USER_D_ID));
+    UserNode userF = new UserNode(USER_F_ID, ImmutableSet.of(USER_B_ID));
+
+    UserFriendsMap resultingFriendsMap =
+      new UserFriendsMap(ImmutableSet.of(userA, userB, userC, userD, userE, userF));
+
+    assertThat(PotentialMatchAlgorithm.rankByMutualFriends(
+        USER_A_ID, ImmutableList.of(USER_E_ID, USER_F_ID, USER_C_ID), resultingFriendsMap))
+      .containsExactly(USER_C_ID, USER_E_ID, USER_F_ID).inOrder();
+  }
+
+  /**
+  * Tests if users with long friend lists are ranked from their friend list sketches.
+  *
+  * <p>Users A, B and C each have 600 friends, well past the sketch size. User C shares 500 of
+  * them with User A and User B only 100, so the estimates should still put User C first.
+  */
+  @Test
+  public void longFriendListsAreRankedFromSketches() {
+    ImmutableSet.Builder<String> friendsA = ImmutableSet.builder();
+    ImmutableSet.Builder<String> friendsB = ImmutableSet.builder();
+    ImmutableSet.Builder<String> friendsC = ImmutableSet.builder();
+    for (int i = 0; i < 600; i++) {
+      friendsA.add("a" + i);
+      friendsB.add(i < 100 ? "a" + i : "b" + i);
+      friendsC.add(i < 500 ? "a" + i : "c" + i);
+    }
+    UserFriendsMap resultingFriendsMap = UserFriendsMap.builder()
+      .addUser(USER_A_ID, friendsA.build())
+      .addUser(USER_B_ID, friendsB.build())
+      .addUser(USER_C_ID, friendsC.build())
+      .build();
+
+    assertThat(PotentialMatchAlgorithm.rankByMutualFriends(
+        USER_A_ID, ImmutableList.of(USER_B_ID, USER_C_ID), resultingFriendsMap))
+      .containsExactly(USER_C_ID, USER_B_ID).inOrder();
+  }
+}
@@ -0,0 +1,98 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class PotentialMatchFeedTest {
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+
+  // Only provides the app environment entities need; datastore calls go to the mock
+  private final LocalServiceTestHelper helper = new LocalServiceTestHelper();
+
+  @Mock
+  private DatastoreService mockDatastore;
+
+  @Mock
+  private PreparedQuery mockPreparedQuery;
+
+  private Entity matchInfo;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+
+    matchInfo = new Entity(MatchInfoRefresher.MATCH_INFO_ENTITY);
+    matchInfo.setProperty(MatchInfoRefresher.USER_ID_PROPERTY, USER_A_ID);
+    when(mockDatastore.prepare(any(Query.class))).thenReturn(mockPreparedQuery);
+    when(mockPreparedQuery.asSingleEntity()).thenReturn(matchInfo);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /**
+  * User A's stored potential matches start with User B, who was found by the extended search.
+  *
+  * <p>Should return User B at three hops, read only from the given datastore, and write nothing.
+  */
+  @Test
+  public void returnsFirstStoredMatchWithHopDistance() {
+    matchInfo.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, ImmutableList.of(USER_B_ID, USER_C_ID));
+    matchInfo.setProperty(PotentialMatchFeed.THREE_HOP_IDS_PROPERTY, ImmutableList.of(USER_B_ID));
+
+    MatchInformation next = new PotentialMatchFeed(mockDatastore).advanceToNextPotentialMatch(USER_A_ID, false);
+
+    assertThat(next.getNextPotentialMatchID()).isEqualTo(USER_B_ID);
+    assertThat(next.getHopDistance()).isEqualTo(3);
+    verify(mockDatastore, never()).put(any(Entity.class));
+  }
+
+  /** A user with no potential matches left who did not ask for the extended search gets none. */
+  @Test
+  public void noMatchesWithoutExtendedSearch() {
+    matchInfo.setProperty(MatchInfoRefresher.POTENTIAL_MATCHES_PROPERTY, ImmutableList.of());
+
+    MatchInformation next = new PotentialMatchFeed(mockDatastore).advanceToNextPotentialMatch(USER_A_ID, false);
+
+    assertThat(next.getNextPotentialMatchID()).isEqualTo(PotentialMatchFeed.NO_POTENTIAL_MATCH_RESULT);
+    assertThat(next.getHopDistance()).isEqualTo(0);
+  }
+}
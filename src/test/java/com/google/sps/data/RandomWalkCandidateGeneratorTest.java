@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserNode;
+
+@RunWith(JUnit4.class)
+public class RandomWalkCandidateGeneratorTest {
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+  private static final String USER_E_ID = "56789";
+  private static final String USER_F_ID = "67890";
+
+  /**
+  * User A's friends are B, D and E. User C is friends with all three of them while User F is
+  * only friends with E, so User C should be ranked above User F, and neither User A nor their
+  * friends should be returned.
+  */
+  @Test
+  public void wellConnectedCandidatesRankFirst() {
+    UserFriendsMap friendsMap = createFriendsMap();
+    RandomWalkCandidateGenerator generator = RandomWalkCandidateGenerator.builder().setSeed(1L).build();
+
+    PotentialMatchResult result = generator.findPotentialMatches(USER_A_ID, friendsMap, ExclusionSet.none());
+
+    assertThat(result.isApproximate()).isTrue();
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_C_ID, USER_F_ID).inOrder();
+  }
+
+  /** Excluded users are never returned, and the same seed always gives the same candidates. */
+  @Test
+  public void excludedUsersAreSkippedAndSeedIsDeterministic() {
+    UserFriendsMap friendsMap = createFriendsMap();
+    ExclusionSet exclusions = ExclusionSet.of(friendsMap.getInterner(), ImmutableList.of(USER_C_ID));
+    RandomWalkCandidateGenerator generator = RandomWalkCandidateGenerator.builder().setSeed(2L).build();
+
+    PotentialMatchResult result = generator.findPotentialMatches(USER_A_ID, friendsMap, exclusions);
+    PotentialMatchResult repeatedResult = generator.findPotentialMatches(USER_A_ID, friendsMap, exclusions);
+
+    assertThat(result.getPotentialMatchIDs()).containsExactly(USER_F_ID);
+    assertThat(result.getEdgesTraversed()).isEqualTo(repeatedResult.getEdgesTraversed());
+  }
+
+  /** A ranking that settles immediately stops the walks long before the walk budget is used. */
+  @Test
+  public void stableRankingStopsEarly() {
+    UserFriendsMap friendsMap = createFriendsMap();
+    RandomWalkCandidateGenerator generator = RandomWalkCandidateGenerator.builder()
+      .setMaxWalks(100_000)
+      .setMaxWalkLength(4)
+      .setEarlyStopping(/* stabilityCheckInterval= */ 50, /* requiredStableChecks= */ 2)
+      .build();
+
+    PotentialMatchResult result = generator.findPotentialMatches(USER_A_ID, friendsMap, ExclusionSet.none());
+
+    assertThat(result.getEdgesTraversed()).isLessThan(100_000);
+  }
+
+  /**
+  * The steps walked are bounded by the walk budget even when the user's friend is a hub with
+  * thousands of friends, who would all be examined by the exhaustive expansion.
+  */
+  @Test
+  public void workIsBoundedByWalkBudget() {
+    ImmutableSet.Builder<String> hubFriends = ImmutableSet.builder();
+    ImmutableSet.Builder<UserNode> userNodes = ImmutableSet.builder();
+    for (int i = 0; i < 10_000; i++) {
+      String friendID = "friend" + i;
+      hubFriends.add(friendID);
+      userNodes.add(new UserNode(friendID, ImmutableSet.of(USER_B_ID)));
+    }
+    userNodes.add(new UserNode(USER_B_ID, hubFriends.add(USER_A_ID).build()));
+    userNodes.add(new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID)));
+    UserFriendsMap friendsMap = new UserFriendsMap(userNodes.build());
+
+    RandomWalkCandidateGenerator generator = RandomWalkCandidateGenerator.builder()
+      .setMaxWalks(200)
+      .setMaxWalkLength(3)
+      .setTopK(10)
+      .build();
+    PotentialMatchResult result = generator.findPotentialMatches(USER_A_ID, friendsMap, ExclusionSet.none());
+
+    assertThat(result.getEdgesTraversed()).isAtMost(200 * 3);
+    assertThat(result.getPotentialMatchIDs()).hasSize(10);
+    assertThat(result.getPotentialMatchIDs()).doesNotContain(USER_A_ID);
+    assertThat(result.getPotentialMatchIDs()).doesNotContain(USER_B_ID);
+  }
+
+  private static UserFriendsMap createFriendsMap() {
+    Set<UserNode> userNodes = ImmutableSet.of(
+      new UserNode(USER_A_ID, ImmutableSet.of(USER_B_ID, USER_D_ID, USER_E_ID)),
+      new UserNode(USER_B_ID, ImmutableSet.of(USER_A_ID, USER_C_ID)),
+      new UserNode(USER_C_ID, ImmutableSet.of(USER_B_ID, USER_D_ID, USER_E_ID)),
+      new UserNode(USER_D_ID, ImmutableSet.of(USER_A_ID, USER_C_ID)),
+      new UserNode(USER_E_ID, ImmutableSet.of(USER_A_ID, USER_C_ID, USER_F_ID)),
+      new UserNode(USER_F_ID, ImmutableSet.of(USER_E_ID)));
+    return new UserFriendsMap(userNodes);
+  }
+}
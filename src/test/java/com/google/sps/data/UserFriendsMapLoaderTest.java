@@ -0,0 +1,85 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.google.sps.data;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+import com.google.sps.data.friend_map.CompressedFriendGraph;
+
+@RunWith(JUnit4.class)
+public class UserFriendsMapLoaderTest {
+  private static final String USER_ENTITY = "User";
+  private static final String USER_ID_PROPERTY = "id";
+  private static final String USER_FRIENDS_LIST_PROPERTY = "friends-list";
+
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /**
+  * Loads the compressed graph when User C has no friends list and User A's friends list names
+  * someone who is not a user.
+  *
+  * <p>Should hold all three users, with the unknown friend dropped and User C friendless.
+  */
+  @Test
+  public void loadsCompressedGraphInUserIDOrder() {
+    addUser(USER_C_ID, null);
+    addUser(USER_A_ID, ImmutableList.of(USER_B_ID, "unknown"));
+    addUser(USER_B_ID, ImmutableList.of(USER_A_ID));
+
+    CompressedFriendGraph graph = UserFriendsMapLoader.loadCompressedFromDatastore(datastore);
+
+    assertThat(graph.getUserCount()).isEqualTo(3);
+    assertThat(graph.getUserFriendIDs(USER_A_ID)).containsExactly(USER_B_ID);
+    assertThat(graph.getUserFriendIDs(USER_B_ID)).containsExactly(USER_A_ID);
+    assertThat(graph.getUserFriendIDs(USER_C_ID)).isEmpty();
+  }
+
+  private void addUser(String userID, ImmutableList<String> friendIDs) {
+    Entity userEntity = new Entity(USER_ENTITY);
+    userEntity.setProperty(USER_ID_PROPERTY, userID);
+    userEntity.setProperty(USER_FRIENDS_LIST_PROPERTY, friendIDs);
+    datastore.put(userEntity);
+  }
+}
@@ -0,0 +1,143 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+@RunWith(JUnit4.class)
+public final class CompressedFriendGraphTest {
+
+  /** IDs are found at their sorted position, and IDs that are not stored are not found. */
+  @Test
+  public void dictionaryLookups() {
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      ids.add("10000" + (1000 + i * 7));
+    }
+    FrontCodedDictionary dictionary = FrontCodedDictionary.of(ids);
+
+    for (int index = 0; index < ids.size(); index++) {
+      assertThat(dictionary.get(index)).isEqualTo(ids.get(index));
+      assertThat(dictionary.indexOf(ids.get(index))).isEqualTo(index);
+    }
+    assertThat(dictionary.indexOf("0")).isEqualTo(UserIDInterner.NOT_INTERNED);
+    assertThat(dictionary.indexOf("100001001")).isEqualTo(UserIDInterner.NOT_INTERNED);
+    assertThat(dictionary.indexOf("9")).isEqualTo(UserIDInterner.NOT_INTERNED);
+    // Numeric IDs sharing long prefixes should take far less than their full length
+    assertThat(dictionary.getSizeInBytes()).isLessThan(9L * ids.size());
+  }
+
+  /** Every friend list decodes to the list it was built from, by random access and by iteration. */
+  @Test
+  public void randomGraphRoundTrip() {
+    UserFriendsMap friendsMap = createRandomGraph(/* userCount= */ 2_000, /* friendshipCount= */ 40_000, 38);
+    CompressedFriendGraph graph = CompressedFriendGraph.of(friendsMap);
+
+    assertThat(graph.getUserCount()).isEqualTo(2_000);
+    assertThat(graph.getFriendshipCount()).isEqualTo(
+      friendsMap.getFriendMap().values().stream().mapToLong(ImmutableSet::size).sum());
+    for (String userID : friendsMap.getUserIDs()) {
+      assertThat(graph.getUserFriendIDs(userID)).containsExactlyElementsIn(friendsMap.getUserFriendIDs(userID));
+    }
+    graph.forEachFriendList((user, friends, degree) ->
+      assertThat(Arrays.copyOf(friends, degree)).isEqualTo(graph.getFriends(user)));
+    assertThat(graph.getUserFriendIDs("unknown")).isEmpty();
+    // Random friendships have no locality to exploit, but should still take under 4 bytes each
+    assertThat((double) graph.getSizeInBytes() / graph.getFriendshipCount()).isLessThan(4.0);
+  }
+
+  /**
+  * 200 users who all have the same 100 friends should mostly be encoded as references to each
+  * other, taking well under a byte per friendship.
+  */
+  @Test
+  public void similarFriendListsUseReferences() {
+    ImmutableList.Builder<String> sharedFriends = ImmutableList.builder();
+    for (int i = 0; i < 100; i++) {
+      sharedFriends.add("friend" + (1000 + i * 13));
+    }
+    UserFriendsMap.Builder builder = UserFriendsMap.builder().normalizeEdges(AsymmetricEdgePolicy.UNION);
+    for (int i = 0; i < 200; i++) {
+      builder.addUser("user" + (1000 + i), sharedFriends.build());
+    }
+    UserFriendsMap friendsMap = builder.build();
+    CompressedFriendGraph graph = CompressedFriendGraph.of(friendsMap);
+
+    assertThat(graph.getUserFriendIDs("user1000")).containsExactlyElementsIn(sharedFriends.build());
+    assertThat(graph.getUserFriendIDs("user1199")).containsExactlyElementsIn(sharedFriends.build());
+    assertThat(graph.getUserFriendIDs("friend1000")).hasSize(200);
+    assertThat((double) graph.getSizeInBytes() / graph.getFriendshipCount()).isLessThan(0.5);
+  }
+
+  /**
+  * Friend lists streamed into a builder in user ID order give the same graph as compressing the
+  * whole map, with skipped users left without friends.
+  */
+  @Test
+  public void builderStreamsFriendListsInOrder() {
+    UserFriendsMap friendsMap = createRandomGraph(/* userCount= */ 500, /* friendshipCount= */ 5_000, 41);
+    List<String> sortedIDs = new ArrayList<>(friendsMap.getUserIDs());
+    sortedIDs.sort(null);
+    String skippedID = sortedIDs.get(10);
+
+    CompressedFriendGraph.Builder builder = CompressedFriendGraph.builder(sortedIDs);
+    for (String userID : sortedIDs) {
+      if (!userID.equals(skippedID)) {
+        builder.addFriendList(userID, friendsMap.getUserFriendIDs(userID));
+      }
+    }
+    CompressedFriendGraph graph = builder.build();
+
+    assertThat(graph.getUserCount()).isEqualTo(500);
+    assertThat(graph.getUserFriendIDs(skippedID)).isEmpty();
+    for (String userID : sortedIDs) {
+      if (!userID.equals(skippedID)) {
+        assertThat(graph.getUserFriendIDs(userID)).containsExactlyElementsIn(friendsMap.getUserFriendIDs(userID));
+      }
+    }
+    try {
+      CompressedFriendGraph.builder(sortedIDs)
+        .addFriendList(sortedIDs.get(1), ImmutableList.of())
+        .addFriendList(sortedIDs.get(0), ImmutableList.of());
+      fail("Expected friend lists added out of order to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static UserFriendsMap createRandomGraph(int userCount, int friendshipCount, long seed) {
+    Random random = new Random(seed);
+    UserFriendsMap.Builder builder = UserFriendsMap.builder().normalizeEdges(AsymmetricEdgePolicy.UNION);
+    for (int user = 0; user < userCount; user++) {
+      builder.addUser(Integer.toString(1_000_000 + user), null);
+    }
+    for (int i = 0; i < friendshipCount; i++) {
+      String userID = Integer.toString(1_000_000 + random.nextInt(userCount));
+      String friendID = Integer.toString(1_000_000 + random.nextInt(userCount));
+      builder.addUser(userID, ImmutableList.of(friendID));
+    }
+    return builder.build();
+  }
+}
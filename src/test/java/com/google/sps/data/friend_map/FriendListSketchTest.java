@@ -0,0 +1,103 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public final class FriendListSketchTest {
+  // Three standard errors of the Jaccard estimate at the worst case J = 0.5
+  private static final double JACCARD_TOLERANCE = 3 * Math.sqrt(0.25 / FriendListSketch.SKETCH_SIZE);
+
+  /** Sketches of short friend lists hold every hash, so their estimates are exact. */
+  @Test
+  public void smallFriendListsAreExact() {
+    FriendListSketch sketch1 = FriendListSketch.of(ImmutableList.of("1", "2", "3", "4", "4"));
+    FriendListSketch sketch2 = FriendListSketch.of(ImmutableList.of("3", "4", "5"));
+
+    assertThat(sketch1.isExact()).isTrue();
+    assertThat(sketch1.getFriendCount()).isEqualTo(4);
+    assertThat(sketch1.estimateIntersectionSize(sketch2)).isEqualTo(2);
+    assertThat(sketch1.estimateJaccard(sketch2)).isWithin(1e-9).of(2.0 / 5);
+    assertThat(FriendListSketch.of(null).estimateIntersectionSize(sketch2)).isEqualTo(0);
+  }
+
+  /** Two lists just under the sketch size with a large union are still compared in full. */
+  @Test
+  public void exactSketchesWithLargeUnionAreExact() {
+    FriendListSketch sketch1 = FriendListSketch.of(ids(0, FriendListSketch.SKETCH_SIZE));
+    FriendListSketch sketch2 = FriendListSketch.of(ids(FriendListSketch.SKETCH_SIZE / 2, FriendListSketch.SKETCH_SIZE * 3 / 2));
+
+    assertThat(sketch1.estimateIntersectionSize(sketch2)).isEqualTo(FriendListSketch.SKETCH_SIZE / 2);
+  }
+
+  /** A sketch survives being written to and read back from its stored form. */
+  @Test
+  public void storedHashesRoundTrip() {
+    FriendListSketch sketch = FriendListSketch.of(ids(0, 1_000));
+    FriendListSketch restored = FriendListSketch.fromStoredHashes(sketch.getStoredHashes(), sketch.getFriendCount());
+
+    assertThat(sketch.getStoredHashes()).hasSize(FriendListSketch.SKETCH_SIZE);
+    assertThat(restored.isExact()).isFalse();
+    assertThat(restored.estimateJaccard(sketch)).isWithin(1e-9).of(1.0);
+  }
+
+  /**
+  * Compares the estimates against the exact intersection over random pairs of large friend
+  * lists, and checks they stay within the documented error bounds.
+  */
+  @Test
+  public void largeFriendListEstimatesAreWithinErrorBounds() {
+    Random random = new Random(32);
+    double totalJaccardError = 0;
+    int trials = 100;
+    for (int trial = 0; trial < trials; trial++) {
+      int size1 = 500 + random.nextInt(5_000);
+      int size2 = 500 + random.nextInt(5_000);
+      int overlap = random.nextInt(Math.min(size1, size2));
+      // Friends [0, size1) and [size1 - overlap, size1 - overlap + size2) share exactly overlap IDs
+      String[] friends1 = SortedIntersection.toSortedArray(ids(0, size1));
+      String[] friends2 = SortedIntersection.toSortedArray(ids(size1 - overlap, size1 - overlap + size2));
+      int exactIntersection = SortedIntersection.intersectionSize(friends1, friends2);
+      double exactJaccard = (double) exactIntersection / (size1 + size2 - exactIntersection);
+
+      FriendListSketch sketch1 = FriendListSketch.of(ids(0, size1));
+      FriendListSketch sketch2 = FriendListSketch.of(ids(size1 - overlap, size1 - overlap + size2));
+      double jaccardError = Math.abs(sketch1.estimateJaccard(sketch2) - exactJaccard);
+
+      assertThat(exactIntersection).isEqualTo(overlap);
+      assertThat(jaccardError).isAtMost(JACCARD_TOLERANCE);
+      totalJaccardError += jaccardError;
+    }
+    // On average the error should be well inside one worst-case standard error
+    assertThat(totalJaccardError / trials).isAtMost(JACCARD_TOLERANCE / 3);
+  }
+
+  private static List<String> ids(int from, int to) {
+    List<String> ids = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      ids.add("user" + i);
+    }
+    return ids;
+  }
+}
@@ -16,6 +16,7 @@ package com.google.sps.data.friend_map;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.Arrays;
 import java.util.Set;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -103,5 +104,48 @@ public final class FriendsMapCreationTest {
     
     assertThat(threeUsersTwoConnectionMap.getFriendMap()).containsExactlyEntriesIn(expectedMap);
   }
-}
 
+  /**
+  * Tests if the streaming builder forms the same map as the set of UserNodes.
+  *
+  * <p>Duplicate friend IDs should be dropped, friend lists added twice for User C should be
+  * merged, and a user added with no friend list should map to an empty set.
+  */
+  @Test
+  public void streamingBuilderGraphTest() {
+    UserFriendsMap builtMap = UserFriendsMap.builder()
+      .addUser(USER_A_ID, Arrays.asList(USER_C_ID, USER_C_ID))
+      .addUser(USER_B_ID, null)
+      .addUser(USER_C_ID, Arrays.asList(USER_A_ID))
+      .addUser(USER_C_ID, Arrays.asList(USER_B_ID))
+      .build();
+
+    ImmutableMap<String, ImmutableSet<String>> expectedMap =
+      ImmutableMap.of(
+        USER_A_ID, ImmutableSet.of(USER_C_ID),
+        USER_B_ID, ImmutableSet.of(),
+        USER_C_ID, ImmutableSet.of(USER_A_ID, USER_B_ID)
+      );
+
+    assertThat(builtMap.getFriendMap()).containsExactlyEntriesIn(expectedMap);
+  }
+
+  /**
+  * Tests if the streaming builder stores an ID that appears on several friend lists once.
+  *
+  * <p>User C's ID is passed as two different string instances, and both friend lists should
+  * end up holding the same instance, which is also used as User C's key.
+  */
+  @Test
+  public void streamingBuilderSharesIDInstances() {
+    String userCKey = new String(USER_C_ID);
+    UserFriendsMap builtMap = UserFriendsMap.builder()
+      .addUser(userCKey, Arrays.asList(USER_A_ID, USER_B_ID))
+      .addUser(USER_A_ID, Arrays.asList(new String(USER_C_ID)))
+      .addUser(USER_B_ID, Arrays.asList(new String(USER_C_ID)))
+      .build();
+
+    assertThat(builtMap.getUserFriendIDs(USER_A_ID).asList().get(0)).isSameInstanceAs(userCKey);
+    assertThat(builtMap.getUserFriendIDs(USER_B_ID).asList().get(0)).isSameInstanceAs(userCKey);
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+
+@RunWith(JUnit4.class)
+public final class SortedIntersectionTest {
+
+  /** Similar sized arrays take the merge path. */
+  @Test
+  public void mergeIntersectionTest() {
+    int[] a = {1, 3, 5, 7, 9};
+    int[] b = {2, 3, 4, 7, 10};
+    int[] out = new int[a.length];
+
+    int found = SortedIntersection.intersect(a, 0, a.length, b, 0, b.length, out);
+
+    assertThat(found).isEqualTo(2);
+    assertThat(Arrays.copyOf(out, found)).asList().containsExactly(3, 7).inOrder();
+    assertThat(SortedIntersection.intersectionSize(a, 0, a.length, b, 0, b.length)).isEqualTo(2);
+  }
+
+  /** A short array against a much longer one takes the galloping path. */
+  @Test
+  public void gallopingIntersectionTest() {
+    int[] small = {0, 499, 500, 1_998, 5_000};
+    int[] large = new int[1_000];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = i * 2;
+    }
+    int[] out = new int[small.length];
+
+    int found = SortedIntersection.intersect(large, 0, large.length, small, 0, small.length, out);
+
+    assertThat(Arrays.copyOf(out, found)).asList().containsExactly(0, 500, 1_998).inOrder();
+  }
+
+  /** Only the given ranges of the arrays are intersected. */
+  @Test
+  public void rangeIntersectionTest() {
+    int[] packed = {1, 2, 3, 4, 2, 4, 6};
+
+    assertThat(SortedIntersection.intersectionSize(packed, 0, 4, packed, 4, 7)).isEqualTo(2);
+    assertThat(SortedIntersection.intersectionSize(packed, 0, 0, packed, 4, 7)).isEqualTo(0);
+  }
+
+  /** Both paths agree with a set intersection over random arrays of very different sizes. */
+  @Test
+  public void randomIntersectionTest() {
+    Random random = new Random(31);
+    for (int trial = 0; trial < 200; trial++) {
+      TreeSet<Integer> setA = randomSet(random, 1 + random.nextInt(50), 10_000);
+      TreeSet<Integer> setB = randomSet(random, 1 + random.nextInt(5_000), 10_000);
+      int[] a = setA.stream().mapToInt(Integer::intValue).toArray();
+      int[] b = setB.stream().mapToInt(Integer::intValue).toArray();
+      int[] out = new int[Math.min(a.length, b.length)];
+
+      int found = SortedIntersection.intersect(a, 0, a.length, b, 0, b.length, out);
+
+      assertThat(Arrays.copyOf(out, found)).asList()
+        .containsExactlyElementsIn(Sets.intersection(setA, setB)).inOrder();
+      assertThat(SortedIntersection.intersectionSize(b, 0, b.length, a, 0, a.length)).isEqualTo(found);
+    }
+  }
+
+  /** Friend lists with duplicates are sorted and deduplicated before a string intersection. */
+  @Test
+  public void stringIntersectionTest() {
+    String[] friends1 = SortedIntersection.toSortedArray(ImmutableList.of("34567", "12345", "12345", "45678"));
+    String[] friends2 = SortedIntersection.toSortedArray(ImmutableList.of("45678", "23456", "12345"));
+    String[] out = new String[Math.min(friends1.length, friends2.length)];
+
+    int found = SortedIntersection.intersect(friends1, friends2, out);
+
+    assertThat(friends1).asList().containsExactly("12345", "34567", "45678").inOrder();
+    assertThat(Arrays.copyOf(out, found)).asList().containsExactly("12345", "45678").inOrder();
+    assertThat(SortedIntersection.intersectionSize(friends1, friends2)).isEqualTo(2);
+    assertThat(SortedIntersection.toSortedArray(null)).isEmpty();
+  }
+
+  private static TreeSet<Integer> randomSet(Random random, int size, int bound) {
+    TreeSet<Integer> set = new TreeSet<>();
+    while (set.size() < size) {
+      set.add(random.nextInt(bound));
+    }
+    return set;
+  }
+}
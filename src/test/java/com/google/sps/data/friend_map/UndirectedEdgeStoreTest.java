@@ -0,0 +1,102 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.friend_map;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+@RunWith(JUnit4.class)
+public final class UndirectedEdgeStoreTest {
+  private static final String USER_A_ID = "12345";
+  private static final String USER_B_ID = "23456";
+  private static final String USER_C_ID = "34567";
+  private static final String USER_D_ID = "45678";
+
+  /**
+  * A friendship listed by both users is stored once, and a self friendship is not stored.
+  */
+  @Test
+  public void mutualFriendshipIsStoredOnce() {
+    UndirectedEdgeStore.Builder builder = new UndirectedEdgeStore.Builder();
+    builder.addFriendList(USER_A_ID, Arrays.asList(USER_B_ID, USER_A_ID));
+    builder.addFriendList(USER_B_ID, Arrays.asList(USER_A_ID, USER_A_ID));
+
+    UndirectedEdgeStore edgeStore = builder.build(AsymmetricEdgePolicy.UNION);
+
+    assertThat(edgeStore.getEdgeCount()).isEqualTo(1);
+    assertThat(edgeStore.getUserID(edgeStore.getLowerUser(0))).isEqualTo(USER_A_ID);
+    assertThat(edgeStore.getUserID(edgeStore.getHigherUser(0))).isEqualTo(USER_B_ID);
+  }
+
+  /**
+  * User A lists B and C, but only B lists A back, and User D is only listed by C.
+  *
+  * <p>With UNION every friendship should be kept and seen from both sides. With MUTUAL_ONLY
+  * only A - B should be kept, and User D, who never submitted a friend list and has no kept
+  * friendships, should be left out.
+  */
+  @Test
+  public void asymmetricFriendshipPolicies() {
+    ImmutableMap<String, ImmutableSet<String>> union = buildAsymmetric(AsymmetricEdgePolicy.UNION).toFriendMap();
+    ImmutableMap<String, ImmutableSet<String>> mutualOnly = buildAsymmetric(AsymmetricEdgePolicy.MUTUAL_ONLY).toFriendMap();
+
+    assertThat(union).containsExactlyEntriesIn(ImmutableMap.of(
+      USER_A_ID, ImmutableSet.of(USER_B_ID, USER_C_ID),
+      USER_B_ID, ImmutableSet.of(USER_A_ID),
+      USER_C_ID, ImmutableSet.of(USER_A_ID, USER_D_ID),
+      USER_D_ID, ImmutableSet.of(USER_C_ID)));
+    assertThat(mutualOnly).containsExactlyEntriesIn(ImmutableMap.of(
+      USER_A_ID, ImmutableSet.of(USER_B_ID),
+      USER_B_ID, ImmutableSet.of(USER_A_ID),
+      USER_C_ID, ImmutableSet.of()));
+  }
+
+  /**
+  * The potential matches found from a normalized map do not depend on which user's copy of an
+  * asymmetric friendship was submitted.
+  */
+  @Test
+  public void normalizedMapIsSymmetric() {
+    UserFriendsMap fromA = UserFriendsMap.builder()
+      .normalizeEdges(AsymmetricEdgePolicy.UNION)
+      .addUser(USER_A_ID, Arrays.asList(USER_B_ID))
+      .addUser(USER_B_ID, Arrays.asList(USER_C_ID))
+      .addUser(USER_C_ID, Arrays.asList(USER_B_ID))
+      .build();
+    UserFriendsMap fromB = UserFriendsMap.builder()
+      .normalizeEdges(AsymmetricEdgePolicy.UNION)
+      .addUser(USER_C_ID, null)
+      .addUser(USER_B_ID, Arrays.asList(USER_A_ID, USER_C_ID))
+      .addUser(USER_A_ID, null)
+      .build();
+
+    assertThat(fromA.getFriendMap()).containsExactlyEntriesIn(fromB.getFriendMap());
+    assertThat(fromA.getUserFriendIDs(USER_B_ID)).containsExactly(USER_A_ID, USER_C_ID);
+  }
+
+  private static UndirectedEdgeStore buildAsymmetric(AsymmetricEdgePolicy policy) {
+    UndirectedEdgeStore.Builder builder = new UndirectedEdgeStore.Builder();
+    builder.addFriendList(USER_A_ID, Arrays.asList(USER_B_ID, USER_C_ID));
+    builder.addFriendList(USER_B_ID, Arrays.asList(USER_A_ID));
+    builder.addFriendList(USER_C_ID, Arrays.asList(USER_D_ID));
+    return builder.build(policy);
+  }
+}
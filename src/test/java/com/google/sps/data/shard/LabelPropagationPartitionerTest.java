@@ -0,0 +1,145 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.sps.data.friend_map.AsymmetricEdgePolicy;
+import com.google.sps.data.friend_map.UserFriendsMap;
+import com.google.sps.data.friend_map.UserIDInterner;
+
+@RunWith(JUnit4.class)
+public class LabelPropagationPartitionerTest {
+
+  /**
+  * Four groups of 25 users where everyone in a group is friends, and each group has a single
+  * friendship with the next one. With four partitions, every group should end up in its own
+  * partition, so only the four bridging friendships are cut.
+  */
+  @Test
+  public void denseGroupsShareAPartition() {
+    UserFriendsMap friendsMap = createCommunityGraph(/* groupCount= */ 4, /* groupSize= */ 25,
+      /* randomFriendships= */ 0, new Random(40));
+
+    GraphPartitioning partitioning = LabelPropagationPartitioner.builder()
+      .setPartitionCount(4)
+      .setCapacitySlack(0.1)
+      .setSeed(1L)
+      .build()
+      .partition(friendsMap);
+
+    for (int group = 0; group < 4; group++) {
+      Set<Integer> groupPartitions = new HashSet<>();
+      for (int member = 0; member < 25; member++) {
+        groupPartitions.add(partitioning.getPartitions().get(userID(group, member)));
+      }
+      assertThat(groupPartitions).hasSize(1);
+    }
+    // 4 bridges, each counted from both sides, out of 4 * 25 * 24 + 8 friend list entries
+    assertThat(partitioning.getEdgeCutRatio()).isWithin(1e-9).of(8.0 / (4 * 25 * 24 + 8));
+  }
+
+  /**
+  * On noisy community structure, partitions stay within capacity, the renumbering is a
+  * permutation grouped by partition, and far fewer friendships are cut than by hashing.
+  */
+  @Test
+  public void partitionsRespectCapacityAndBeatHashing() {
+    UserFriendsMap friendsMap = createCommunityGraph(/* groupCount= */ 8, /* groupSize= */ 50,
+      /* randomFriendships= */ 400, new Random(41));
+    GraphPartitioning partitioning = LabelPropagationPartitioner.builder()
+      .setPartitionCount(4)
+      .setCapacitySlack(0.05)
+      .setSeed(2L)
+      .build()
+      .partition(friendsMap);
+
+    int capacity = (int) Math.ceil(400 / 4.0 * 1.05);
+    for (int partition = 0; partition < 4; partition++) {
+      assertThat(partitioning.getPartitionSize(partition)).isAtMost(capacity);
+    }
+
+    UserIDInterner interner = friendsMap.getInterner();
+    boolean[] used = new boolean[interner.size()];
+    int[] firstIDOfPartition = new int[4];
+    int[] lastIDOfPartition = new int[4];
+    Arrays.fill(firstIDOfPartition, Integer.MAX_VALUE);
+    for (int user = 0; user < interner.size(); user++) {
+      int renumbered = partitioning.getRenumberedID(user);
+      assertThat(used[renumbered]).isFalse();
+      used[renumbered] = true;
+      int partition = partitioning.getPartitions().get(interner.getUserID(user));
+      firstIDOfPartition[partition] = Math.min(firstIDOfPartition[partition], renumbered);
+      lastIDOfPartition[partition] = Math.max(lastIDOfPartition[partition], renumbered);
+    }
+    for (int partition = 0; partition < 4; partition++) {
+      assertThat(lastIDOfPartition[partition] - firstIDOfPartition[partition] + 1)
+        .isEqualTo(partitioning.getPartitionSize(partition));
+    }
+
+    ShardRouter hashRouter = new ShardRouter(4);
+    long friendships = 0;
+    long hashCut = 0;
+    for (String userID : friendsMap.getUserIDs()) {
+      for (String friendID : friendsMap.getUserFriendIDs(userID)) {
+        friendships++;
+        hashCut += hashRouter.getShardIndex(userID) != hashRouter.getShardIndex(friendID) ? 1 : 0;
+      }
+    }
+    assertThat(partitioning.getEdgeCutRatio()).isLessThan(0.5 * hashCut / friendships);
+
+    ShardRouter partitionRouter = ShardRouter.fromPartitioning(partitioning);
+    assertThat(partitionRouter.getShardIndex(userID(0, 0)))
+      .isEqualTo(partitioning.getPartitions().get(userID(0, 0)));
+  }
+
+  private static UserFriendsMap createCommunityGraph(int groupCount, int groupSize, int randomFriendships,
+      Random random) {
+    UserFriendsMap.Builder builder = UserFriendsMap.builder().normalizeEdges(AsymmetricEdgePolicy.UNION);
+    for (int group = 0; group < groupCount; group++) {
+      for (int member = 0; member < groupSize; member++) {
+        List<String> friends = new ArrayList<>();
+        for (int other = 0; other < groupSize; other++) {
+          if (other != member) {
+            friends.add(userID(group, other));
+          }
+        }
+        builder.addUser(userID(group, member), friends);
+      }
+      if (groupCount > 1) {
+        builder.addUser(userID(group, 0), ImmutableList.of(userID((group + 1) % groupCount, 1)));
+      }
+    }
+    for (int i = 0; i < randomFriendships; i++) {
+      builder.addUser(userID(random.nextInt(groupCount), random.nextInt(groupSize)),
+        ImmutableList.of(userID(random.nextInt(groupCount), random.nextInt(groupSize))));
+    }
+    return builder.build();
+  }
+
+  private static String userID(int group, int member) {
+    return Integer.toString(100_000 + group * 1_000 + member);
+  }
+}
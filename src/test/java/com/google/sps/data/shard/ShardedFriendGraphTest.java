@@ -0,0 +1,181 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data.shard;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.common.collect.ImmutableList;
+import com.google.sps.data.PotentialMatchAlgorithm;
+import com.google.sps.data.friend_map.AsymmetricEdgePolicy;
+import com.google.sps.data.friend_map.UserFriendsMap;
+
+@RunWith(JUnit4.class)
+public class ShardedFriendGraphTest {
+  private static final int SHARD_COUNT = 4;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final List<SocketShardServer> servers = new ArrayList<>();
+  private ExecutorService executor;
+  private UserFriendsMap friendsMap;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(SHARD_COUNT);
+
+    Random random = new Random(39);
+    UserFriendsMap.Builder builder = UserFriendsMap.builder().normalizeEdges(AsymmetricEdgePolicy.UNION);
+    for (int user = 0; user < 300; user++) {
+      builder.addUser(Integer.toString(10_000 + user), null);
+    }
+    for (int i = 0; i < 1_200; i++) {
+      builder.addUser(Integer.toString(10_000 + random.nextInt(300)),
+        ImmutableList.of(Integer.toString(10_000 + random.nextInt(300))));
+    }
+    friendsMap = builder.build();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    for (SocketShardServer server : servers) {
+      server.close();
+    }
+    executor.shutdownNow();
+  }
+
+  /** Every user owned by some shard, and no user owned by two. */
+  @Test
+  public void partitionCoversEveryUserOnce() {
+    ImmutableList<InProcessShard> shards = InProcessShard.partition(friendsMap, new ShardRouter(SHARD_COUNT));
+
+    assertThat(shards).hasSize(SHARD_COUNT);
+    assertThat(shards.stream().mapToInt(InProcessShard::getUserCount).sum()).isEqualTo(friendsMap.getUserIDs().size());
+    for (InProcessShard shard : shards) {
+      assertThat(shard.getUserCount()).isGreaterThan(0);
+    }
+  }
+
+  /** In-process shards give the same potential matches as the single map. */
+  @Test
+  public void inProcessShardsMatchSingleMap() throws IOException {
+    ShardedFriendGraph shardedGraph =
+      new ShardedFriendGraph(InProcessShard.partition(friendsMap, new ShardRouter(SHARD_COUNT)), executor);
+
+    for (String userID : friendsMap.getUserIDs()) {
+      assertThat(shardedGraph.findPotentialMatchesForUser(userID))
+        .containsExactlyElementsIn(PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap));
+    }
+    assertThat(shardedGraph.findPotentialMatchesForUser("unknown")).isEmpty();
+  }
+
+  /** Shards split along a label propagation partitioning give the same potential matches as the single map. */
+  @Test
+  public void partitionRoutedShardsMatchSingleMap() throws IOException {
+    ShardRouter router = ShardRouter.fromPartitioning(partitionFriendsMap());
+    ShardedFriendGraph shardedGraph =
+      new ShardedFriendGraph(InProcessShard.partition(friendsMap, router), router, executor);
+
+    for (String userID : friendsMap.getUserIDs()) {
+      assertThat(shardedGraph.findPotentialMatchesForUser(userID))
+        .containsExactlyElementsIn(PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap));
+    }
+  }
+
+  /** Socket shards loaded with a partition file route users the way the partitioning chose. */
+  @Test
+  public void partitionFileShardsMatchSingleMap() throws IOException {
+    GraphPartitioning partitioning = partitionFriendsMap();
+    Path graphFile = temporaryFolder.newFile("graph.tsv").toPath();
+    Path partitionFile = temporaryFolder.newFile("partitions.tsv").toPath();
+    SocketShardServer.writeGraphFile(friendsMap, graphFile);
+    SocketShardServer.writePartitionFile(partitioning, partitionFile);
+    ShardRouter router = SocketShardServer.loadRouter(partitionFile, SHARD_COUNT);
+    List<RemoteShard> remoteShards = new ArrayList<>();
+    for (int shardIndex = 0; shardIndex < SHARD_COUNT; shardIndex++) {
+      InProcessShard shard = SocketShardServer.loadShard(graphFile, router, shardIndex);
+      assertThat(shard.getUserCount()).isEqualTo(partitioning.getPartitionSize(shardIndex));
+      SocketShardServer server = new SocketShardServer(shard, 0);
+      server.start();
+      servers.add(server);
+      remoteShards.add(new RemoteShard(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort()));
+    }
+    ShardedFriendGraph shardedGraph = new ShardedFriendGraph(remoteShards, router, executor);
+
+    for (String userID : ImmutableList.copyOf(friendsMap.getUserIDs()).subList(0, 50)) {
+      assertThat(shardedGraph.findPotentialMatchesForUser(userID))
+        .containsExactlyElementsIn(PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap));
+    }
+  }
+
+  /** A router whose shard count differs from the number of shards is rejected. */
+  @Test
+  public void routerMustMatchShardCount() {
+    try {
+      new ShardedFriendGraph(InProcessShard.partition(friendsMap, new ShardRouter(SHARD_COUNT)),
+        new ShardRouter(SHARD_COUNT + 1), executor);
+      fail("Expected a router with the wrong shard count to be rejected");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /**
+  * Shards loaded from a graph file and served over local sockets give the same potential
+  * matches as the single map.
+  */
+  @Test
+  public void socketShardsMatchSingleMap() throws IOException {
+    Path graphFile = temporaryFolder.newFile("graph.tsv").toPath();
+    SocketShardServer.writeGraphFile(friendsMap, graphFile);
+    ShardRouter router = new ShardRouter(SHARD_COUNT);
+    List<RemoteShard> remoteShards = new ArrayList<>();
+    for (int shardIndex = 0; shardIndex < SHARD_COUNT; shardIndex++) {
+      SocketShardServer server = new SocketShardServer(SocketShardServer.loadShard(graphFile, router, shardIndex), 0);
+      server.start();
+      servers.add(server);
+      remoteShards.add(new RemoteShard(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort()));
+    }
+    ShardedFriendGraph shardedGraph = new ShardedFriendGraph(remoteShards, executor);
+
+    for (String userID : ImmutableList.copyOf(friendsMap.getUserIDs()).subList(0, 50)) {
+      assertThat(shardedGraph.findPotentialMatchesForUser(userID))
+        .containsExactlyElementsIn(PotentialMatchAlgorithm.findPotentialMatchesForUser(userID, friendsMap));
+    }
+  }
+
+  private GraphPartitioning partitionFriendsMap() {
+    return LabelPropagationPartitioner.builder()
+      .setPartitionCount(SHARD_COUNT)
+      .setSeed(40)
+      .build()
+      .partition(friendsMap);
+  }
+}
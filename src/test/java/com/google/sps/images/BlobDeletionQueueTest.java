@@ -0,0 +1,103 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.images;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class BlobDeletionQueueTest {
+  private static final String PHOTO_BLOBKEY = "abc";
+  private static final String OTHER_PHOTO_BLOBKEY = "def";
+  private static final String NEWEST_PHOTO_BLOBKEY = "ghi";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private BlobstoreService mockBlobstore;
+
+  @Mock
+  private ImagesService mockImages;
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /**
+  * Tests if a batch deletes the oldest enqueued blobs with a single Blobstore call, along with
+  * their serving URLs, and leaves the rest for the next batch.
+  */
+  @Test
+  public void deletesOldestBlobsInBatch() throws Exception {
+    Entity servingUrl = new Entity(ImageVariantProcessor.IMAGE_SERVING_URL_ENTITY, PHOTO_BLOBKEY);
+    servingUrl.setUnindexedProperty(ImageVariantProcessor.SERVING_URL_PROPERTY, "https://lh3.googleusercontent.com/abc");
+    datastore.put(servingUrl);
+    BlobDeletionQueue queue = new BlobDeletionQueue(mockBlobstore, mockImages, datastore, /* batchSize= */ 2);
+    queue.enqueue(ImmutableList.of(PHOTO_BLOBKEY, OTHER_PHOTO_BLOBKEY));
+    Thread.sleep(2);
+    queue.enqueue(ImmutableList.of(NEWEST_PHOTO_BLOBKEY));
+
+    assertThat(queue.runPendingBatch()).isEqualTo(2);
+
+    verify(mockBlobstore).delete(new BlobKey(PHOTO_BLOBKEY), new BlobKey(OTHER_PHOTO_BLOBKEY));
+    verify(mockImages).deleteServingUrl(new BlobKey(PHOTO_BLOBKEY));
+    assertThat(datastore.prepare(new Query(ImageVariantProcessor.IMAGE_SERVING_URL_ENTITY)).countEntities()).isEqualTo(0);
+    assertThat(datastore.prepare(new Query(BlobDeletionQueue.BLOB_DELETION_ENTITY)).asSingleEntity().getKey().getName())
+      .isEqualTo(NEWEST_PHOTO_BLOBKEY);
+  }
+
+  /** Tests if a blob is still deleted when the image service fails to delete its serving URL. */
+  @Test
+  public void servingUrlFailureDoesNotBlockDeletion() {
+    doThrow(new IllegalArgumentException("no serving URL")).when(mockImages).deleteServingUrl(new BlobKey(PHOTO_BLOBKEY));
+    BlobDeletionQueue queue = new BlobDeletionQueue(mockBlobstore, mockImages, datastore, /* batchSize= */ 10);
+    queue.enqueue(ImmutableList.of(PHOTO_BLOBKEY));
+
+    assertThat(queue.runPendingBatch()).isEqualTo(1);
+    assertThat(queue.runPendingBatch()).isEqualTo(0);
+
+    verify(mockBlobstore).delete(new BlobKey(PHOTO_BLOBKEY));
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.images;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ServingUrlOptions;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class ImageVariantProcessorTest {
+  private static final String PHOTO_BLOBKEY = "abc";
+  private static final String OTHER_PHOTO_BLOBKEY = "def";
+  private static final String NOT_AN_IMAGE_BLOBKEY = "ghi";
+  private static final String PHOTO_SERVING_URL = "https://lh3.googleusercontent.com/abc";
+  private static final String OTHER_PHOTO_SERVING_URL = "https://lh3.googleusercontent.com/def";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private ImagesService mockImages;
+
+  private ImageVariantProcessor processorUnderTest;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+
+    when(mockImages.getServingUrl(getServingUrlOptions(PHOTO_BLOBKEY))).thenReturn(PHOTO_SERVING_URL);
+    when(mockImages.getServingUrl(getServingUrlOptions(OTHER_PHOTO_BLOBKEY))).thenReturn(OTHER_PHOTO_SERVING_URL);
+    when(mockImages.getServingUrl(getServingUrlOptions(NOT_AN_IMAGE_BLOBKEY)))
+      .thenThrow(new IllegalArgumentException("not an image"));
+    processorUnderTest = new ImageVariantProcessor(mockImages, DatastoreServiceFactory.getDatastoreService(),
+      Executors.defaultThreadFactory());
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  @Test
+  public void storesServingUrlOfEveryImage() {
+    Map<String, String> servingUrls = processorUnderTest.createServingUrls(
+      ImmutableList.of(PHOTO_BLOBKEY, NOT_AN_IMAGE_BLOBKEY, OTHER_PHOTO_BLOBKEY));
+
+    assertThat(servingUrls).containsExactly(
+      PHOTO_BLOBKEY, PHOTO_SERVING_URL, OTHER_PHOTO_BLOBKEY, OTHER_PHOTO_SERVING_URL);
+    assertThat(processorUnderTest.getServingUrl(PHOTO_BLOBKEY)).isEqualTo(PHOTO_SERVING_URL);
+    assertThat(processorUnderTest.getServingUrl(OTHER_PHOTO_BLOBKEY)).isEqualTo(OTHER_PHOTO_SERVING_URL);
+    // Rejected uploads keep being served in their original form
+    assertThat(processorUnderTest.getServingUrl(NOT_AN_IMAGE_BLOBKEY)).isNull();
+  }
+
+  @Test
+  public void variantsAreSelectedByName() {
+    assertThat(ImageVariant.fromName("card")).isEqualTo(ImageVariant.CARD);
+    assertThat(ImageVariant.fromName("huge")).isNull();
+    assertThat(ImageVariant.fromName(null)).isNull();
+    assertThat(ImageVariant.THUMBNAIL.getUrl(PHOTO_SERVING_URL)).isEqualTo(PHOTO_SERVING_URL + "=s200");
+  }
+
+  private static ServingUrlOptions getServingUrlOptions(String blobKey) {
+    return ServingUrlOptions.Builder.withBlobKey(new BlobKey(blobKey)).secureUrl(true);
+  }
+}
@@ -0,0 +1,125 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import com.google.appengine.api.datastore.AsyncDatastoreService;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.ImmutableList;
+
+@RunWith(JUnit4.class)
+public class InstrumentedDatastoreTest {
+  private static final String USER_ENTITY = "user";
+  private static final String USER_ID_PROPERTY = "id";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    helper.setUp();
+    datastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getDatastoreService());
+  }
+
+  @After
+  public void tearDown() {
+    DatastoreRpcStats.end();
+    helper.tearDown();
+  }
+
+  @Test
+  public void countsRoundTripsOfTheCurrentRequest() throws Exception {
+    DatastoreRpcStats stats = DatastoreRpcStats.begin();
+
+    Entity user1 = createUser("1234");
+    Entity user2 = createUser("5555");
+    datastore.put(user1);
+    datastore.put(ImmutableList.of(user2));
+    datastore.get(user1.getKey());
+    Query query = new Query(USER_ENTITY).setFilter(new FilterPredicate(USER_ID_PROPERTY, FilterOperator.EQUAL, "5555"));
+    Entity found = datastore.prepare(query).asSingleEntity();
+    datastore.prepare(new Query(USER_ENTITY)).asList(FetchOptions.Builder.withDefaults());
+    datastore.delete(user1.getKey());
+
+    assertThat(found.getProperty(USER_ID_PROPERTY)).isEqualTo("5555");
+    assertThat(stats.getCount(DatastoreOperation.PUT)).isEqualTo(2);
+    assertThat(stats.getCount(DatastoreOperation.GET)).isEqualTo(1);
+    assertThat(stats.getCount(DatastoreOperation.QUERY)).isEqualTo(2);
+    assertThat(stats.getCount(DatastoreOperation.DELETE)).isEqualTo(1);
+    assertThat(stats.getTotalCount()).isEqualTo(6);
+    assertThat(stats.toBreakdown()).startsWith("get=1 (");
+  }
+
+  @Test
+  public void callsOutsideARequestAreNotCounted() {
+    datastore.put(createUser("1234"));
+
+    DatastoreRpcStats stats = DatastoreRpcStats.begin();
+    assertThat(stats.getTotalCount()).isEqualTo(0);
+    assertThat(stats.toBreakdown()).isEqualTo("none");
+  }
+
+  @Test
+  public void endpointMetricsAggregateRoundTrips() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    EndpointMetrics metrics = registry.getEndpoint("/matches-list");
+    DatastoreRpcStats stats = DatastoreRpcStats.begin();
+    datastore.prepare(new Query(USER_ENTITY)).asSingleEntity();
+    datastore.put(createUser("1234"));
+    DatastoreRpcStats.end();
+
+    metrics.recordDatastoreRpcs(stats);
+
+    assertThat(metrics.getDatastoreRpcsPerRequest().getMax()).isEqualTo(2);
+    assertThat(metrics.getDatastoreRpcCount(DatastoreOperation.QUERY)).isEqualTo(1);
+    assertThat(metrics.getDatastoreRpcCount(DatastoreOperation.PUT)).isEqualTo(1);
+  }
+
+  @Test
+  public void countsAsyncRoundTrips() throws Exception {
+    AsyncDatastoreService asyncDatastore = InstrumentedDatastore.wrap(DatastoreServiceFactory.getAsyncDatastoreService());
+    DatastoreRpcStats stats = DatastoreRpcStats.begin();
+
+    Entity user = createUser("1234");
+    asyncDatastore.put(user).get();
+    asyncDatastore.get(user.getKey()).get();
+    asyncDatastore.prepare(new Query(USER_ENTITY)).asList(FetchOptions.Builder.withLimit(1)).size();
+
+    assertThat(stats.getCount(DatastoreOperation.PUT)).isEqualTo(1);
+    assertThat(stats.getCount(DatastoreOperation.GET)).isEqualTo(1);
+    assertThat(stats.getCount(DatastoreOperation.QUERY)).isEqualTo(1);
+  }
+
+  private static Entity createUser(String userID) {
+    Entity user = new Entity(USER_ENTITY);
+    user.setProperty(USER_ID_PROPERTY, userID);
+    return user;
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class LogLinearHistogramTest {
+
+  @Test
+  public void emptyHistogramReportsZero() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+
+    assertThat(histogram.getCount()).isEqualTo(0);
+    assertThat(histogram.getValueAtPercentile(99)).isEqualTo(0);
+  }
+
+  @Test
+  public void smallValuesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int value = 1; value <= 10; value++) {
+      histogram.record(value);
+    }
+
+    assertThat(histogram.getValueAtPercentile(50)).isEqualTo(5);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10);
+    assertThat(histogram.getSum()).isEqualTo(55);
+    assertThat(histogram.getMax()).isEqualTo(10);
+  }
+
+  /** Percentiles of a heavy tailed sample stay within the bucket precision of the true ones. */
+  @Test
+  public void percentilesAreWithinRelativeError() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    Random random = new Random(41);
+    long[] values = new long[100_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) (1_000 * Math.exp(random.nextGaussian() * 1.5));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[] {50, 95, 99, 99.9}) {
+      long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long estimate = histogram.getValueAtPercentile(percentile);
+      assertThat(estimate).isAtLeast(exact);
+      assertThat((double) estimate).isAtMost(exact * 1.035 + 1);
+    }
+  }
+
+  @Test
+  public void bucketsCoverEveryValueOnce() {
+    long previousUpperBound = -1;
+    for (int bucket = 0; bucket < LogLinearHistogram.getBucketIndex(1L << 20); bucket++) {
+      long upperBound = LogLinearHistogram.getBucketUpperBound(bucket);
+      assertThat(LogLinearHistogram.getBucketIndex(previousUpperBound + 1)).isEqualTo(bucket);
+      assertThat(LogLinearHistogram.getBucketIndex(upperBound)).isEqualTo(bucket);
+      previousUpperBound = upperBound;
+    }
+  }
+}
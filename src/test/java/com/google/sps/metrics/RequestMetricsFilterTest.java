@@ -0,0 +1,137 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.metrics;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.common.base.Ticker;
+
+@RunWith(JUnit4.class)
+public class RequestMetricsFilterTest {
+  private static final String ENDPOINT = "/potential-matches";
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker fakeTicker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private MetricsRegistry registry;
+  private RequestMetricsFilter filterUnderTest;
+  private ByteArrayOutputStream body;
+
+  @Before
+  public void setUp() throws IOException {
+    MockitoAnnotations.initMocks(this);
+    registry = new MetricsRegistry();
+    filterUnderTest = new RequestMetricsFilter(registry, fakeTicker);
+
+    body = new ByteArrayOutputStream();
+    when(mockRequest.getServletPath()).thenReturn(ENDPOINT);
+    when(mockResponse.getCharacterEncoding()).thenReturn("UTF-8");
+    when(mockResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+  }
+
+  @Test
+  public void recordsLatencyAndResponseSize() throws Exception {
+    when(mockResponse.getStatus()).thenReturn(200);
+    FilterChain chain = (request, response) -> {
+      nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(12));
+      response.getWriter().print("{\"userID\":\"1234\"}");
+    };
+
+    filterUnderTest.doFilter(mockRequest, mockResponse, chain);
+
+    EndpointMetrics metrics = registry.getEndpoint(ENDPOINT);
+    assertThat(body.toString("UTF-8")).isEqualTo("{\"userID\":\"1234\"}");
+    assertThat(metrics.getRequestCount()).isEqualTo(1);
+    assertThat(metrics.getErrorCount()).isEqualTo(0);
+    assertThat(metrics.getLatencyMicros().getValueAtPercentile(50)).isEqualTo(12_000);
+    assertThat(metrics.getResponseBytes().getMax()).isEqualTo(17);
+  }
+
+  @Test
+  public void countsServerErrorsAndExceptions() throws Exception {
+    when(mockResponse.getStatus()).thenReturn(503);
+    filterUnderTest.doFilter(mockRequest, mockResponse, (request, response) -> {});
+    try {
+      filterUnderTest.doFilter(mockRequest, mockResponse, (request, response) -> {
+        throw new IllegalStateException();
+      });
+      fail("Expected the servlet's exception to be rethrown");
+    } catch (IllegalStateException expected) {
+      // The failed request is still recorded
+    }
+
+    assertThat(registry.getEndpoint(ENDPOINT).getRequestCount()).isEqualTo(2);
+    assertThat(registry.getEndpoint(ENDPOINT).getErrorCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void writesPrometheusTextFormat() throws Exception {
+    when(mockResponse.getStatus()).thenReturn(200);
+    filterUnderTest.doFilter(mockRequest, mockResponse,
+      (request, response) -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(3)));
+
+    StringWriter output = new StringWriter();
+    registry.writePrometheus(new PrintWriter(output));
+
+    assertThat(output.toString()).contains("# TYPE http_request_duration_seconds summary\n");
+    assertThat(output.toString()).contains("http_requests_total{endpoint=\"/potential-matches\"} 1\n");
+    assertThat(output.toString())
+      .contains("http_request_duration_seconds{endpoint=\"/potential-matches\",quantile=\"0.99\"} 0.003\n");
+    assertThat(output.toString())
+      .contains("http_request_duration_seconds_count{endpoint=\"/potential-matches\"} 1\n");
+  }
+}
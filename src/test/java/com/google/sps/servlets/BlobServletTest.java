@@ -0,0 +1,132 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.Before;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.blobstore.BlobstoreService;
+import com.google.appengine.api.blobstore.ByteRange;
+import com.google.appengine.api.blobstore.RangeFormatException;
+import com.google.sps.images.ImageVariantProcessor;
+
+@RunWith(JUnit4.class)
+public class BlobServletTest {
+  private static final String TEST_BLOB_KEY = "test-blob-key";
+  private static final String TEST_SERVING_URL = "https://images.example.com/test";
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  @Mock
+  private BlobstoreService mockBlobstoreService;
+
+  @Mock
+  private ImageVariantProcessor mockImageVariants;
+
+  private BlobServlet servletUnderTest;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+
+    servletUnderTest = new BlobServlet();
+    servletUnderTest.blobstoreService = mockBlobstoreService;
+    servletUnderTest.imageVariants = mockImageVariants;
+    when(mockRequest.getParameter(BlobServlet.IMAGE_KEY_PARAMETER)).thenReturn(TEST_BLOB_KEY);
+  }
+
+  /** Tests if the original blob is served with immutable caching headers. */
+  @Test
+  public void servesBlobImmutably() throws Exception {
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setHeader("ETag", "\"" + TEST_BLOB_KEY + "\"");
+    verify(mockResponse).setHeader("Cache-Control", BlobServlet.IMMUTABLE_CACHE_CONTROL);
+    verify(mockBlobstoreService).serve(new BlobKey(TEST_BLOB_KEY), mockResponse);
+  }
+
+  /** Tests if a request with a matching entity tag gets a 304 without the blob being served. */
+  @Test
+  public void matchingEntityTagIsNotModified() throws Exception {
+    when(mockRequest.getHeader("If-None-Match")).thenReturn("\"other\", W/\"" + TEST_BLOB_KEY + "\"");
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    verify(mockBlobstoreService, never()).serve(any(BlobKey.class), any(HttpServletResponse.class));
+  }
+
+  /** Tests if a request for a single byte range only gets that range. */
+  @Test
+  public void servesByteRange() throws Exception {
+    ByteRange byteRange = new ByteRange(0, 1023);
+    when(mockBlobstoreService.getByteRange(mockRequest)).thenReturn(byteRange);
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setHeader("Accept-Ranges", "bytes");
+    verify(mockBlobstoreService).serve(new BlobKey(TEST_BLOB_KEY), byteRange, mockResponse);
+  }
+
+  /** Tests if a malformed range is ignored and the whole blob served. */
+  @Test
+  public void ignoresMalformedRange() throws Exception {
+    when(mockBlobstoreService.getByteRange(mockRequest)).thenThrow(new RangeFormatException("bad"));
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse, never()).sendError(anyInt());
+    verify(mockBlobstoreService).serve(new BlobKey(TEST_BLOB_KEY), mockResponse);
+  }
+
+  /** Tests if a size is redirected to its variant, and a missing variant falls back briefly. */
+  @Test
+  public void redirectsToVariant() throws Exception {
+    when(mockRequest.getParameter(BlobServlet.SIZE_PARAMETER)).thenReturn("card");
+    when(mockImageVariants.getServingUrl(TEST_BLOB_KEY)).thenReturn(TEST_SERVING_URL);
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setHeader("ETag", "\"" + TEST_BLOB_KEY + "-card\"");
+    verify(mockResponse).setHeader("Cache-Control", BlobServlet.IMMUTABLE_CACHE_CONTROL);
+    verify(mockResponse).sendRedirect(TEST_SERVING_URL + "=s600");
+
+    HttpServletResponse fallbackResponse = mock(HttpServletResponse.class);
+    when(mockImageVariants.getServingUrl(TEST_BLOB_KEY)).thenReturn(null);
+    servletUnderTest.doGet(mockRequest, fallbackResponse);
+
+    verify(fallbackResponse).setHeader("Cache-Control", BlobServlet.FALLBACK_CACHE_CONTROL);
+    verify(fallbackResponse, never()).sendRedirect(anyString());
+    verify(mockBlobstoreService).serve(new BlobKey(TEST_BLOB_KEY), fallbackResponse);
+  }
+}
@@ -0,0 +1,164 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+
+@RunWith(JUnit4.class)
+public class CompressionFilterTest {
+  private static final String ENDPOINT = "/user-data";
+  private static final String LARGE_BODY = "{\"friends-list\":[" + Strings.repeat("\"1234567890\",", 500) + "]}";
+  private static final String SMALL_BODY = "{\"user-found\":false}";
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private CompressionFilter filterUnderTest;
+  private ByteArrayOutputStream body;
+
+  @Before
+  public void setUp() throws IOException {
+    MockitoAnnotations.initMocks(this);
+    filterUnderTest = new CompressionFilter();
+
+    body = new ByteArrayOutputStream();
+    when(mockRequest.getServletPath()).thenReturn(ENDPOINT);
+    when(mockRequest.getMethod()).thenReturn("GET");
+    when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate, br");
+    when(mockResponse.getCharacterEncoding()).thenReturn("UTF-8");
+    when(mockResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {}
+    });
+  }
+
+  /** Tests if a large JSON body is gzip-compressed and decompresses to the original. */
+  @Test
+  public void compressesLargeBody() throws Exception {
+    when(mockResponse.getContentType()).thenReturn("application/json");
+
+    FilterChain chain = (request, response) -> response.getWriter().print(LARGE_BODY);
+
+    filterUnderTest.doFilter(mockRequest, mockResponse, chain);
+
+    verify(mockResponse).setHeader("Content-Encoding", "gzip");
+    verify(mockResponse).addHeader("Vary", "Accept-Encoding");
+    assertThat(body.size()).isLessThan(LARGE_BODY.length() / 4);
+    byte[] decompressed = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(body.toByteArray())));
+    assertThat(new String(decompressed, StandardCharsets.UTF_8)).isEqualTo(LARGE_BODY);
+  }
+
+  /** Tests if a body below the threshold is sent as it is. */
+  @Test
+  public void sendsSmallBodyUncompressed() throws Exception {
+    when(mockResponse.getContentType()).thenReturn("application/json");
+
+    filterUnderTest.doFilter(mockRequest, mockResponse, writing(SMALL_BODY));
+
+    verify(mockResponse, never()).setHeader("Content-Encoding", "gzip");
+    assertThat(body.toString("UTF-8")).isEqualTo(SMALL_BODY);
+  }
+
+  /** Tests if images, and clients that do not accept gzip, get the body as it is. */
+  @Test
+  public void skipsImagesAndClientsWithoutGzip() throws Exception {
+    when(mockResponse.getContentType()).thenReturn("image/jpeg");
+    filterUnderTest.doFilter(mockRequest, mockResponse, writing(LARGE_BODY));
+
+    when(mockResponse.getContentType()).thenReturn("application/json");
+    when(mockRequest.getHeader("Accept-Encoding")).thenReturn("gzip;q=0, identity");
+    filterUnderTest.doFilter(mockRequest, mockResponse, writing(LARGE_BODY));
+
+    verify(mockResponse, never()).setHeader("Content-Encoding", "gzip");
+    assertThat(body.toString("UTF-8")).isEqualTo(LARGE_BODY + LARGE_BODY);
+  }
+
+  /** Tests if blob responses are passed through without being wrapped or marked as varying. */
+  @Test
+  public void skipsBlobEndpoint() throws Exception {
+    when(mockRequest.getServletPath()).thenReturn("/blob-key");
+    FilterChain chain = (request, response) -> assertThat(response).isSameInstanceAs(mockResponse);
+
+    filterUnderTest.doFilter(mockRequest, mockResponse, chain);
+
+    verify(mockResponse, never()).addHeader(anyString(), anyString());
+  }
+
+  /** Tests if asking for non-blocking writes fails the way the servlet API expects. */
+  @Test
+  public void rejectsWriteListener() throws Exception {
+    FilterChain chain = (request, response) -> {
+      try {
+        response.getOutputStream().setWriteListener(mock(WriteListener.class));
+        fail("Expected a write listener to be rejected outside an async request");
+      } catch (IllegalStateException expected) {
+      }
+    };
+
+    filterUnderTest.doFilter(mockRequest, mockResponse, chain);
+  }
+
+  @Test
+  public void parsesAcceptEncoding() {
+    assertThat(CompressionFilter.acceptsGzip("gzip")).isTrue();
+    assertThat(CompressionFilter.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+    assertThat(CompressionFilter.acceptsGzip("*")).isTrue();
+    assertThat(CompressionFilter.acceptsGzip("gzip;q=0")).isFalse();
+    assertThat(CompressionFilter.acceptsGzip("br, identity")).isFalse();
+    assertThat(CompressionFilter.acceptsGzip(null)).isFalse();
+  }
+
+  private static FilterChain writing(String content) {
+    return (request, response) -> response.getOutputStream().write(content.getBytes(StandardCharsets.UTF_8));
+  }
+}
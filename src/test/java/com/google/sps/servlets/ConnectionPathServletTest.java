@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.json.JSONObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.junit.After;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.Before;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.FriendGraphSnapshot;
+
+@RunWith(JUnit4.class)
+public class ConnectionPathServletTest {
+  private static final String TEST_USER_1_ID = "1111";
+  private static final String TEST_USER_2_ID = "1776";
+  private static final String TEST_USER_3_ID = "1234";
+  private static final String TEST_USER_4_ID = "9876";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private ConnectionPathServlet servletUnderTest;
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() throws IOException {
+    MockitoAnnotations.initMocks(this);
+
+    helper.setUp();
+
+    servletUnderTest = new ConnectionPathServlet();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+
+    // 1111 - 1776 - 1234 - 9876
+    addTestUserEntityToDatastore(TEST_USER_1_ID, TEST_USER_2_ID);
+    addTestUserEntityToDatastore(TEST_USER_2_ID, TEST_USER_1_ID, TEST_USER_3_ID);
+    addTestUserEntityToDatastore(TEST_USER_3_ID, TEST_USER_2_ID, TEST_USER_4_ID);
+    addTestUserEntityToDatastore(TEST_USER_4_ID, TEST_USER_3_ID);
+  }
+
+  @After
+  public void tearDown() {
+    FriendGraphSnapshot.invalidate();
+    helper.tearDown();
+  }
+
+  @Test
+  public void pathWithinDefaultDepth() throws Exception {
+    JSONObject connectionPath = new JSONObject(execute(TEST_USER_1_ID, TEST_USER_4_ID, null));
+
+    assertThat(connectionPath.getInt("degreesOfSeparation")).isEqualTo(3);
+    assertThat(connectionPath.getJSONArray("path").toList())
+      .containsExactly(TEST_USER_1_ID, TEST_USER_2_ID, TEST_USER_3_ID, TEST_USER_4_ID).inOrder();
+  }
+
+  @Test
+  public void pathBeyondRequestedDepth() throws Exception {
+    JSONObject connectionPath = new JSONObject(execute(TEST_USER_1_ID, TEST_USER_4_ID, "2"));
+
+    assertThat(connectionPath.getInt("degreesOfSeparation")).isEqualTo(-1);
+    assertThat(connectionPath.getJSONArray("path").length()).isEqualTo(0);
+  }
+
+  private void addTestUserEntityToDatastore(String userID, String... friendsList) {
+    Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
+    userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, userID);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, Arrays.asList(friendsList));
+    datastore.put(userEntity);
+  }
+
+  private String execute(String userID1, String userID2, String maxDepth) throws IOException {
+    when(mockRequest.getParameter(ConnectionPathServlet.USER_ID_1_REQUEST_URL_PARAM)).thenReturn(userID1);
+    when(mockRequest.getParameter(ConnectionPathServlet.USER_ID_2_REQUEST_URL_PARAM)).thenReturn(userID2);
+    when(mockRequest.getParameter(ConnectionPathServlet.MAX_DEPTH_REQUEST_URL_PARAM)).thenReturn(maxDepth);
+    StringWriter responseWriter = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseWriter, true));
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    return responseWriter.toString();
+  }
+}
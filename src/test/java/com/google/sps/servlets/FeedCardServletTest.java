@@ -0,0 +1,159 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import org.json.JSONObject;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.FriendGraphSnapshot;
+import com.google.sps.data.PotentialMatchFeed;
+
+@RunWith(JUnit4.class)
+public class FeedCardServletTest {
+  private static final String TEST_USER_1_ID = "5555";
+  private static final String TEST_USER_2_ID = "1776";
+  private static final String TEST_USER_2_NAME = "Eliza";
+  private static final String TEST_USER_3_ID = "1234";
+  private static final String TEST_USER_3_NAME = "Rory";
+  private static final String TEST_USER_3_BIO = "Stars Hallow :)";
+  private static final String TEST_USER_3_SERVING_URL = "https://lh3.googleusercontent.com/abc";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private FeedCardServlet servletUnderTest;
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+
+    servletUnderTest = new FeedCardServlet();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    FriendGraphSnapshot.invalidate();
+    helper.tearDown();
+  }
+
+  /**
+  * User 1 and User 3 are both friends with User 2.
+  *
+  * <p>User 1's card should show User 3's profile and photos, with User 2 as the mutual friend.
+  */
+  @Test
+  public void combinesMatchProfileAndMutualFriends() throws Exception {
+    addUser(TEST_USER_1_ID, "Daenerys", "", Arrays.asList("", "", "", "", ""), Arrays.asList(TEST_USER_2_ID));
+    addUser(TEST_USER_2_ID, TEST_USER_2_NAME, "", Arrays.asList("", "", "", "", ""),
+      Arrays.asList(TEST_USER_1_ID, TEST_USER_3_ID));
+    Entity user3 = addUser(TEST_USER_3_ID, TEST_USER_3_NAME, TEST_USER_3_BIO,
+      Arrays.asList("abc", "", "def", "", ""), Arrays.asList(TEST_USER_2_ID));
+    user3.setUnindexedProperty(UserDataServlet.USER_IMAGE_URLS_PROPERTY,
+      Arrays.asList(TEST_USER_3_SERVING_URL, "", "", "", ""));
+    datastore.put(user3);
+
+    JSONObject card = execute(TEST_USER_1_ID);
+
+    assertThat(card.getString(FeedCardServlet.NEXT_POTENTIAL_MATCH_JSON_KEY)).isEqualTo(TEST_USER_3_ID);
+    assertThat(card.getInt(FeedCardServlet.HOP_DISTANCE_JSON_KEY)).isEqualTo(2);
+    assertThat(card.getString(UserDataServlet.USER_NAME_PROPERTY)).isEqualTo(TEST_USER_3_NAME);
+    assertThat(card.getString(UserDataServlet.USER_BIO_PROPERTY)).isEqualTo(TEST_USER_3_BIO);
+    assertThat(card.getJSONArray(FeedCardServlet.PHOTO_URLS_JSON_KEY).toList())
+      .containsExactly(TEST_USER_3_SERVING_URL + "=s600", "/blob-key?imageKey=def&size=card").inOrder();
+    assertThat(card.getJSONArray(FeedCardServlet.MUTUAL_FRIENDS_JSON_KEY).toList()).containsExactly(TEST_USER_2_NAME);
+    assertThat(card.getInt(FeedCardServlet.MUTUAL_FRIEND_COUNT_JSON_KEY)).isEqualTo(1);
+  }
+
+  /** Tests if a user without potential matches only gets the no match result. */
+  @Test
+  public void noPotentialMatches() throws Exception {
+    addUser(TEST_USER_1_ID, "Daenerys", "", Arrays.asList("", "", "", "", ""), Arrays.asList());
+
+    JSONObject card = execute(TEST_USER_1_ID);
+
+    assertThat(card.getString(FeedCardServlet.NEXT_POTENTIAL_MATCH_JSON_KEY))
+      .isEqualTo(PotentialMatchFeed.NO_POTENTIAL_MATCH_RESULT);
+    assertThat(card.has(FeedCardServlet.MUTUAL_FRIENDS_JSON_KEY)).isFalse();
+  }
+
+  /**
+  * User 2 lists User 3 as a friend, but User 3 has no user entity.
+  *
+  * <p>User 1's card should still be for User 3, with an empty list of photos.
+  */
+  @Test
+  public void potentialMatchWithoutUserEntity() throws Exception {
+    addUser(TEST_USER_1_ID, "Daenerys", "", Arrays.asList("", "", "", "", ""), Arrays.asList(TEST_USER_2_ID));
+    addUser(TEST_USER_2_ID, TEST_USER_2_NAME, "", Arrays.asList("", "", "", "", ""),
+      Arrays.asList(TEST_USER_1_ID, TEST_USER_3_ID));
+
+    JSONObject card = execute(TEST_USER_1_ID);
+
+    assertThat(card.getString(FeedCardServlet.NEXT_POTENTIAL_MATCH_JSON_KEY)).isEqualTo(TEST_USER_3_ID);
+    assertThat(card.has(UserDataServlet.USER_NAME_PROPERTY)).isFalse();
+    assertThat(card.getJSONArray(FeedCardServlet.PHOTO_URLS_JSON_KEY).toList()).isEmpty();
+    assertThat(card.getInt(FeedCardServlet.MUTUAL_FRIEND_COUNT_JSON_KEY)).isEqualTo(0);
+  }
+
+  private JSONObject execute(String userID) throws Exception {
+    when(mockRequest.getParameter(FeedCardServlet.USER_ID_REQUEST_URL_PARAM)).thenReturn(userID);
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter writer = new PrintWriter(stringWriter);
+    when(mockResponse.getWriter()).thenReturn(writer);
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+    writer.flush();
+    return new JSONObject(stringWriter.toString());
+  }
+
+  private Entity addUser(String userID, String name, String bio, List<String> blobKeys, List<String> friendIDs) {
+    Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
+    userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, userID);
+    userEntity.setProperty(UserDataServlet.USER_NAME_PROPERTY, name);
+    userEntity.setProperty(UserDataServlet.USER_BIO_PROPERTY, bio);
+    userEntity.setProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY, blobKeys);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, friendIDs);
+    datastore.put(userEntity);
+    return userEntity;
+  }
+}
@@ -22,6 +22,7 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
 import javax.servlet.ServletException;
@@ -39,7 +40,9 @@ import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.common.collect.Range;
 import com.google.gson.Gson;
+import com.google.sps.data.friend_map.FriendListSketch;
 
 @RunWith(JUnit4.class)
 public class MutualFriendsServletTest {
@@ -148,6 +151,47 @@ public class MutualFriendsServletTest {
     assertThat(mutualFriends).containsExactly(TEST_USER_3_NAME, TEST_USER_4_NAME);
   }
 
+  @Test
+  public void approximateCountFromStoredSketches() throws Exception {
+    List<String> friendsList1 = new ArrayList<>();
+    List<String> friendsList2 = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      friendsList1.add("friend" + i);
+      friendsList2.add("friend" + (i + 500));
+    }
+    addTestUserEntityWithSketchToDatastore(TEST_USER_1_ID, friendsList1);
+    addTestUserEntityWithSketchToDatastore(TEST_USER_2_ID, friendsList2);
+
+    when(mockRequest.getParameter(MutualFriendsServlet.APPROXIMATE_REQUEST_URL_PARAM)).thenReturn("true");
+    JSONObject estimate = new JSONObject(execute(TEST_USER_1_ID, TEST_USER_2_ID));
+
+    // Friend lists of 1,000 sharing 500 friends have a Jaccard similarity of 1/3
+    assertThat(estimate.getBoolean(MutualFriendsServlet.APPROXIMATE_JSON_KEY)).isTrue();
+    assertThat(estimate.getInt(MutualFriendsServlet.MUTUAL_FRIEND_COUNT_JSON_KEY)).isIn(Range.closed(350, 650));
+  }
+
+  @Test
+  public void approximateCountWithoutStoredSketchesIsExactForSmallLists() throws Exception {
+    addTestUserEntityToDatastore(TEST_USER_1_ID, TEST_USER_1_NAME, /* friendsList= */ TEST_USER_3_ID, TEST_USER_4_ID, TEST_USER_5_ID);
+    addTestUserEntityToDatastore(TEST_USER_2_ID, TEST_USER_2_NAME, /* friendsList= */ TEST_USER_3_ID, TEST_USER_4_ID);
+
+    when(mockRequest.getParameter(MutualFriendsServlet.APPROXIMATE_REQUEST_URL_PARAM)).thenReturn("true");
+    JSONObject estimate = new JSONObject(execute(TEST_USER_1_ID, TEST_USER_2_ID));
+
+    assertThat(estimate.getBoolean(MutualFriendsServlet.APPROXIMATE_JSON_KEY)).isFalse();
+    assertThat(estimate.getInt(MutualFriendsServlet.MUTUAL_FRIEND_COUNT_JSON_KEY)).isEqualTo(2);
+  }
+
+  private void addTestUserEntityWithSketchToDatastore(String userID, List<String> friendsList) {
+    FriendListSketch sketch = FriendListSketch.of(friendsList);
+    Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
+    userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, userID);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, friendsList);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_SKETCH_PROPERTY, sketch.getStoredHashes());
+    userEntity.setProperty(UserDataServlet.USER_FRIEND_COUNT_PROPERTY, sketch.getFriendCount());
+    datastore.put(userEntity);
+  }
+
   private void addTestUserEntityToDatastore(String userID, String userName, String... friendsList) {
     Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
     userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, userID);
@@ -45,6 +45,7 @@ import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestC
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.common.collect.ImmutableSet;
 import com.google.sps.servlets.PotentialMatchesServlet;
+import com.google.sps.data.FriendGraphSnapshot;
 import com.google.sps.data.PotentialMatchAlgorithm;
 import com.google.sps.data.friend_map.UserFriendsMap;
 import com.google.sps.data.friend_map.UserNode;
@@ -54,6 +55,8 @@ public class PotentialMatchesServletTest {
   private static final String NO_POTENTIAL_MATCH_RESULT = "NO_POTENTIAL_MATCHES";
   private static final String MATCHINFO_NEXT_MATCH_ID_FIELD = "nextPotentialMatchID";
   private static final String USER_ID_REQUEST_URL_PARAM = "userid";
+  private static final String EXTENDED_SEARCH_REQUEST_URL_PARAM = "extended";
+  private static final String MATCHINFO_HOP_DISTANCE_FIELD = "hopDistance";
   
   private static final String MATCH_INFO_ENTITY = "match-info";
   private static final String POTENTIAL_MATCHES_PROPERTY = "potential-matches";
@@ -111,6 +114,7 @@ public class PotentialMatchesServletTest {
 
   @After
   public void tearDown() {
+    FriendGraphSnapshot.invalidate();
     helper.tearDown();
   }
 
@@ -200,6 +204,36 @@ public class PotentialMatchesServletTest {
     assertThat(actualOutput).isIn(Arrays.asList(TEST_USER_2_ID, TEST_USER_3_ID));
   }
 
+  /**
+  * Tests the extended search for a user with no friends of friends left
+  *
+  * <p>User 1's only friend of a friend, User 3, was passed on, so an extended search should
+  * return User 4 at three hops: User 1 - User 2 - User 3 - User 4.
+  */
+  @Test
+  public void extendedSearchFindsThreeHopMatch() throws Exception {
+    addTestUserEntityToDatastore(datastore, TEST_USER_1_ID, TEST_USER_1_NAME,
+      TEST_USER_1_EMAIL, TEST_USER_1_BIO, new String[]{TEST_USER_2_ID});
+    addTestUserEntityToDatastore(datastore, TEST_USER_2_ID, TEST_USER_2_NAME,
+      TEST_USER_2_EMAIL, TEST_USER_2_BIO, new String[]{TEST_USER_1_ID, TEST_USER_3_ID});
+    addTestUserEntityToDatastore(datastore, TEST_USER_3_ID, TEST_USER_3_NAME,
+      TEST_USER_3_EMAIL, TEST_USER_3_BIO, new String[]{TEST_USER_2_ID, TEST_USER_4_ID});
+    addTestUserEntityToDatastore(datastore, TEST_USER_4_ID, TEST_USER_4_NAME,
+      TEST_USER_4_EMAIL, TEST_USER_4_BIO, new String[]{TEST_USER_3_ID});
+    Entity matchInfo = new Entity(MATCH_INFO_ENTITY);
+    matchInfo.setProperty(USER_ID_PROPERTY, TEST_USER_1_ID);
+    matchInfo.setProperty(POTENTIAL_MATCHES_PROPERTY, Arrays.asList());
+    matchInfo.setProperty("passed-ids", Arrays.asList(TEST_USER_3_ID));
+    datastore.put(matchInfo);
+
+    assertThat(execute(TEST_USER_1_ID)).isEqualTo(NO_POTENTIAL_MATCH_RESULT);
+
+    when(mockRequest.getParameter(EXTENDED_SEARCH_REQUEST_URL_PARAM)).thenReturn("true");
+    assertThat(execute(TEST_USER_1_ID)).isEqualTo(TEST_USER_4_ID);
+    assertThat(new JSONObject(responseWriter.toString()).getInt(MATCHINFO_HOP_DISTANCE_FIELD)).isEqualTo(3);
+    assertMatchInfoInDatastore(TEST_USER_1_ID, Arrays.asList(TEST_USER_4_ID));
+  }
+
   /**
   * Method that calls on the PotentialMatchesServlet and returns the ID of the next
   * potential match for the specified user
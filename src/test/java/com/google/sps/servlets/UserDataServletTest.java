@@ -15,8 +15,11 @@
 package com.google.sps.servlets;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 
@@ -29,10 +32,14 @@ import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.images.ImagesService;
+import com.google.appengine.api.images.ServingUrlOptions;
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
 import com.google.common.collect.ImmutableMap;
 import com.google.gson.Gson;
+import com.google.sps.images.BlobDeletionQueue;
+import com.google.sps.images.ImageVariantProcessor;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Arrays;
@@ -40,6 +47,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.junit.After;
@@ -63,6 +71,9 @@ public final class UserDataServletTest {
   private static final String ALTERNATE_TEST_USER_NAME = "John";
   private static final String TEST_PHOTO_1_BLOBKEY = "abc";
   private static final String TEST_PHOTO_2_BLOBKEY = "def";
+  private static final String TEST_PHOTO_2_SERVING_URL = "https://lh3.googleusercontent.com/def";
+  private static final String TEST_PHOTO_3_BLOBKEY = "ghi";
+  private static final String BLOB_DELETION_ENTITY = "blob-deletion";
 
   private final Gson gson = new Gson();
   // Uses a local datastore stored in memory for tests
@@ -72,6 +83,7 @@ public final class UserDataServletTest {
   @Mock private HttpServletRequest mockRequest;
   @Mock private HttpServletResponse mockResponse;
   @Mock private BlobstoreService blobstore;
+  @Mock private ImagesService images;
   private DatastoreService datastore;
   private UserDataServlet servletUnderTest;
 
@@ -83,6 +95,8 @@ public final class UserDataServletTest {
     datastore = DatastoreServiceFactory.getDatastoreService();
     servletUnderTest.blobstore = blobstore;
     servletUnderTest.datastore = datastore;
+    servletUnderTest.imageVariants = new ImageVariantProcessor(images, datastore, Executors.defaultThreadFactory());
+    servletUnderTest.blobDeletions = new BlobDeletionQueue(datastore);
   }
 
   @After
@@ -139,6 +153,47 @@ public final class UserDataServletTest {
     Map<String, Object> actual = gson.fromJson(stringWriter.toString(), Map.class);
     assertThat(actual).containsEntry(UserDataServlet.USER_FOUND_PROPERTY, true);
     assertThat(actual).containsEntry(UserDataServlet.USER_ID_PROPERTY, TEST_USER_ID);
+    assertThat(actual).doesNotContainKey(UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
+  }
+
+  /**
+   * Tests the doGet method with a fields selector of scalar fields.
+   *
+   * <p>Expected output: Only the selected fields are sent, and never the friends list.
+   */
+  @Test
+  public void testGetMethodWithSelectedFields() throws Exception {
+    when(mockRequest.getParameter(UserDataServlet.USER_ID_PROPERTY)).thenReturn(TEST_USER_ID);
+    when(mockRequest.getParameter(UserDataServlet.FIELDS_PARAMETER)).thenReturn("name, bio");
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter writer = new PrintWriter(stringWriter);
+    when(mockResponse.getWriter()).thenReturn(writer);
+
+    addTestUserEntityToDatastore(datastore);
+    servletUnderTest.doGet(mockRequest, mockResponse);
+    writer.flush();
+
+    Map<String, Object> actual = gson.fromJson(stringWriter.toString(), Map.class);
+    assertThat(actual).containsExactly(UserDataServlet.USER_FOUND_PROPERTY, true,
+        UserDataServlet.USER_NAME_PROPERTY, TEST_USER_NAME,
+        UserDataServlet.USER_BIO_PROPERTY, TEST_USER_BIO);
+  }
+
+  /**
+   * Tests the doGet method with a fields selector naming an unknown field.
+   *
+   * <p>Expected output: The request is rejected, including for the friends list, which is
+   * paged through its own endpoint.
+   */
+  @Test
+  public void testGetMethodWithUnknownField() throws Exception {
+    when(mockRequest.getParameter(UserDataServlet.USER_ID_PROPERTY)).thenReturn(TEST_USER_ID);
+    when(mockRequest.getParameter(UserDataServlet.FIELDS_PARAMETER))
+        .thenReturn("name," + UserDataServlet.USER_FRIENDS_LIST_PROPERTY);
+
+    servletUnderTest.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).sendError(eq(HttpServletResponse.SC_BAD_REQUEST), any(String.class));
   }
 
   /**
@@ -189,6 +244,8 @@ public final class UserDataServletTest {
     assertThat((String) userEntity.getProperty(UserDataServlet.USER_EMAIL_PROPERTY)).isEqualTo(TEST_USER_EMAIL);
     assertThat((String) userEntity.getProperty(UserDataServlet.USER_BIO_PROPERTY)).isEqualTo(TEST_USER_BIO);
     assertThat((ArrayList<String>) userEntity.getProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY)).containsExactly(TEST_USER_FRIENDS_LIST);
+    assertThat((List<Long>) userEntity.getProperty(UserDataServlet.USER_FRIENDS_SKETCH_PROPERTY)).hasSize(TEST_USER_FRIENDS_LIST.length);
+    assertThat(userEntity.getProperty(UserDataServlet.USER_FRIEND_COUNT_PROPERTY)).isEqualTo((long) TEST_USER_FRIENDS_LIST.length);
   }
 
   /**
@@ -271,6 +328,7 @@ public final class UserDataServletTest {
     Map<String, List<BlobKey>> map = new HashMap<>();
     map.put(UserDataServlet.USER_PHOTO_1_PROPERTY, keys);
     when(blobstore.getUploads(mockRequest)).thenReturn(map);
+    when(images.getServingUrl(any(ServingUrlOptions.class))).thenReturn(TEST_PHOTO_2_SERVING_URL);
     // Mock parameter request, the profile photo is uploaded
     when(mockRequest.getParameter(UserDataServlet.USER_PHOTO_1_PROPERTY)).thenReturn("true");
 
@@ -283,6 +341,9 @@ public final class UserDataServletTest {
 
     // Verify that datastore correctly stores the profile photo blobkey
     assertThat(((ArrayList<String>) userEntity.getProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY)).get(0)).isEqualTo(TEST_PHOTO_2_BLOBKEY);
+    // Verify that the serving URL of the photo's resized variants is stored next to it
+    assertThat((List<String>) userEntity.getProperty(UserDataServlet.USER_IMAGE_URLS_PROPERTY))
+      .containsExactly(TEST_PHOTO_2_SERVING_URL, "", "", "", "").inOrder();
   }
 
   /**
@@ -312,6 +373,38 @@ public final class UserDataServletTest {
     assertThat(((ArrayList<String>) userEntity.getProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY)).get(0)).isEqualTo("");
   }
 
+  /**
+   * Tests the doPost method when two photos are replaced at once.
+   *
+   * <p>Expected response: The uploads are parsed once for both photos, and the replaced photo's
+   * blobkey is queued for deletion.
+   */
+  @Test
+  public void testReplacingPhotosQueuesOldBlobForDeletion() throws Exception {
+    addTestUserEntityToDatastore(datastore);
+    Entity userEntity = datastore.prepare(new Query(UserDataServlet.USER_ENTITY)).asSingleEntity();
+    userEntity.setProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY,
+        new ArrayList<>(Arrays.asList(TEST_PHOTO_1_BLOBKEY, "", "", "", "")));
+    datastore.put(userEntity);
+
+    Map<String, List<BlobKey>> map = new HashMap<>();
+    map.put(UserDataServlet.USER_PHOTO_1_PROPERTY, Arrays.asList(new BlobKey(TEST_PHOTO_2_BLOBKEY)));
+    map.put(UserDataServlet.USER_PHOTO_2_PROPERTY, Arrays.asList(new BlobKey(TEST_PHOTO_3_BLOBKEY)));
+    when(blobstore.getUploads(mockRequest)).thenReturn(map);
+    when(mockRequest.getParameter(UserDataServlet.USER_ID_PROPERTY)).thenReturn(TEST_USER_ID);
+    when(mockRequest.getParameter(UserDataServlet.USER_PHOTO_1_PROPERTY)).thenReturn("true");
+    when(mockRequest.getParameter(UserDataServlet.USER_PHOTO_2_PROPERTY)).thenReturn("true");
+
+    servletUnderTest.doPost(mockRequest, mockResponse);
+
+    verify(blobstore, times(1)).getUploads(mockRequest);
+    userEntity = datastore.prepare(new Query(UserDataServlet.USER_ENTITY)).asSingleEntity();
+    assertThat((List<String>) userEntity.getProperty(UserDataServlet.USER_BLOBKEYS_PROPERTY))
+      .containsExactly(TEST_PHOTO_2_BLOBKEY, TEST_PHOTO_3_BLOBKEY, "", "", "").inOrder();
+    Entity deletion = datastore.prepare(new Query(BLOB_DELETION_ENTITY)).asSingleEntity();
+    assertThat(deletion.getKey().getName()).isEqualTo(TEST_PHOTO_1_BLOBKEY);
+  }
+
 
   /** Helper method to add a test user to the local datastore */
   private void addTestUserEntityToDatastore(DatastoreService datastore) {
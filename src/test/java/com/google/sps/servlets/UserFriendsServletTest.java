@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.gson.Gson;
+
+@RunWith(JUnit4.class)
+public class UserFriendsServletTest {
+  private static final String TEST_USER_ID = "123";
+  private static final List<String> TEST_FRIEND_IDS = Arrays.asList("5", "3", "1", "4", "2");
+
+  private final Gson gson = new Gson();
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private UserFriendsServlet servletUnderTest;
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+
+    servletUnderTest = new UserFriendsServlet();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+    servletUnderTest.datastore = datastore;
+
+    Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
+    userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, TEST_USER_ID);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, TEST_FRIEND_IDS);
+    datastore.put(userEntity);
+  }
+
+  @After
+  public void tearDown() {
+    helper.tearDown();
+  }
+
+  /** Tests if following the cursors returns every friend once, in ID order, and then stops. */
+  @Test
+  public void pagesThroughFriends() throws Exception {
+    when(mockRequest.getParameter(UserFriendsServlet.USER_ID_PARAMETER)).thenReturn(TEST_USER_ID);
+    when(mockRequest.getParameter(UserFriendsServlet.LIMIT_PARAMETER)).thenReturn("2");
+
+    List<Object> friends = new ArrayList<>();
+    String cursor = null;
+    int pages = 0;
+    do {
+      when(mockRequest.getParameter(UserFriendsServlet.CURSOR_PARAMETER)).thenReturn(cursor);
+      Map<String, Object> page = getPage();
+      friends.addAll((List<Object>) page.get(UserFriendsServlet.FRIENDS_PROPERTY));
+      cursor = (String) page.get(UserFriendsServlet.CURSOR_PROPERTY);
+      pages++;
+    } while (cursor != null && pages < 10);
+
+    assertThat(friends).containsExactly("1", "2", "3", "4", "5").inOrder();
+    assertThat(pages).isEqualTo(3);
+  }
+
+  /** Tests if a user without friends gets an empty last page. */
+  @Test
+  public void unknownUserHasNoFriends() throws Exception {
+    when(mockRequest.getParameter(UserFriendsServlet.USER_ID_PARAMETER)).thenReturn("999");
+
+    Map<String, Object> page = getPage();
+
+    assertThat((List<Object>) page.get(UserFriendsServlet.FRIENDS_PROPERTY)).isEmpty();
+    assertThat(page).doesNotContainKey(UserFriendsServlet.CURSOR_PROPERTY);
+  }
+
+  private Map<String, Object> getPage() throws Exception {
+    StringWriter stringWriter = new StringWriter();
+    PrintWriter writer = new PrintWriter(stringWriter);
+    when(mockResponse.getWriter()).thenReturn(writer);
+    servletUnderTest.doGet(mockRequest, mockResponse);
+    writer.flush();
+    return gson.fromJson(stringWriter.toString(), Map.class);
+  }
+}
@@ -0,0 +1,99 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.google.sps.servlets;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.when;
+
+import org.json.JSONObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.junit.After;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.Before;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.sps.data.FriendGraphSnapshot;
+
+@RunWith(JUnit4.class)
+public class WarmupServletTest {
+  private static final String TEST_USER_1_ID = "1111";
+  private static final String TEST_USER_2_ID = "1776";
+
+  private final LocalServiceTestHelper helper =
+    new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  @Mock
+  private HttpServletRequest mockRequest;
+
+  @Mock
+  private HttpServletResponse mockResponse;
+
+  private WarmupServlet servletUnderTest;
+  private DatastoreService datastore;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    helper.setUp();
+
+    servletUnderTest = new WarmupServlet();
+    datastore = DatastoreServiceFactory.getDatastoreService();
+  }
+
+  @After
+  public void tearDown() {
+    FriendGraphSnapshot.invalidate();
+    helper.tearDown();
+  }
+
+  /**
+  * Tests if warmup reports the time of every phase and leaves the friend graph snapshot loaded,
+  * so a user added afterwards is not in it until it is invalidated.
+  */
+  @Test
+  public void loadsFriendGraphSnapshot() throws Exception {
+    addTestUserEntityToDatastore(TEST_USER_1_ID, TEST_USER_2_ID);
+    addTestUserEntityToDatastore(TEST_USER_2_ID, TEST_USER_1_ID);
+
+    StringWriter responseWriter = new StringWriter();
+    when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseWriter, true));
+    servletUnderTest.doGet(mockRequest, mockResponse);
+    JSONObject phaseMillis = new JSONObject(responseWriter.toString());
+    addTestUserEntityToDatastore("9876");
+
+    assertThat(phaseMillis.keySet()).containsExactly("datastore", "blobstore", "gson", "friend-graph");
+    assertThat(FriendGraphSnapshot.get(datastore).getUserIDs()).containsExactly(TEST_USER_1_ID, TEST_USER_2_ID);
+    FriendGraphSnapshot.invalidate();
+    assertThat(FriendGraphSnapshot.get(datastore).getUserIDs()).contains("9876");
+  }
+
+  private void addTestUserEntityToDatastore(String userID, String... friendsList) {
+    Entity userEntity = new Entity(UserDataServlet.USER_ENTITY);
+    userEntity.setProperty(UserDataServlet.USER_ID_PROPERTY, userID);
+    userEntity.setProperty(UserDataServlet.USER_FRIENDS_LIST_PROPERTY, Arrays.asList(friendsList));
+    datastore.put(userEntity);
+  }
+}